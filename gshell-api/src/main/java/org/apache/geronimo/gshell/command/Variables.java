@@ -21,15 +21,23 @@ package org.apache.geronimo.gshell.command;
 
 import org.apache.geronimo.gshell.yarn.Yarn;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Provides a nested-namespace for command variables.
  *
+ * Values found in a parent scope are cached, along with the names made immutable anywhere up the chain.  Each scope
+ * counts its own changes, and a cached result is stamped with the sum of the counts of the parent scopes it was
+ * resolved from, so it remains valid until one of them changes.  Changes to sibling or child scopes never invalidate
+ * it.  Maps given to a scope must only be changed through it.
+ *
  * @version $Rev$ $Date$
  */
 public class Variables
@@ -40,6 +48,21 @@ public class Variables
 
     private final Set<String> immutables = new HashSet<String>();
 
+    /**
+     * Number of changes made to this scope.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Values resolved from parent scopes; absent values are cached too.  Created on the first lookup which misses.
+     */
+    private volatile Map<String,Resolution> resolved;
+
+    /**
+     * Names made immutable in this scope or any parent.
+     */
+    private volatile Resolution inheritedImmutables;
+
     public Variables(final Map<String,Object> map, final Variables parent) {
         assert map != null;
         assert parent != null;
@@ -49,10 +72,7 @@ public class Variables
     }
 
     public Variables(final Variables parent) {
-        assert parent != null;
-
-        this.map = new HashMap<String,Object>();
-        this.parent = parent;
+        this(new HashMap<String,Object>(), parent);
     }
 
     public Variables(final Map<String,Object> map) {
@@ -83,7 +103,23 @@ public class Variables
 
         if (!mutable) {
             immutables.add(name);
+            inheritedImmutables = null;
         }
+
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Returns a stamp which changes whenever this scope or any of its parents change.
+     */
+    private long getChainGeneration() {
+        long stamp = 0;
+
+        for (Variables vars = this; vars != null; vars = vars.parent) {
+            stamp += vars.generation.get();
+        }
+
+        return stamp;
     }
 
     public Object get(final String name) {
@@ -91,12 +127,32 @@ public class Variables
 
         Object value = map.get(name);
         if (value == null && parent != null) {
-            value = parent.get(name);
+            value = resolve(name);
         }
 
         return value;
     }
 
+    private Object resolve(final String name) {
+        assert name != null;
+
+        Map<String,Resolution> resolved = this.resolved;
+        if (resolved == null) {
+            resolved = this.resolved = new ConcurrentHashMap<String,Resolution>();
+        }
+
+        Resolution resolution = resolved.get(name);
+        long current = parent.getChainGeneration();
+
+        if (resolution == null || resolution.generation != current) {
+            // The generation is read first, so a change made while resolving leaves the result stale
+            resolution = new Resolution(parent.get(name), current);
+            resolved.put(name, resolution);
+        }
+
+        return resolution.value;
+    }
+
     @SuppressWarnings({"unchecked"})
     public <T> T get(final String name, final Class<T> type) {
         assert type != null;
@@ -119,6 +175,8 @@ public class Variables
         ensureMutable(name);
 
         map.remove(name);
+
+        generation.incrementAndGet();
     }
 
     public boolean contains(final String name) {
@@ -130,18 +188,29 @@ public class Variables
     public boolean isMutable(final String name) {
         assert name != null;
 
-        boolean mutable = true;
+        // If our parent has it as immutable, then so do we
+        return !getImmutables().contains(name);
+    }
 
-        // First ask out parent if there is one, if they are immutable, then so are we
-        if (parent != null) {
-            mutable = parent.isMutable(name);
-        }
+    @SuppressWarnings({"unchecked"})
+    private Set<String> getImmutables() {
+        Resolution resolution = inheritedImmutables;
+        long current = parent != null ? parent.getChainGeneration() : 0;
 
-        if (mutable) {
-            mutable = !immutables.contains(name);
+        if (resolution == null || resolution.generation != current) {
+            Set<String> names = parent != null ? parent.getImmutables() : Collections.<String>emptySet();
+
+            if (!immutables.isEmpty()) {
+                names = new HashSet<String>(names);
+                names.addAll(immutables);
+                names = Collections.unmodifiableSet(names);
+            }
+
+            resolution = new Resolution(names, current);
+            inheritedImmutables = resolution;
         }
 
-        return mutable;
+        return (Set<String>)resolution.value;
     }
 
     private void ensureMutable(final String name) {
@@ -200,6 +269,21 @@ public class Variables
         return parent;
     }
 
+    /**
+     * A value resolved at a given generation.
+     */
+    private static final class Resolution
+    {
+        public final Object value;
+
+        public final long generation;
+
+        public Resolution(final Object value, final long generation) {
+            this.value = value;
+            this.generation = generation;
+        }
+    }
+
     /**
      * Throw to indicate that a variable change was attempted but the variable was not muable.
      */
@@ -21,6 +21,7 @@ package org.apache.geronimo.gshell.command;
 
 import junit.framework.TestCase;
 
+import java.util.HashMap;
 import java.util.Iterator;
 
 /**
@@ -222,4 +223,92 @@ public class VariablesTest
             // ignore
         }
     }
+
+    public void testParentChangeSeenByChild() throws Exception {
+        Variables root = new Variables();
+        Variables parent = new Variables(root);
+        Variables vars = new Variables(parent);
+
+        assertNull(vars.get("a"));
+
+        root.set("a", "1");
+        assertEquals("1", vars.get("a"));
+
+        parent.set("a", "2");
+        assertEquals("2", vars.get("a"));
+
+        parent.unset("a");
+        assertEquals("1", vars.get("a"));
+
+        root.unset("a");
+        assertNull(vars.get("a"));
+    }
+
+    public void testImmutableInGrandParentAfterLookup() throws Exception {
+        Variables root = new Variables();
+        Variables vars = new Variables(new Variables(root));
+
+        assertTrue(vars.isMutable("a"));
+
+        root.set("a", "1", false);
+        assertFalse(vars.isMutable("a"));
+    }
+
+    /**
+     * Creates a root scope which counts the lookups made in it.
+     */
+    private static Variables createCountingRoot(final int[] lookups) {
+        return new Variables(new HashMap<String,Object>() {
+            public Object get(final Object key) {
+                lookups[0]++;
+                return super.get(key);
+            }
+        });
+    }
+
+    public void testCachedAfterSiblingAndChildChange() throws Exception {
+        int[] lookups = { 0 };
+        Variables root = createCountingRoot(lookups);
+        root.set("a", "1");
+
+        Variables shell = new Variables(root);
+        Variables sibling = new Variables(root);
+
+        assertEquals("1", shell.get("a"));
+        assertEquals(1, lookups[0]);
+
+        sibling.set("b", "2");
+        sibling.unset("b");
+
+        Variables child = new Variables(shell);
+        child.set("c", "3");
+
+        // The shell changing does not invalidate what it resolved from its own parents either
+        shell.set("d", "4");
+
+        assertEquals("1", shell.get("a"));
+        assertEquals(1, lookups[0]);
+
+        root.set("a", "5");
+        lookups[0] = 0;
+
+        assertEquals("5", shell.get("a"));
+        assertEquals(1, lookups[0]);
+    }
+
+    public void testChildSeesChangeInBetween() throws Exception {
+        int[] lookups = { 0 };
+        Variables root = createCountingRoot(lookups);
+        root.set("a", "1");
+
+        Variables shell = new Variables(root);
+        Variables child = new Variables(shell);
+
+        assertEquals("1", child.get("a"));
+        assertEquals("1", child.get("a"));
+        assertEquals(1, lookups[0]);
+
+        shell.set("a", "2");
+        assertEquals("2", child.get("a"));
+    }
 }
@@ -19,6 +19,8 @@
 
 package org.apache.geronimo.gshell.application;
 
+import org.apache.geronimo.gshell.io.IO;
+import org.apache.geronimo.gshell.shell.Shell;
 import org.apache.geronimo.gshell.shell.ShellFactory;
 
 /**
@@ -32,4 +34,14 @@ public interface ApplicationManager
     void configure(ApplicationConfiguration config) throws Exception;
 
     Application getApplication();
+
+    /**
+     * Create a new shell instance which uses the given IO instead of the application's.
+     *
+     * @param io    The IO for the new shell; must not be null.
+     * @return      A new shell instance; never null.
+     *
+     * @throws Exception    Failed to create shell instance.
+     */
+    Shell create(IO io) throws Exception;
 }
\ No newline at end of file
@@ -72,6 +72,39 @@ set ARGS=%$
 
 set BOOTJAR=%GSHELL_HOME%\lib\boot\gshell-bootstrap.jar
 
+@REM Class data sharing; set GSHELL_CDS to 'train' to record a new archive, or 'off' to disable it.
+@REM The archive is only used with the Java command recorded when training, as archives are specific to a JVM.
+set CDS_ARCHIVE=%GSHELL_HOME%\var\gshell.jsa
+set CDS_JAVACMD=%CDS_ARCHIVE%.javacmd
+if "%GSHELL_CDS%" == "off" goto start
+if "%GSHELL_CDS%" == "train" goto cds_train
+if not exist "%CDS_ARCHIVE%" goto start
+if not exist "%CDS_JAVACMD%" goto start
+set /p CDS_TRAINED=<"%CDS_JAVACMD%"
+if not "%CDS_TRAINED%" == "%JAVACMD%" goto start
+set JAVA_OPTS=%JAVA_OPTS% -Xshare:auto "-XX:SharedArchiveFile=%CDS_ARCHIVE%"
+goto start
+
+:cds_train
+@REM Probe once, rather than hiding unrecognized options on every run
+"%JAVACMD%" -XX:+PrintFlagsFinal -version 2>nul | findstr ArchiveClassesAtExit >nul
+if errorlevel 1 goto cds_unsupported
+if not exist "%GSHELL_HOME%\var" mkdir "%GSHELL_HOME%\var"
+
+@REM Record into a temporary archive, so the current one stays usable until training succeeds
+set CDS_TRAINING=%CDS_ARCHIVE%.tmp
+if exist "%CDS_TRAINING%" del "%CDS_TRAINING%"
+"%JAVACMD%" %JAVA_OPTS% "-XX:ArchiveClassesAtExit=%CDS_TRAINING%" -jar "%BOOTJAR%" %ARGS%
+if not exist "%CDS_TRAINING%" goto end
+move /y "%CDS_TRAINING%" "%CDS_ARCHIVE%" >nul
+echo %JAVACMD%> "%CDS_JAVACMD%"
+goto end
+
+:cds_unsupported
+echo gsh: %JAVACMD% does not support class data sharing archives; not training 1>&2
+
+:start
+
 @REM Start the JVM
 "%JAVACMD%" %JAVA_OPTS% -jar "%BOOTJAR%" %ARGS%
 
@@ -19,6 +19,7 @@
 
 package org.apache.geronimo.gshell.bootstrap;
 
+import java.io.File;
 import java.net.URL;
 import java.util.List;
 
@@ -43,6 +44,8 @@ public interface Configuration
 
     void configure() throws Exception;
 
+    File getHomeDir();
+
     List<URL> getClassPath() throws Exception;
 
     String getMainClass();
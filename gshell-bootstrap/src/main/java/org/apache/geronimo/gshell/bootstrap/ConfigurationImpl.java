@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -212,6 +213,10 @@ public class ConfigurationImpl
             throw new Error("No jars found under: " + getLibDir());
         }
 
+        // Keep the order stable between runs, so shared class data recorded by one run matches the next.  The order
+        // used to be whatever the file system listed, so no jar can have relied on it to shadow classes of another.
+        Arrays.sort(files);
+
         for (File file : files) {
             classPath.add(file.toURI().toURL());
         }
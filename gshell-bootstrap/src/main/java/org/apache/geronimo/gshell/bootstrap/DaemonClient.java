@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.bootstrap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Properties;
+
+/**
+ * Thin client which sends a command-line to a running GShell daemon, forwarding its input and output.
+ *
+ * The client and daemon prove to each other that they know the secret from the state file without sending it,
+ * so a stale state file never leaks the secret to whatever process now holds the port.
+ *
+ * The protocol must be kept in sync with <tt>org.apache.geronimo.gshell.cli.Daemon</tt>.
+ *
+ * @version $Rev$ $Date$
+ */
+public class DaemonClient
+{
+    /**
+     * Environment variable which enables handing off <tt>-c</tt> invocations to a daemon.
+     */
+    public static final String ENABLE_ENV = "GSHELL_DAEMON";
+
+    /**
+     * System property which enables handing off <tt>-c</tt> invocations to a daemon.
+     */
+    public static final String ENABLE_PROPERTY = "gshell.daemon";
+
+    private static final String STATE_FILE = "var/daemon.properties";
+
+    private static final int MAGIC = 0x47534844;
+
+    private static final int NONCE_SIZE = 16;
+
+    private static final int HANDSHAKE_TIMEOUT = 5000;
+
+    private static final String MAC_ALGORITHM = "HmacSHA1";
+
+    private static final byte[] DAEMON_ROLE = { 'd' };
+
+    private static final byte[] CLIENT_ROLE = { 'c' };
+
+    private static final byte STDIN = 0;
+
+    private static final byte STDIN_EOF = 1;
+
+    private static final byte STDOUT = 2;
+
+    private static final byte STDERR = 3;
+
+    private static final byte EXIT = 4;
+
+    private static final byte READ = 5;
+
+    private final File stateFile;
+
+    private final InputStream in;
+
+    private final PrintStream out;
+
+    private final PrintStream err;
+
+    public DaemonClient(final File homeDir, final InputStream in, final PrintStream out, final PrintStream err) {
+        assert homeDir != null;
+        assert in != null;
+        assert out != null;
+        assert err != null;
+
+        this.stateFile = new File(homeDir, STATE_FILE);
+        this.in = in;
+        this.out = out;
+        this.err = err;
+    }
+
+    public DaemonClient(final File homeDir) {
+        this(homeDir, System.in, System.out, System.err);
+    }
+
+    /**
+     * Check if handing off to a daemon has been enabled.  Commands run by a daemon use its environment and
+     * identity, not the caller's, so this must be asked for explicitly.
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLE_PROPERTY) || Boolean.valueOf(System.getenv(ENABLE_ENV));
+    }
+
+    /**
+     * Check if a daemon appears to be running.
+     */
+    public boolean isAvailable() {
+        return stateFile.isFile() && stateFile.canRead();
+    }
+
+    /**
+     * Execute a command-line in the daemon.
+     *
+     * @return  The exit code, or null if the daemon could not be reached.
+     */
+    public Integer execute(final String line) throws IOException {
+        assert line != null;
+
+        Properties props = new Properties();
+        try {
+            InputStream stateInput = new FileInputStream(stateFile);
+            try {
+                props.load(stateInput);
+            }
+            finally {
+                stateInput.close();
+            }
+        }
+        catch (IOException e) {
+            Log.debug("Daemon state not readable: " + e);
+            return null;
+        }
+
+        int port;
+        String secret;
+        try {
+            port = Integer.parseInt(props.getProperty("port"));
+            secret = props.getProperty("secret");
+            if (secret == null) {
+                throw new IllegalArgumentException("Missing secret");
+            }
+        }
+        catch (RuntimeException e) {
+            Log.debug("Invalid daemon state: " + e);
+            return null;
+        }
+
+        Socket socket = new Socket();
+        try {
+            DataInputStream input;
+            DataOutputStream output;
+
+            try {
+                socket.connect(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), HANDSHAKE_TIMEOUT);
+                socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+                socket.setTcpNoDelay(true);
+
+                input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+                if (!handshake(input, output, secret)) {
+                    Log.debug("Port " + port + " is not held by the daemon");
+                    return null;
+                }
+            }
+            catch (IOException e) {
+                Log.debug("Daemon not reachable: " + e);
+                return null;
+            }
+
+            // Commands may run for as long as they like once the daemon has accepted them
+            socket.setSoTimeout(0);
+
+            output.writeUTF(System.getProperty("user.dir"));
+            output.writeUTF(line);
+            output.flush();
+
+            return serve(input, output);
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Check that the peer knows the secret before proving that we do.
+     */
+    private boolean handshake(final DataInputStream input, final DataOutputStream output, final String secret) throws IOException {
+        byte[] nonce = new byte[NONCE_SIZE];
+        new SecureRandom().nextBytes(nonce);
+
+        output.writeInt(MAGIC);
+        output.write(nonce);
+        output.flush();
+
+        if (input.readInt() != MAGIC) {
+            return false;
+        }
+
+        byte[] challenge = new byte[NONCE_SIZE];
+        input.readFully(challenge);
+
+        byte[] expected = sign(secret, DAEMON_ROLE, nonce);
+        byte[] proof = new byte[expected.length];
+        input.readFully(proof);
+
+        if (!MessageDigest.isEqual(expected, proof)) {
+            return false;
+        }
+
+        output.write(sign(secret, CLIENT_ROLE, challenge));
+
+        return true;
+    }
+
+    private static byte[] sign(final String secret, final byte[] role, final byte[] nonce) throws IOException {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes("UTF-8"), MAC_ALGORITHM));
+            mac.update(role);
+            return mac.doFinal(nonce);
+        }
+        catch (GeneralSecurityException e) {
+            throw (IOException) new IOException("Unable to sign: " + e).initCause(e);
+        }
+    }
+
+    private int serve(final DataInputStream input, final DataOutputStream output) throws IOException {
+        byte[] buff = new byte[8192];
+
+        try {
+            while (true) {
+                byte type = input.readByte();
+
+                switch (type) {
+                    case STDOUT:
+                        copy(input, out, buff);
+                        break;
+
+                    case STDERR:
+                        copy(input, err, buff);
+                        break;
+
+                    case READ: {
+                        // Only read input when the command asks for it
+                        int n = in.read(buff, 0, Math.min(input.readInt(), buff.length));
+                        if (n < 0) {
+                            output.writeByte(STDIN_EOF);
+                        }
+                        else {
+                            output.writeByte(STDIN);
+                            output.writeInt(n);
+                            output.write(buff, 0, n);
+                        }
+                        output.flush();
+                        break;
+                    }
+
+                    case EXIT:
+                        return input.readInt();
+
+                    default:
+                        throw new IOException("Unexpected frame type: " + type);
+                }
+            }
+        }
+        catch (EOFException e) {
+            throw new IOException("Daemon closed the connection");
+        }
+        finally {
+            out.flush();
+            err.flush();
+        }
+    }
+
+    private void copy(final DataInputStream input, final PrintStream out, final byte[] buff) throws IOException {
+        int remaining = input.readInt();
+
+        while (remaining > 0) {
+            int n = input.read(buff, 0, Math.min(remaining, buff.length));
+            if (n < 0) {
+                throw new EOFException();
+            }
+            out.write(buff, 0, n);
+            remaining -= n;
+        }
+    }
+}
@@ -53,6 +53,14 @@ public class Launcher
         try {
             config.configure();
 
+            // Hand off to a running daemon when possible, else launch the shell here
+            Integer code = delegate(args);
+            if (code != null) {
+                Log.debug("Exiting; daemon code: " + code);
+
+                System.exit(code);
+            }
+
             launch(args);
 
             Log.debug("Exiting");
@@ -69,6 +77,28 @@ public class Launcher
         }
     }
 
+    /**
+     * Execute <tt>-c COMMANDS</tt> invocations in a running daemon, when enabled by {@link DaemonClient#isEnabled}.
+     *
+     * @return  The exit code, or null if the invocation was not handled by a daemon.
+     */
+    private Integer delegate(final String[] args) throws Exception {
+        assert args != null;
+
+        if (!DaemonClient.isEnabled() || args.length != 2 || !("-c".equals(args[0]) || "--commands".equals(args[0]))) {
+            return null;
+        }
+
+        DaemonClient client = new DaemonClient(config.getHomeDir());
+        if (!client.isAvailable()) {
+            return null;
+        }
+
+        Log.debug("Delegating to daemon");
+
+        return client.execute(args[1]);
+    }
+
     public void launch(final String[] args) throws Exception {
         assert args != null;
 
@@ -0,0 +1,523 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.cli;
+
+import org.apache.geronimo.gshell.application.Application;
+import org.apache.geronimo.gshell.application.ApplicationManager;
+import org.apache.geronimo.gshell.io.Closer;
+import org.apache.geronimo.gshell.io.IO;
+import org.apache.geronimo.gshell.io.SystemOutputHijacker;
+import org.apache.geronimo.gshell.notification.ExitNotification;
+import org.apache.geronimo.gshell.shell.Shell;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a configured application running, executing command-lines sent by clients over a loopback socket.
+ *
+ * Each connection gets its own {@link Shell}, with its input and output forwarded to the client.  The port and a
+ * secret are written to <tt>var/daemon.properties</tt> under the application home directory while the daemon is
+ * running.  The file is only readable by the owner, and the secret never crosses the wire; instead the daemon and
+ * client each prove that they know it by signing a nonce chosen by the other side.
+ *
+ * The protocol must be kept in sync with <tt>org.apache.geronimo.gshell.bootstrap.DaemonClient</tt>.
+ *
+ * @version $Rev$ $Date$
+ */
+public class Daemon
+{
+    public static final String STATE_FILE = "var/daemon.properties";
+
+    public static final String PORT = "port";
+
+    public static final String SECRET = "secret";
+
+    private static final int MAGIC = 0x47534844;
+
+    private static final int NONCE_SIZE = 16;
+
+    private static final int HANDSHAKE_TIMEOUT = 5000;
+
+    private static final String MAC_ALGORITHM = "HmacSHA1";
+
+    private static final byte[] DAEMON_ROLE = { 'd' };
+
+    private static final byte[] CLIENT_ROLE = { 'c' };
+
+    private static final byte STDIN = 0;
+
+    private static final byte STDIN_EOF = 1;
+
+    private static final byte STDOUT = 2;
+
+    private static final byte STDERR = 3;
+
+    private static final byte EXIT = 4;
+
+    private static final byte READ = 5;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final ApplicationManager applicationManager;
+
+    private final String secret;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public Thread newThread(final Runnable task) {
+            Thread thread = new Thread(task, "GShell Daemon Session-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final SecureRandom random = new SecureRandom();
+
+    private File stateFile;
+
+    private ServerSocket server;
+
+    public Daemon(final ApplicationManager applicationManager) {
+        assert applicationManager != null;
+
+        this.applicationManager = applicationManager;
+        this.secret = createSecret();
+    }
+
+    private String createSecret() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+
+        StringBuilder buff = new StringBuilder();
+        for (byte b : bytes) {
+            buff.append(Character.forDigit((b >> 4) & 0xf, 16));
+            buff.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return buff.toString();
+    }
+
+    /**
+     * Accept and serve connections until the JVM exits.
+     */
+    public void run() throws Exception {
+        start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread("GShell Daemon Shutdown Hook") {
+            public void run() {
+                close();
+            }
+        });
+
+        try {
+            serve();
+        }
+        finally {
+            close();
+        }
+    }
+
+    /**
+     * Listen on the loopback interface and advertise the port in the state file.
+     */
+    public synchronized void start() throws IOException {
+        assert server == null;
+
+        Application application = applicationManager.getApplication();
+        stateFile = new File(application.getHomeDir(), STATE_FILE);
+
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+        try {
+            writeState(stateFile, server.getLocalPort());
+        }
+        catch (IOException e) {
+            server.close();
+            throw e;
+        }
+
+        log.info("Listening on port: {}", server.getLocalPort());
+    }
+
+    /**
+     * Accept and serve connections until {@link #close} is called.
+     */
+    public void serve() throws IOException {
+        assert server != null;
+
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            }
+            catch (IOException e) {
+                if (server.isClosed()) {
+                    break;
+                }
+                throw e;
+            }
+
+            executor.execute(new Session(socket));
+        }
+    }
+
+    /**
+     * Stop listening and remove the state file, so clients never find a stale one.
+     */
+    public synchronized void close() {
+        if (stateFile != null) {
+            // noinspection ResultOfMethodCallIgnored
+            stateFile.delete();
+            stateFile = null;
+        }
+
+        if (server != null) {
+            try {
+                server.close();
+            }
+            catch (IOException ignore) {
+                // ignore
+            }
+        }
+
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        assert server != null;
+
+        return server.getLocalPort();
+    }
+
+    private void writeState(final File file, final int port) throws IOException {
+        assert file != null;
+
+        Properties props = new Properties();
+        props.setProperty(PORT, String.valueOf(port));
+        props.setProperty(SECRET, secret);
+
+        // noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+
+        // Replace any stale file, restricting the new one to the owner before the secret is written
+        // noinspection ResultOfMethodCallIgnored
+        file.delete();
+        if (!file.createNewFile() ||
+            !file.setReadable(false, false) || !file.setReadable(true, true) ||
+            !file.setWritable(false, false) || !file.setWritable(true, true))
+        {
+            throw new IOException("Unable to create owner-only state file: " + file);
+        }
+
+        OutputStream output = new FileOutputStream(file);
+        try {
+            props.store(output, "GShell daemon");
+        }
+        finally {
+            Closer.close(output);
+        }
+    }
+
+    private static byte[] sign(final String secret, final byte[] role, final byte[] nonce) throws IOException {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes("UTF-8"), MAC_ALGORITHM));
+            mac.update(role);
+            return mac.doFinal(nonce);
+        }
+        catch (GeneralSecurityException e) {
+            throw (IOException) new IOException("Unable to sign: " + e).initCause(e);
+        }
+    }
+
+    /**
+     * Serves a single client connection.
+     */
+    private class Session
+        implements Runnable
+    {
+        private final Socket socket;
+
+        public Session(final Socket socket) {
+            assert socket != null;
+
+            this.socket = socket;
+        }
+
+        public void run() {
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+
+                DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+                if (!handshake(input, output)) {
+                    log.warn("Rejected connection from: {}", socket.getRemoteSocketAddress());
+                    return;
+                }
+
+                // Wait on clients for as long as commands need
+                socket.setSoTimeout(0);
+
+                String dir = input.readUTF();
+                String line = input.readUTF();
+
+                IO io = new IO(new FrameInputStream(input, output), new FrameOutputStream(output, STDOUT), new FrameOutputStream(output, STDERR), false);
+
+                int code = execute(io, dir, line);
+
+                synchronized (output) {
+                    output.writeByte(EXIT);
+                    output.writeInt(code);
+                    output.flush();
+                }
+            }
+            catch (IOException e) {
+                log.debug("Session failed: " + e, e);
+            }
+            finally {
+                try {
+                    socket.close();
+                }
+                catch (IOException ignore) {
+                    // ignore
+                }
+            }
+        }
+
+        /**
+         * Prove that we know the secret, then check that the client does.
+         */
+        private boolean handshake(final DataInputStream input, final DataOutputStream output) throws IOException {
+            if (input.readInt() != MAGIC) {
+                return false;
+            }
+
+            byte[] challenge = new byte[NONCE_SIZE];
+            input.readFully(challenge);
+
+            byte[] nonce = new byte[NONCE_SIZE];
+            random.nextBytes(nonce);
+
+            output.writeInt(MAGIC);
+            output.write(nonce);
+            output.write(sign(secret, DAEMON_ROLE, challenge));
+            output.flush();
+
+            byte[] expected = sign(secret, CLIENT_ROLE, nonce);
+            byte[] proof = new byte[expected.length];
+            input.readFully(proof);
+
+            return MessageDigest.isEqual(expected, proof);
+        }
+
+        private int execute(final IO io, final String dir, final String line) {
+            assert io != null;
+            assert dir != null;
+            assert line != null;
+
+            log.debug("Executing: {}", line);
+
+            SystemOutputHijacker.register(io.outputStream, io.errorStream);
+
+            try {
+                Shell shell = applicationManager.create(io);
+
+                try {
+                    // Resolve files relative to the client's directory
+                    shell.getContext().getVariables().set("vfs.cwd", new File(dir).toURI().toString());
+
+                    shell.execute(line);
+
+                    return ExitNotification.DEFAULT_CODE;
+                }
+                finally {
+                    shell.close();
+                }
+            }
+            catch (ExitNotification n) {
+                return n.code;
+            }
+            catch (Throwable t) {
+                io.err.println(t);
+
+                if (io.isDebug()) {
+                    t.printStackTrace(io.err);
+                }
+
+                return ExitNotification.ERROR_CODE;
+            }
+            finally {
+                io.flush();
+
+                SystemOutputHijacker.deregister();
+            }
+        }
+    }
+
+    /**
+     * Requests the client's input only when it is read, so clients never consume input which is not used.
+     */
+    private static class FrameInputStream
+        extends InputStream
+    {
+        private static final int MAX_READ = 8192;
+
+        private final DataInputStream input;
+
+        private final DataOutputStream output;
+
+        private int remaining;
+
+        private boolean eof;
+
+        public FrameInputStream(final DataInputStream input, final DataOutputStream output) {
+            assert input != null;
+            assert output != null;
+
+            this.input = input;
+            this.output = output;
+        }
+
+        private boolean fill() throws IOException {
+            while (remaining == 0 && !eof) {
+                synchronized (output) {
+                    output.writeByte(READ);
+                    output.writeInt(MAX_READ);
+                    output.flush();
+                }
+
+                byte type = input.readByte();
+
+                if (type == STDIN) {
+                    remaining = input.readInt();
+                }
+                else if (type == STDIN_EOF) {
+                    eof = true;
+                }
+                else {
+                    throw new IOException("Unexpected frame type: " + type);
+                }
+            }
+
+            return remaining > 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+
+            remaining--;
+            return input.read();
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+
+            int n = input.read(bytes, offset, Math.min(length, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Math.min(remaining, input.available());
+        }
+    }
+
+    /**
+     * Sends output to the client as frames of the given type.
+     */
+    private static class FrameOutputStream
+        extends OutputStream
+    {
+        private final DataOutputStream output;
+
+        private final byte type;
+
+        public FrameOutputStream(final DataOutputStream output, final byte type) {
+            assert output != null;
+
+            this.output = output;
+            this.type = type;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+
+            synchronized (output) {
+                output.writeByte(type);
+                output.writeInt(length);
+                output.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (output) {
+                output.flush();
+            }
+        }
+    }
+}
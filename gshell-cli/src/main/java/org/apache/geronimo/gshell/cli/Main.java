@@ -132,6 +132,9 @@ public class Main
     @Argument
     private List<String> commandArgs = null;
 
+    @Option(name="--daemon")
+    private boolean daemon;
+
     @Option(name="-D", aliases={"--define"})
     private void setSystemProperty(final String nameValue) {
         assert nameValue != null;
@@ -241,6 +244,11 @@ public class Main
             // Build the shell instance
             Shell gshell = builder.create();
 
+            if (daemon) {
+                // Serve command-lines from clients until the JVM exits
+                new Daemon(builder.getApplicationManager()).run();
+            }
+
             // clp gives us a list, but we need an array
             String[] _args = {};
             if (commandArgs != null) {
@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.cli;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.application.Application;
+import org.apache.geronimo.gshell.application.ApplicationManager;
+import org.apache.geronimo.gshell.bootstrap.DaemonClient;
+import org.apache.geronimo.gshell.command.Variables;
+import org.apache.geronimo.gshell.io.IO;
+import org.apache.geronimo.gshell.io.SystemOutputHijacker;
+import org.apache.geronimo.gshell.notification.ExitNotification;
+import org.apache.geronimo.gshell.shell.Shell;
+import org.apache.geronimo.gshell.shell.ShellContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * Tests for the {@link Daemon} class and its bootstrap client.
+ *
+ * @version $Rev$ $Date$
+ */
+public class DaemonTest
+    extends TestCase
+{
+    private File homeDir;
+
+    private File stateFile;
+
+    private Daemon daemon;
+
+    private ByteArrayOutputStream out;
+
+    private ByteArrayOutputStream err;
+
+    protected void setUp() throws Exception {
+        homeDir = File.createTempFile("gshell-daemon", "");
+        assertTrue(homeDir.delete());
+        assertTrue(homeDir.mkdirs());
+
+        stateFile = new File(homeDir, Daemon.STATE_FILE);
+
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+
+        // Sessions register their streams, as Main does once installed
+        SystemOutputHijacker.install();
+    }
+
+    protected void tearDown() throws Exception {
+        if (daemon != null) {
+            daemon.close();
+            daemon = null;
+        }
+
+        SystemOutputHijacker.uninstall();
+
+        // noinspection ResultOfMethodCallIgnored
+        stateFile.delete();
+        // noinspection ResultOfMethodCallIgnored
+        stateFile.getParentFile().delete();
+        // noinspection ResultOfMethodCallIgnored
+        homeDir.delete();
+    }
+
+    private void startDaemon() throws Exception {
+        daemon = new Daemon(createApplicationManager());
+        daemon.start();
+
+        Thread thread = new Thread("Daemon Test") {
+            public void run() {
+                try {
+                    daemon.serve();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private DaemonClient createClient(final String input) {
+        return new DaemonClient(homeDir, new ByteArrayInputStream(input.getBytes()), new PrintStream(out), new PrintStream(err));
+    }
+
+    public void testExecute() throws Exception {
+        startDaemon();
+
+        assertTrue(stateFile.isFile());
+        assertEquals(Integer.valueOf(0), createClient("").execute("echo hello"));
+        assertEquals("hello", out.toString());
+    }
+
+    public void testExitCode() throws Exception {
+        startDaemon();
+
+        assertEquals(Integer.valueOf(3), createClient("").execute("exit 3"));
+    }
+
+    public void testInput() throws Exception {
+        startDaemon();
+
+        assertEquals(Integer.valueOf(0), createClient("some input").execute("cat"));
+        assertEquals("some input", out.toString());
+    }
+
+    public void testError() throws Exception {
+        startDaemon();
+
+        assertEquals(Integer.valueOf(ExitNotification.ERROR_CODE), createClient("").execute("fail"));
+        assertTrue(err.toString().indexOf("failed") >= 0);
+    }
+
+    public void testCloseRemovesStateFile() throws Exception {
+        startDaemon();
+        assertTrue(stateFile.isFile());
+
+        daemon.close();
+        assertFalse(stateFile.exists());
+
+        // The client must fall back to running the command itself
+        assertNull(createClient("").execute("echo hello"));
+    }
+
+    public void testWrongSecret() throws Exception {
+        startDaemon();
+
+        Properties props = new Properties();
+        props.setProperty(Daemon.PORT, String.valueOf(daemon.getPort()));
+        props.setProperty(Daemon.SECRET, "wrong");
+        writeState(props);
+
+        assertNull(createClient("").execute("echo hello"));
+        assertEquals("", out.toString());
+    }
+
+    public void testStaleStateFile() throws Exception {
+        // Some other process now holds the advertised port
+        final ServerSocket impostor = new ServerSocket(0);
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        Thread thread = new Thread("Impostor") {
+            public void run() {
+                try {
+                    Socket socket = impostor.accept();
+                    InputStream input = socket.getInputStream();
+
+                    // Collect whatever the client sends, then hang up
+                    socket.setSoTimeout(1000);
+                    try {
+                        byte[] buff = new byte[1024];
+                        int n;
+                        while ((n = input.read(buff)) >= 0) {
+                            received.write(buff, 0, n);
+                        }
+                    }
+                    catch (IOException ignore) {
+                        // ignore
+                    }
+                    socket.close();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        thread.start();
+
+        String secret = "0123456789abcdef";
+
+        Properties props = new Properties();
+        props.setProperty(Daemon.PORT, String.valueOf(impostor.getLocalPort()));
+        props.setProperty(Daemon.SECRET, secret);
+        writeState(props);
+
+        try {
+            assertNull(createClient("").execute("echo hello"));
+        }
+        finally {
+            thread.join();
+            impostor.close();
+        }
+
+        assertTrue(received.size() > 0);
+        assertTrue(received.toString("ISO-8859-1").indexOf(secret) < 0);
+    }
+
+    private void writeState(final Properties props) throws IOException {
+        // noinspection ResultOfMethodCallIgnored
+        stateFile.getParentFile().mkdirs();
+
+        OutputStream output = new FileOutputStream(stateFile);
+        try {
+            props.store(output, null);
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    //
+    // Fixtures
+    //
+
+    private ApplicationManager createApplicationManager() {
+        final Application application = proxy(Application.class, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getName().equals("getHomeDir")) {
+                    return homeDir;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        return proxy(ApplicationManager.class, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getName().equals("getApplication")) {
+                    return application;
+                }
+                if (method.getName().equals("create")) {
+                    return createShell((IO) args[0]);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * Creates a shell which understands <tt>echo TEXT</tt>, <tt>exit CODE</tt>, <tt>cat</tt> and <tt>fail</tt>.
+     */
+    private Shell createShell(final IO io) {
+        final Variables variables = new Variables();
+
+        final ShellContext context = proxy(ShellContext.class, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getName().equals("getVariables")) {
+                    return variables;
+                }
+                if (method.getName().equals("getIo")) {
+                    return io;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        return proxy(Shell.class, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                String name = method.getName();
+
+                if (name.equals("getContext")) {
+                    return context;
+                }
+                if (name.equals("close")) {
+                    return null;
+                }
+                if (!name.equals("execute")) {
+                    throw new UnsupportedOperationException(name);
+                }
+
+                String line = (String) args[0];
+
+                if (line.startsWith("echo ")) {
+                    io.out.print(line.substring(5));
+                }
+                else if (line.startsWith("exit ")) {
+                    throw new ExitNotification(Integer.parseInt(line.substring(5)));
+                }
+                else if (line.equals("cat")) {
+                    int c;
+                    while ((c = io.in.read()) >= 0) {
+                        io.out.print((char) c);
+                    }
+                }
+                else {
+                    throw new Exception(line + " failed");
+                }
+
+                return null;
+            }
+        });
+    }
+
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(DaemonTest.class.getClassLoader(), new Class[] { type }, handler));
+    }
+}
@@ -17,16 +17,38 @@
  * under the License.
  */
 
+
 package org.apache.geronimo.gshell.commands.file;
 
 import org.apache.commons.vfs.FileObject;
 import org.apache.commons.vfs.Selectors;
 import org.apache.geronimo.gshell.clp.Argument;
+import org.apache.geronimo.gshell.clp.Option;
 import org.apache.geronimo.gshell.command.CommandContext;
+import org.apache.geronimo.gshell.io.Closer;
 import org.apache.geronimo.gshell.io.IO;
+import org.apache.geronimo.gshell.notification.ResultNotification;
 import org.apache.geronimo.gshell.vfs.FileObjects;
+import org.apache.geronimo.gshell.vfs.FileSystemAccess;
 import org.apache.geronimo.gshell.vfs.support.VfsActionSupport;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Copies a file or directory.
  *
@@ -41,10 +63,14 @@ public class CopyAction
     @Argument(index=1, required=true)
     private String targetPath;
 
+    @Option(name="-v", aliases={"--verbose"})
+    private boolean verbose;
+
+    @Option(name="--parallel", argumentRequired=true)
+    private int parallel = Runtime.getRuntime().availableProcessors();
+
     // TODO: Add --recursive suport
 
-    // TODO: Add --verbose support
-    
     public Object execute(final CommandContext context) throws Exception {
         assert context != null;
         IO io = context.getIo();
@@ -62,10 +88,246 @@ public class CopyAction
 
         log.info("Copying {} -> {}", source, target);
 
-        target.copyFrom(source, Selectors.SELECT_ALL);
+        FileSystemAccess access = getFileSystemAccess();
+        Progress progress = new Progress(io);
+
+        if (access.isLocalFile(source) && access.isLocalFile(target)) {
+            copy(access.getLocalFile(source), access.getLocalFile(target), progress);
+
+            // Let VFS pick up the new state of the target
+            target.refresh();
+        }
+        else {
+            if (source.getName().equals(target.getName()) || source.getName().isDescendent(target.getName())) {
+                FileObjects.closeAll(source, target);
+                throw new ResultNotification("Cannot copy into itself: " + source.getName(), Result.FAILURE);
+            }
+
+            target.copyFrom(source, Selectors.SELECT_ALL);
+        }
+
+        if (verbose) {
+            progress.summary();
+        }
 
         FileObjects.closeAll(source, target);
         
         return Result.SUCCESS;
     }
-}
\ No newline at end of file
+
+    /**
+     * Copy a local file or directory tree, copying the files of a tree concurrently.  Like VFS, an existing target
+     * is replaced rather than merged with, and missing parent directories of the target are created.
+     */
+    void copy(final File source, final File target, final Progress progress) throws Exception {
+        assert source != null;
+        assert target != null;
+        assert progress != null;
+
+        ensureNotCopyingIntoSelf(source, target);
+
+        if (target.exists() || isSymlink(target)) {
+            delete(target);
+        }
+
+        File parent = target.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory: " + parent);
+        }
+
+        List<File[]> files = new ArrayList<File[]>();
+        collect(source, target, files, new HashSet<File>(), progress);
+
+        progress.total = files.size();
+
+        int threads = Math.max(1, Math.min(parallel, files.size()));
+        if (threads == 1) {
+            for (File[] pair : files) {
+                copyFile(pair[0], pair[1], progress);
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(files.size());
+            for (final File[] pair : files) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        copyFile(pair[0], pair[1], progress);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                }
+                catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception)cause;
+                    }
+                    throw (Error)cause;
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Opening the target would truncate the source, or creating it would add to the tree being copied.
+     */
+    private void ensureNotCopyingIntoSelf(final File source, final File target) throws IOException {
+        File from = source.getCanonicalFile();
+        File to = target.getCanonicalFile();
+
+        if (from.equals(to)) {
+            throw new ResultNotification("Cannot copy a file onto itself: " + source, Result.FAILURE);
+        }
+
+        if (from.isDirectory()) {
+            for (File parent = to.getParentFile(); parent != null; parent = parent.getParentFile()) {
+                if (parent.equals(from)) {
+                    throw new ResultNotification("Cannot copy a directory into itself: " + source, Result.FAILURE);
+                }
+            }
+        }
+
+        // Replacing the target would delete the source along with it
+        for (File parent = from.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            if (parent.equals(to)) {
+                throw new ResultNotification("Cannot replace a directory with its own contents: " + target, Result.FAILURE);
+            }
+        }
+    }
+
+    /**
+     * Create the target directories up front, and gather the files to copy into them.  Symbolic links are followed,
+     * except to a directory which is already being copied.
+     */
+    private void collect(final File source, final File target, final List<File[]> files, final Set<File> copying, final Progress progress) throws IOException {
+        if (!source.isDirectory()) {
+            files.add(new File[] { source, target });
+            return;
+        }
+
+        File dir = source.getCanonicalFile();
+        if (!copying.add(dir)) {
+            progress.skipped(source, "Symbolic link loops back to a directory being copied");
+            return;
+        }
+
+        if (!target.isDirectory() && !target.mkdirs()) {
+            throw new IOException("Failed to create directory: " + target);
+        }
+
+        File[] children = source.listFiles();
+        if (children == null) {
+            throw new IOException("Failed to list directory: " + source);
+        }
+
+        for (File child : children) {
+            collect(child, new File(target, child.getName()), files, copying, progress);
+        }
+
+        copying.remove(dir);
+    }
+
+    /**
+     * Delete a file or directory tree, without following symbolic links out of it.
+     */
+    private void delete(final File file) throws IOException {
+        if (file.isDirectory() && !isSymlink(file)) {
+            File[] children = file.listFiles();
+            if (children == null) {
+                throw new IOException("Failed to list directory: " + file);
+            }
+
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        if (!file.delete()) {
+            throw new IOException("Failed to delete: " + file);
+        }
+    }
+
+    private static boolean isSymlink(final File file) throws IOException {
+        File parent = file.getParentFile();
+        File resolved = parent != null ? new File(parent.getCanonicalFile(), file.getName()) : file;
+
+        return !resolved.getCanonicalFile().equals(resolved.getAbsoluteFile());
+    }
+
+    private void copyFile(final File source, final File target, final Progress progress) throws IOException {
+        assert source != null;
+        assert target != null;
+
+        FileChannel in = null;
+        FileChannel out = null;
+        long size;
+
+        try {
+            in = new FileInputStream(source).getChannel();
+            out = new FileOutputStream(target).getChannel();
+
+            size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+        finally {
+            Closer.close(in, out);
+        }
+
+        progress.copied(source, size);
+    }
+
+    /**
+     * Tracks what has been copied, reporting each file when --verbose was configured.
+     */
+    class Progress
+    {
+        private final IO io;
+
+        private final long start = System.currentTimeMillis();
+
+        private final AtomicInteger files = new AtomicInteger();
+
+        private final AtomicLong bytes = new AtomicLong();
+
+        private int total;
+
+        public Progress(final IO io) {
+            assert io != null;
+
+            this.io = io;
+        }
+
+        public void copied(final File file, final long size) {
+            int count = files.incrementAndGet();
+            bytes.addAndGet(size);
+
+            if (verbose) {
+                io.info("[{}/{}] {}", count, total, file);
+            }
+        }
+
+        public void skipped(final File file, final String reason) {
+            io.warn("Skipping {}: {}", file, reason);
+        }
+
+        public void summary() {
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+            long copied = bytes.get();
+
+            io.info("Copied {} files, {} bytes in {} ms ({} bytes/sec)", files.get(), copied, elapsed, copied * 1000 / elapsed);
+        }
+    }
+}
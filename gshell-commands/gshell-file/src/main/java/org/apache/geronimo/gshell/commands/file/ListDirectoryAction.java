@@ -70,7 +70,12 @@ public class ListDirectoryAction
         }
 
         if (file.getType().hasChildren()) {
-            listChildren(io, file);
+            if (io.getObjectOutput() != null) {
+                emitChildren(io, file, "");
+            }
+            else {
+                listChildren(io, file);
+            }
         }
         else {
             io.info(file.getName().getPath());
@@ -81,32 +86,68 @@ public class ListDirectoryAction
         return Result.SUCCESS;
     }
 
-    private void listChildren(final IO io, final FileObject dir) throws Exception {
-        assert io != null;
+    private FileObject[] getChildren(final FileObject dir) throws Exception {
         assert dir != null;
 
-        FileObject[] files;
-
         if (includeHidden) {
-            files = dir.getChildren();
+            return dir.getChildren();
         }
-        else {
-            FileFilter filter = new FileFilter() {
-                public boolean accept(final FileSelectInfo selection) {
-                    assert selection != null;
-
-                    try {
-                        return !selection.getFile().isHidden();
-                    }
-                    catch (FileSystemException e) {
-                        throw new RuntimeException(e);
-                    }
+
+        FileFilter filter = new FileFilter() {
+            public boolean accept(final FileSelectInfo selection) {
+                assert selection != null;
+
+                try {
+                    return !selection.getFile().isHidden();
                 }
-            };
+                catch (FileSystemException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        return dir.findFiles(new FileFilterSelector(filter));
+    }
+
+    /**
+     * Hand the files themselves to the next pipeline stage.  When it reads text, each file is rendered on a line of
+     * its own with its path relative to the listed directory, rather than in columns under per-directory headers.
+     *
+     * Each file is closed once it has been handed on, which only releases the resources attached to it so far; the
+     * object stays usable, and anything a later stage attaches to it by using it is that stage's to release.
+     */
+    private void emitChildren(final IO io, final FileObject dir, final String prefix) throws Exception {
+        assert io != null;
+        assert dir != null;
+        assert prefix != null;
+
+        for (FileObject file : getChildren(dir)) {
+            String fileName = prefix + file.getName().getBaseName();
+            boolean folder = FileObjects.hasChildren(file);
 
-            files = dir.findFiles(new FileFilterSelector(filter));
+            if (folder) {
+                fileName += FileName.SEPARATOR;
+            }
+
+            try {
+                io.emit(file, fileName);
+
+                if (folder && recursive) {
+                    emitChildren(io, file, fileName);
+                }
+            }
+            finally {
+                FileObjects.close(file);
+            }
         }
-        
+    }
+
+    private void listChildren(final IO io, final FileObject dir) throws Exception {
+        assert io != null;
+        assert dir != null;
+
+        FileObject[] files = getChildren(dir);
+
         ConsoleReader reader = io.createConsoleReader();
         reader.setUsePagination(false);
 
@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.commands.file;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.clp.CommandLineProcessor;
+import org.apache.geronimo.gshell.io.IO;
+import org.apache.geronimo.gshell.notification.ResultNotification;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Unit tests for the {@link CopyAction} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CopyActionTest
+    extends TestCase
+{
+    private File dir;
+
+    private ByteArrayOutputStream output;
+
+    private IO io;
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("copy", ".test");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+
+        output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+        io = new IO(new ByteArrayInputStream(new byte[0]), out, out);
+    }
+
+    protected void tearDown() throws Exception {
+        delete(dir);
+        dir = null;
+        output = null;
+        io = null;
+    }
+
+    private static void delete(final File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private File write(final String path, final String content) throws IOException {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+
+        return file;
+    }
+
+    private static String read(final File file) throws IOException {
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[1024];
+            int n;
+            while ((n = in.read(bytes)) != -1) {
+                buff.write(bytes, 0, n);
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        return new String(buff.toByteArray(), "UTF-8");
+    }
+
+    private CopyAction createAction(final String... args) throws Exception {
+        CopyAction action = new CopyAction();
+        CommandLineProcessor clp = new CommandLineProcessor(action);
+        clp.process(args);
+        return action;
+    }
+
+    private void copy(final CopyAction action, final File source, final File target) throws Exception {
+        CopyAction.Progress progress = action.new Progress(io);
+        action.copy(source, target, progress);
+        progress.summary();
+    }
+
+    private File createTree() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            write("src/file" + i + ".txt", "content " + i);
+            write("src/sub/nested" + i + ".txt", "nested " + i);
+        }
+
+        return new File(dir, "src");
+    }
+
+    private void assertTreeCopied(final File target) throws IOException {
+        for (int i = 0; i < 10; i++) {
+            assertEquals("content " + i, read(new File(target, "file" + i + ".txt")));
+            assertEquals("nested " + i, read(new File(target, "sub/nested" + i + ".txt")));
+        }
+    }
+
+    public void testCopyParallel() throws Exception {
+        File source = createTree();
+        File target = new File(dir, "target");
+
+        copy(createAction("--parallel", "4", "a", "b"), source, target);
+
+        assertTreeCopied(target);
+    }
+
+    public void testCopySerial() throws Exception {
+        File source = createTree();
+        File target = new File(dir, "target");
+
+        copy(createAction("--parallel", "1", "a", "b"), source, target);
+
+        assertTreeCopied(target);
+    }
+
+    public void testProgress() throws Exception {
+        File source = createTree();
+        File target = new File(dir, "target");
+
+        copy(createAction("-v", "--parallel", "4", "a", "b"), source, target);
+
+        String[] lines = output.toString().trim().split("\\r?\\n");
+
+        // One line per file, then the summary
+        assertEquals(21, lines.length);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(lines[i], lines[i].matches("\\[\\d+/20\\] .*"));
+        }
+        assertTrue(lines[20], lines[20].startsWith("Copied 20 files, 170 bytes in "));
+    }
+
+    public void testNoProgressWithoutVerbose() throws Exception {
+        File source = write("a.txt", "abc");
+        File target = new File(dir, "b.txt");
+
+        CopyAction action = createAction("a", "b");
+        action.copy(source, target, action.new Progress(io));
+
+        assertEquals("abc", read(target));
+        assertEquals(0, output.size());
+    }
+
+    public void testCopyOntoSelf() throws Exception {
+        File source = write("a.txt", "abc");
+
+        try {
+            copy(createAction("a", "a"), source, new File(dir, "./a.txt"));
+            fail();
+        }
+        catch (ResultNotification expected) {
+            // ignore
+        }
+
+        assertEquals("abc", read(source));
+    }
+
+    public void testCopyIntoSelf() throws Exception {
+        File source = createTree();
+
+        try {
+            copy(createAction("a", "b"), source, new File(source, "sub/copy"));
+            fail();
+        }
+        catch (ResultNotification expected) {
+            // ignore
+        }
+
+        assertFalse(new File(source, "sub/copy").exists());
+    }
+
+    public void testCopyToSiblingWithSamePrefix() throws Exception {
+        File source = createTree();
+        File target = new File(dir, "src2");
+
+        copy(createAction("a", "b"), source, target);
+
+        assertTreeCopied(target);
+    }
+
+    public void testCreatesParentDirectories() throws Exception {
+        File source = write("a.txt", "abc");
+        File target = new File(dir, "new/sub/b.txt");
+
+        copy(createAction("a", "b"), source, target);
+
+        assertEquals("abc", read(target));
+    }
+
+    public void testReplacesExistingTarget() throws Exception {
+        File source = createTree();
+        File target = new File(dir, "target");
+        write("target/stale.txt", "stale");
+        write("target/sub/nested0.txt", "stale");
+
+        copy(createAction("a", "b"), source, target);
+
+        assertTreeCopied(target);
+        assertFalse(new File(target, "stale.txt").exists());
+    }
+
+    public void testReplaceParentOfSource() throws Exception {
+        File source = write("a/a/file.txt", "abc").getParentFile();
+
+        try {
+            copy(createAction("a", "b"), source, source.getParentFile());
+            fail();
+        }
+        catch (ResultNotification expected) {
+            // ignore
+        }
+
+        assertEquals("abc", read(new File(source, "file.txt")));
+    }
+
+    private boolean symlink(final File target, final File link) throws Exception {
+        try {
+            Process process = Runtime.getRuntime().exec(new String[] { "ln", "-s", target.getPath(), link.getPath() });
+            return process.waitFor() == 0;
+        }
+        catch (IOException e) {
+            // No symbolic links here
+            return false;
+        }
+    }
+
+    public void testSymlinkCycle() throws Exception {
+        File source = createTree();
+        File link = new File(source, "sub/loop");
+        if (!symlink(source, link)) {
+            return;
+        }
+
+        try {
+            File target = new File(dir, "target");
+            copy(createAction("a", "b"), source, target);
+
+            assertTreeCopied(target);
+            assertFalse(new File(target, "sub/loop").exists());
+            assertTrue(output.toString().indexOf("Skipping") != -1);
+        }
+        finally {
+            link.delete();
+        }
+    }
+
+    public void testReplacesSymlinkedTarget() throws Exception {
+        File source = write("a.txt", "abc");
+        File other = write("other/keep.txt", "keep").getParentFile();
+        File target = new File(dir, "link");
+        if (!symlink(other, target)) {
+            return;
+        }
+
+        copy(createAction("a", "b"), source, target);
+
+        // Only the link is replaced, not what it pointed at
+        assertEquals("abc", read(target));
+        assertEquals("keep", read(new File(other, "keep.txt")));
+    }
+}
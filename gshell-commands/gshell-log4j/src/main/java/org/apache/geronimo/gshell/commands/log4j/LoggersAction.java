@@ -43,7 +43,7 @@ public class LoggersAction
 
         while (n.hasMoreElements()) {
             Logger logger = (Logger)n.nextElement();
-            io.info("{}={}", logger.getName(), logger.getLevel());
+            io.emit(logger, logger.getName() + "=" + logger.getLevel());
         }
 
         return Result.SUCCESS;
@@ -19,12 +19,12 @@
 
 package org.apache.geronimo.gshell.commands.shell;
 
+import java.io.IOException;
 import java.net.URI;
 
 import org.apache.commons.vfs.FileObject;
 import org.apache.commons.vfs.FileSelectInfo;
 import org.apache.commons.vfs.FileSelector;
-import org.apache.commons.vfs.FileSystemException;
 import org.apache.commons.vfs.FileType;
 import org.apache.geronimo.gshell.clp.Argument;
 import org.apache.geronimo.gshell.clp.Option;
@@ -87,7 +87,7 @@ public class FindAction
         return CommandAction.Result.SUCCESS;
     }
 
-    private void find(final CommandContext context, final FileObject file, final FileSelector selector) throws FileSystemException {
+    private void find(final CommandContext context, final FileObject file, final FileSelector selector) throws IOException {
         assert context != null;
         assert file != null;
         assert selector != null;
@@ -101,7 +101,7 @@ public class FindAction
         }
     }
 
-    private void display(final CommandContext context, final FileObject file, final FileObject root) throws FileSystemException {
+    private void display(final CommandContext context, final FileObject file, final FileObject root) throws IOException {
         assert context != null;
         assert file != null;
 
@@ -112,7 +112,9 @@ public class FindAction
             path = file.getName().getPath();
         }
         IO io = context.getIo();
-        io.info(path);
+
+        // Hand the file itself to the next stage when it can take it, otherwise print the path
+        io.emit(file, path);
     }
 
     //
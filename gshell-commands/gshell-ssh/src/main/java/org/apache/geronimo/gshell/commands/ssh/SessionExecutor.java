@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.geronimo.gshell.commands.ssh;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs SSH shell sessions on a bounded pool of threads.
+ *
+ * At most <tt>maxSessions</tt> sessions run at once.  Further sessions either wait in a queue of
+ * <tt>queueSize</tt> entries or, when the queue is full or the policy is {@link Policy#REJECT}, are rejected.
+ * Sessions with no activity for <tt>idleTimeout</tt> milliseconds are closed; time spent waiting in the queue
+ * does not count.
+ *
+ * Threads, and the checks for idle sessions, only exist while there are sessions to run, so an executor which
+ * is no longer used holds nothing even if it is never shut down.
+ *
+ * Settings must be made before the first session is executed.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SessionExecutor
+{
+    /**
+     * What to do with sessions over the limit.
+     */
+    public static enum Policy
+    {
+        QUEUE,
+        REJECT
+    }
+
+    /**
+     * A session which can be run by the executor.
+     */
+    public static interface Session
+        extends Runnable
+    {
+        /**
+         * Returns the time of the last activity of the session, as from {@link System#currentTimeMillis()}.
+         * Sessions which are busy should return the current time.
+         */
+        long getLastActivity();
+
+        void close();
+    }
+
+    private static final long IDLE_CHECK_INTERVAL = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final SessionMetrics metrics = new SessionMetrics();
+
+    /**
+     * Running sessions, and when they started running.
+     */
+    private final ConcurrentHashMap<Session,Long> sessions = new ConcurrentHashMap<Session,Long>();
+
+    private int maxSessions = 32;
+
+    private int queueSize = 64;
+
+    private long idleTimeout;
+
+    private Policy policy = Policy.QUEUE;
+
+    private static ScheduledExecutorService timer;
+
+    private ThreadPoolExecutor executor;
+
+    private ScheduledFuture<?> reaper;
+
+    private synchronized void ensureNotStarted() {
+        if (executor != null) {
+            throw new IllegalStateException("Session executor already started");
+        }
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public void setMaxSessions(final int maxSessions) {
+        assert maxSessions > 0;
+        ensureNotStarted();
+
+        this.maxSessions = maxSessions;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(final int queueSize) {
+        assert queueSize >= 0;
+        ensureNotStarted();
+
+        this.queueSize = queueSize;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout   Milliseconds a session may go without activity before it is closed; 0 to disable.
+     */
+    public void setIdleTimeout(final long idleTimeout) {
+        assert idleTimeout >= 0;
+        ensureNotStarted();
+
+        this.idleTimeout = idleTimeout;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(final Policy policy) {
+        assert policy != null;
+        ensureNotStarted();
+
+        this.policy = policy;
+    }
+
+    public SessionMetrics getMetrics() {
+        return metrics;
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            ThreadFactory threadFactory = new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                public Thread newThread(final Runnable task) {
+                    Thread thread = new Thread(task, "SSH Session-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+
+            if (policy == Policy.REJECT || queueSize == 0) {
+                // Threads are created on demand up to the limit, and die when idle
+                executor = new ThreadPoolExecutor(0, maxSessions, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), threadFactory);
+            }
+            else {
+                // Threads are only added once the queue is full, so keep the limit as the core size, but let them die when idle
+                BlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>(queueSize);
+                executor = new ThreadPoolExecutor(maxSessions, maxSessions, 60, TimeUnit.SECONDS, queue, threadFactory);
+                executor.allowCoreThreadTimeOut(true);
+            }
+
+            log.debug("Created session executor; max sessions: {}, queue size: {}, policy: {}", new Object[] { maxSessions, queueSize, policy });
+        }
+
+        return executor;
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(final Runnable task) {
+                    Thread thread = new Thread(task, "SSH Session Reaper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return timer;
+    }
+
+    /**
+     * Only look for idle sessions while there are sessions running, so an executor which is not in use holds nothing.
+     */
+    private synchronized void sessionStarted(final Session session) {
+        sessions.put(session, System.currentTimeMillis());
+
+        if (idleTimeout > 0 && reaper == null) {
+            long interval = Math.min(idleTimeout, IDLE_CHECK_INTERVAL);
+            reaper = getTimer().scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    closeIdleSessions();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void sessionStopped(final Session session) {
+        sessions.remove(session);
+
+        if (sessions.isEmpty() && reaper != null) {
+            reaper.cancel(false);
+            reaper = null;
+        }
+    }
+
+    /**
+     * Run the session, or queue it if the limit has been reached.
+     *
+     * @throws RejectedExecutionException   The session could not be run or queued.
+     */
+    public void execute(final Session session) throws RejectedExecutionException {
+        assert session != null;
+
+        try {
+            getExecutor().execute(new SessionTask(session));
+        }
+        catch (RejectedExecutionException e) {
+            metrics.sessionRejected();
+            throw e;
+        }
+    }
+
+    private void closeIdleSessions() {
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<Session,Long> entry : sessions.entrySet()) {
+            Session session = entry.getKey();
+
+            // Sessions are only idle once they are running
+            long lastActivity = Math.max(session.getLastActivity(), entry.getValue());
+
+            if (now - lastActivity > idleTimeout) {
+                log.info("Closing idle session: {}", session);
+
+                try {
+                    session.close();
+                }
+                catch (Exception e) {
+                    log.warn("Failed to close idle session: " + e, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Close all sessions, whether running or queued, and stop the threads running them.
+     */
+    public synchronized void shutdown() {
+        if (reaper != null) {
+            reaper.cancel(false);
+            reaper = null;
+        }
+
+        if (executor != null) {
+            List<Runnable> queued = executor.shutdownNow();
+            executor = null;
+
+            // Queued sessions have clients waiting on them too
+            for (Runnable task : queued) {
+                close(((SessionTask)task).session);
+            }
+
+            for (Session session : sessions.keySet()) {
+                close(session);
+            }
+        }
+    }
+
+    private void close(final Session session) {
+        try {
+            session.close();
+        }
+        catch (Exception e) {
+            log.warn("Failed to close session: " + e, e);
+        }
+    }
+
+    /**
+     * Runs a session, keeping track of it while it is running.
+     */
+    private class SessionTask
+        implements Runnable
+    {
+        private final Session session;
+
+        public SessionTask(final Session session) {
+            assert session != null;
+
+            this.session = session;
+        }
+
+        public void run() {
+            sessionStarted(session);
+            metrics.sessionStarted();
+
+            try {
+                session.run();
+            }
+            finally {
+                metrics.sessionStopped();
+                sessionStopped(session);
+            }
+        }
+    }
+}
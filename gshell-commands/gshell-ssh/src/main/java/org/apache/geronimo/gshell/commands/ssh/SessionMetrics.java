@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.geronimo.gshell.commands.ssh;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for SSH shell sessions.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SessionMetrics
+{
+    private final long started = System.currentTimeMillis();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicLong sessions = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong commands = new AtomicLong();
+
+    private final AtomicLong bytesIn = new AtomicLong();
+
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    public void sessionStarted() {
+        sessions.incrementAndGet();
+        active.incrementAndGet();
+    }
+
+    public void sessionStopped() {
+        active.decrementAndGet();
+    }
+
+    public void sessionRejected() {
+        rejected.incrementAndGet();
+    }
+
+    public void commandExecuted() {
+        commands.incrementAndGet();
+    }
+
+    public void bytesRead(final long count) {
+        bytesIn.addAndGet(count);
+    }
+
+    public void bytesWritten(final long count) {
+        bytesOut.addAndGet(count);
+    }
+
+    public int getActiveSessions() {
+        return active.get();
+    }
+
+    public long getSessions() {
+        return sessions.get();
+    }
+
+    public long getRejectedSessions() {
+        return rejected.get();
+    }
+
+    public long getCommands() {
+        return commands.get();
+    }
+
+    public double getCommandsPerSecond() {
+        long elapsed = System.currentTimeMillis() - started;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return commands.get() * 1000.0 / elapsed;
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    public String toString() {
+        return String.format("active=%d, sessions=%d, rejected=%d, commands=%d (%.2f/sec), in=%d bytes, out=%d bytes",
+            getActiveSessions(), getSessions(), getRejectedSessions(), getCommands(), getCommandsPerSecond(), getBytesIn(), getBytesOut());
+    }
+}
@@ -37,11 +37,14 @@ import org.apache.sshd.server.ShellFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * SSHD {@link ShellFactory} which provides access to GShell.
@@ -65,6 +68,8 @@ public class ShellFactoryImpl
 
     private Console.ErrorHandler errorHandler;
 
+    private SessionExecutor sessionExecutor = new SessionExecutor();
+
     public Console.Prompter getPrompter() {
         return prompter;
     }
@@ -113,12 +118,22 @@ public class ShellFactoryImpl
         this.application = application;
     }
 
+    public SessionExecutor getSessionExecutor() {
+        return sessionExecutor;
+    }
+
+    public void setSessionExecutor(final SessionExecutor sessionExecutor) {
+        assert sessionExecutor != null;
+
+        this.sessionExecutor = sessionExecutor;
+    }
+
     public Shell createShell() {
         return new ShellImpl();
     }
 
     public class ShellImpl
-        implements ShellFactory.Shell, org.apache.geronimo.gshell.shell.Shell, ShellContext, Runnable
+        implements ShellFactory.Shell, org.apache.geronimo.gshell.shell.Shell, ShellContext, SessionExecutor.Session
     {
         private InputStream in;
 
@@ -134,6 +149,10 @@ public class ShellFactoryImpl
 
         private boolean closed;
 
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        private volatile boolean busy;
+
         public void setInputStream(final InputStream in) {
             this.in = in;
         }
@@ -151,6 +170,31 @@ public class ShellFactoryImpl
         }
 
         public void start(final Environment env) throws IOException {
+            final SessionMetrics metrics = sessionExecutor.getMetrics();
+
+            // Track activity and traffic for the session
+            this.in = new FilterInputStream(in) {
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        lastActivity = System.currentTimeMillis();
+                        metrics.bytesRead(1);
+                    }
+                    return b;
+                }
+
+                public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+                    int n = super.read(bytes, offset, length);
+                    if (n > 0) {
+                        lastActivity = System.currentTimeMillis();
+                        metrics.bytesRead(n);
+                    }
+                    return n;
+                }
+            };
+            this.out = new CountingOutputStream(out);
+            this.err = new CountingOutputStream(err);
+
             this.io = new IO(in, out, err, false);
 
             // Create variables, inheriting the application ones
@@ -169,7 +213,22 @@ public class ShellFactoryImpl
             this.variables.set("gshell.hostname", application.getLocalHost());
             // HACK: Add history for the 'history' command, since its not part of the Shell intf it can't really access it
             this.variables.set("gshell.internal.history", getHistory(), true);
-            new Thread(this).start();
+
+            try {
+                sessionExecutor.execute(this);
+            }
+            catch (RejectedExecutionException e) {
+                log.warn("Rejected session; too many sessions");
+
+                io.err.println("Too many sessions; try again later");
+                io.err.flush();
+                close();
+            }
+        }
+
+        public long getLastActivity() {
+            // A running command is activity, even if it is quiet
+            return busy ? System.currentTimeMillis() : lastActivity;
         }
 
         public void destroy() {
@@ -181,7 +240,17 @@ public class ShellFactoryImpl
         }
 
         public Object execute(final String line) throws Exception {
-            return executor.execute(getContext(), line);
+            lastActivity = System.currentTimeMillis();
+            sessionExecutor.getMetrics().commandExecuted();
+
+            busy = true;
+            try {
+                return executor.execute(getContext(), line);
+            }
+            finally {
+                busy = false;
+                lastActivity = System.currentTimeMillis();
+            }
         }
 
         public Object execute(final String command, final Object[] args) throws Exception {
@@ -196,7 +265,7 @@ public class ShellFactoryImpl
             return !closed;
         }
 
-        public void close() {
+        public synchronized void close() {
             if (!closed) {
                 closed = true;
                 Closer.close(in, out, err);
@@ -266,5 +335,28 @@ public class ShellFactoryImpl
                 close();
             }
         }
+
+        /**
+         * Counts bytes written to the session, as activity.
+         */
+        private class CountingOutputStream
+            extends FilterOutputStream
+        {
+            public CountingOutputStream(final OutputStream out) {
+                super(out);
+            }
+
+            public void write(final int b) throws IOException {
+                out.write(b);
+                lastActivity = System.currentTimeMillis();
+                sessionExecutor.getMetrics().bytesWritten(1);
+            }
+
+            public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+                out.write(bytes, offset, length);
+                lastActivity = System.currentTimeMillis();
+                sessionExecutor.getMetrics().bytesWritten(length);
+            }
+        }
     }
-}
\ No newline at end of file
+}
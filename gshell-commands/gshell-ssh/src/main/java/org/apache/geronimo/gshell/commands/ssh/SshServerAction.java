@@ -46,6 +46,21 @@ public class SshServerAction
     @Option(name="-b", aliases={ "--background"})
     private boolean background;
 
+    @Option(name="-m", aliases={ "--max-sessions" })
+    private int maxSessions = -1;
+
+    @Option(name="-q", aliases={ "--queue-size" })
+    private int queueSize = -1;
+
+    @Option(name="-r", aliases={ "--reject" })
+    private boolean reject;
+
+    @Option(name="-i", aliases={ "--idle-timeout" })
+    private int idleTimeout = -1;
+
+    @Option(name="-s", aliases={ "--stats-interval" })
+    private int statsInterval = 60;
+
     private BeanContainer container;
 
     public void setBeanContainer(final BeanContainer container) {
@@ -65,18 +80,43 @@ public class SshServerAction
 
         server.setPort(port);
 
+        // The server is a prototype, so its executor is its own and not yet started; it lives as long as the server
+        ShellFactoryImpl factory = (ShellFactoryImpl)server.getShellFactory();
+        SessionExecutor executor = factory.getSessionExecutor();
+        if (maxSessions > 0) {
+            executor.setMaxSessions(maxSessions);
+        }
+        if (queueSize >= 0) {
+            executor.setQueueSize(queueSize);
+        }
+        if (reject) {
+            executor.setPolicy(SessionExecutor.Policy.REJECT);
+        }
+        if (idleTimeout >= 0) {
+            executor.setIdleTimeout(idleTimeout * 1000L);
+        }
+
         server.start();
 
         io.info(messages.format("info.listening", port));
 
         if (!background) {
-            synchronized (this) {
-                log.debug("Waiting for server to shutdown");
+            try {
+                synchronized (this) {
+                    log.debug("Waiting for server to shutdown");
 
-                wait();
-            }
+                    // Periodically report session metrics while waiting
+                    while (true) {
+                        wait(Math.max(statsInterval, 1) * 1000L);
 
-            server.stop();
+                        io.verbose(messages.format("info.stats", executor.getMetrics()));
+                    }
+                }
+            }
+            finally {
+                server.stop();
+                executor.shutdown();
+            }
         }
 
         return Result.SUCCESS;
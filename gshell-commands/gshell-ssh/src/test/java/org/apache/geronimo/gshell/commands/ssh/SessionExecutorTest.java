@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.commands.ssh;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the {@link SessionExecutor} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SessionExecutorTest
+    extends TestCase
+{
+    private SessionExecutor executor;
+
+    protected void setUp() throws Exception {
+        executor = new SessionExecutor();
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        executor = null;
+    }
+
+    public void testQueue() throws Exception {
+        executor.setMaxSessions(1);
+        executor.setQueueSize(1);
+
+        MockSession first = new MockSession();
+        MockSession second = new MockSession();
+        executor.execute(first);
+        executor.execute(second);
+
+        assertTrue(first.started.await(5, TimeUnit.SECONDS));
+        assertFalse(second.started.await(100, TimeUnit.MILLISECONDS));
+
+        // Queue is full
+        try {
+            executor.execute(new MockSession());
+            fail();
+        }
+        catch (RejectedExecutionException expected) {
+            // ignore
+        }
+
+        first.close();
+        assertTrue(second.started.await(5, TimeUnit.SECONDS));
+        second.close();
+
+        assertEquals(1, executor.getMetrics().getRejectedSessions());
+    }
+
+    public void testReject() throws Exception {
+        executor.setMaxSessions(1);
+        executor.setPolicy(SessionExecutor.Policy.REJECT);
+
+        MockSession first = new MockSession();
+        executor.execute(first);
+        assertTrue(first.started.await(5, TimeUnit.SECONDS));
+
+        try {
+            executor.execute(new MockSession());
+            fail();
+        }
+        catch (RejectedExecutionException expected) {
+            // ignore
+        }
+
+        first.close();
+
+        assertEquals(1, executor.getMetrics().getRejectedSessions());
+    }
+
+    public void testCloseIdle() throws Exception {
+        executor.setIdleTimeout(50);
+
+        MockSession session = new MockSession();
+        session.lastActivity = System.currentTimeMillis();
+        executor.execute(session);
+
+        assertTrue(session.closed.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testBusyNotIdle() throws Exception {
+        executor.setIdleTimeout(50);
+
+        MockSession session = new MockSession();
+        session.busy = true;
+        executor.execute(session);
+
+        assertFalse(session.closed.await(300, TimeUnit.MILLISECONDS));
+        session.close();
+    }
+
+    public void testQueuedTimeNotIdle() throws Exception {
+        executor.setMaxSessions(1);
+        executor.setIdleTimeout(200);
+
+        MockSession first = new MockSession();
+        first.busy = true;
+        MockSession second = new MockSession();
+        second.lastActivity = System.currentTimeMillis();
+        executor.execute(first);
+        executor.execute(second);
+
+        // Wait in the queue for longer than the timeout
+        Thread.sleep(400);
+        first.close();
+
+        assertTrue(second.started.await(5, TimeUnit.SECONDS));
+        assertFalse(second.closed.await(100, TimeUnit.MILLISECONDS));
+
+        // Once running it still times out
+        assertTrue(second.closed.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testSettingsAfterStart() throws Exception {
+        MockSession session = new MockSession();
+        executor.execute(session);
+
+        try {
+            executor.setMaxSessions(2);
+            fail();
+        }
+        catch (IllegalStateException expected) {
+            // ignore
+        }
+
+        session.close();
+    }
+
+    public void testShutdownClosesSessions() throws Exception {
+        MockSession session = new MockSession();
+        executor.execute(session);
+        assertTrue(session.started.await(5, TimeUnit.SECONDS));
+
+        executor.shutdown();
+
+        assertTrue(session.closed.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testShutdownClosesQueuedSessions() throws Exception {
+        executor.setMaxSessions(1);
+
+        MockSession running = new MockSession();
+        MockSession queued = new MockSession();
+        executor.execute(running);
+        executor.execute(queued);
+        assertTrue(running.started.await(5, TimeUnit.SECONDS));
+
+        executor.shutdown();
+
+        assertTrue(running.closed.await(5, TimeUnit.SECONDS));
+        assertTrue(queued.closed.await(5, TimeUnit.SECONDS));
+        assertFalse(queued.started.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    public void testIdleCheckRestartsWithSessions() throws Exception {
+        executor.setIdleTimeout(50);
+
+        MockSession first = new MockSession();
+        first.lastActivity = System.currentTimeMillis();
+        executor.execute(first);
+        assertTrue(first.closed.await(5, TimeUnit.SECONDS));
+
+        // The check stopped with the last session, and starts again with the next
+        Thread.sleep(200);
+        MockSession second = new MockSession();
+        second.lastActivity = System.currentTimeMillis();
+        executor.execute(second);
+        assertTrue(second.closed.await(5, TimeUnit.SECONDS));
+    }
+
+    private static class MockSession
+        implements SessionExecutor.Session
+    {
+        public final CountDownLatch started = new CountDownLatch(1);
+
+        public final CountDownLatch closed = new CountDownLatch(1);
+
+        public volatile long lastActivity;
+
+        public volatile boolean busy;
+
+        public void run() {
+            started.countDown();
+
+            try {
+                closed.await();
+            }
+            catch (InterruptedException e) {
+                // ignore
+            }
+        }
+
+        public long getLastActivity() {
+            return busy ? System.currentTimeMillis() : lastActivity;
+        }
+
+        public void close() {
+            closed.countDown();
+        }
+    }
+}
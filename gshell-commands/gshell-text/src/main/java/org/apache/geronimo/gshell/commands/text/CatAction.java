@@ -31,9 +31,12 @@ import org.apache.geronimo.gshell.io.IO;
 import org.apache.geronimo.gshell.vfs.FileObjects;
 import org.apache.geronimo.gshell.vfs.support.VfsActionSupport;
 
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Displays the contents of a file.
@@ -73,12 +76,19 @@ public class CatAction
 
         log.debug("Displaying file: {}", file.getName());
 
-        BufferedReader reader = new BufferedReader(new InputStreamReader(content.getInputStream()));
-        try {
-            cat(reader, io);
+        // Output for another stage gets the bytes as they are; output for the terminal is written line by line,
+        // which normalizes line endings and renders any markup
+        if (!displayLineNumbers && io.getObjectOutput() != null && getFileSystemAccess().isLocalFile(file)) {
+            transfer(getFileSystemAccess().getLocalFile(file), io);
         }
-        finally {
-            Closer.close(reader);
+        else {
+            LineInput input = LineInput.open(getFileSystemAccess(), file);
+            try {
+                cat(input, io);
+            }
+            finally {
+                Closer.close(input);
+            }
         }
 
         FileObjects.close(file);
@@ -86,11 +96,36 @@ public class CatAction
         return CommandAction.Result.SUCCESS;
     }
 
-    private void cat(final BufferedReader reader, final IO io) throws IOException {
+    /**
+     * Copy the bytes of a local file straight to the output stream, letting the channel avoid intermediate buffers.
+     * The content is passed on exactly, without a newline being added at the end.
+     */
+    private void transfer(final File file, final IO io) throws IOException {
+        // Anything already written to the writer must come out first
+        io.out.flush();
+
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            WritableByteChannel target = Channels.newChannel(io.outputStream);
+            long size = channel.size();
+            long position = 0;
+
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+        }
+        finally {
+            Closer.close(channel);
+        }
+
+        io.outputStream.flush();
+    }
+
+    private void cat(final LineInput input, final IO io) throws IOException {
         String line;
         int lineno = 1;
 
-        while ((line = reader.readLine()) != null) {
+        while ((line = input.readLine()) != null) {
             if (displayLineNumbers) {
                 io.out.print(String.format("%6d  ", lineno++));
             }
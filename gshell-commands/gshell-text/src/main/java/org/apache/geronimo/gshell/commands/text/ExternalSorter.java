@@ -0,0 +1,487 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commands.text;
+
+import org.apache.geronimo.gshell.commands.text.SortAction.SortComparator;
+import org.apache.geronimo.gshell.commands.text.SortAction.SortComparator.Line;
+import org.apache.geronimo.gshell.io.Closer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sorts lines within a memory budget, spilling sorted runs to temporary files and merging them when the budget is exceeded.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ExternalSorter
+{
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Rough per-line overhead of a {@link String}, its decorated {@link Line} and list slot, on top of two bytes per char.
+     */
+    private static final int LINE_OVERHEAD = 112;
+
+    /**
+     * Rough per-key cost of the precomputed key regions and values.
+     */
+    private static final int KEY_OVERHEAD = 16;
+
+    /**
+     * Runs smaller than this are not worth splitting across threads.
+     */
+    private static final int PARALLEL_THRESHOLD = 8192;
+
+    /**
+     * Most runs merged at once, which bounds the files held open during a merge.
+     */
+    public static final int DEFAULT_MERGE_WIDTH = 64;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final SortComparator comparator;
+
+    private final long memoryLimit;
+
+    private final File tempDir;
+
+    private final int threads;
+
+    private final List<Line> lines = new ArrayList<Line>();
+
+    private final List<File> runs = new ArrayList<File>();
+
+    private final List<RunReader> readers = new ArrayList<RunReader>();
+
+    private int mergeWidth = DEFAULT_MERGE_WIDTH;
+
+    private long memoryUsed;
+
+    public ExternalSorter(final SortComparator comparator, final long memoryLimit, final File tempDir, final int threads) {
+        assert comparator != null;
+        if (memoryLimit <= 0) {
+            throw new IllegalArgumentException("Memory limit must be positive: " + memoryLimit);
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+
+        this.comparator = comparator;
+        this.memoryLimit = memoryLimit;
+        this.tempDir = tempDir;
+        this.threads = threads;
+    }
+
+    public void add(final String line) throws IOException {
+        assert line != null;
+
+        Line decorated = comparator.decorate(line);
+        lines.add(decorated);
+        memoryUsed += line.length() * 2 + LINE_OVERHEAD + decorated.regions.length * KEY_OVERHEAD;
+
+        if (memoryUsed >= memoryLimit) {
+            spill();
+        }
+    }
+
+    public void setMergeWidth(final int width) {
+        if (width < 2) {
+            throw new IllegalArgumentException("Merge width must be at least 2: " + width);
+        }
+
+        this.mergeWidth = width;
+    }
+
+    public int getMergeWidth() {
+        return mergeWidth;
+    }
+
+    /**
+     * Number of runs spilled to disk so far.
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Sort everything added so far, and return the lines in order.
+     *
+     * <p>
+     * The iterator reads from the spilled runs, so {@link #close} must be called once done with it.
+     */
+    public Iterator<String> sort() throws IOException {
+        sortRun(lines);
+
+        if (runs.isEmpty()) {
+            return new TextIterator(lines.iterator());
+        }
+
+        // Merge spilled runs in passes until they can be merged together with the run left in memory
+        while (runs.size() >= mergeWidth) {
+            mergePass();
+        }
+
+        // The last run stays in memory and takes part in the merge directly
+        List<Iterator<Line>> sources = new ArrayList<Iterator<Line>>(runs.size() + 1);
+        for (File run : runs) {
+            RunReader reader = new RunReader(run);
+            readers.add(reader);
+            sources.add(reader);
+        }
+        sources.add(lines.iterator());
+
+        log.debug("Merging {} runs", sources.size());
+
+        return new TextIterator(new MergeIterator(sources));
+    }
+
+    /**
+     * Delete all spilled runs.
+     */
+    public void close() {
+        for (RunReader reader : readers) {
+            reader.close();
+        }
+        readers.clear();
+
+        delete(runs);
+        runs.clear();
+        lines.clear();
+    }
+
+    private void spill() throws IOException {
+        sortRun(lines);
+
+        File file = createRunFile();
+
+        log.debug("Spilling {} lines to: {}", lines.size(), file);
+
+        writeRun(file, lines.iterator());
+
+        lines.clear();
+        memoryUsed = 0;
+    }
+
+    /**
+     * Create a file for a run; it is added to the runs straight away, so {@link #close} deletes it whatever happens.
+     */
+    private File createRunFile() throws IOException {
+        File file = File.createTempFile("gshell-sort", ".tmp", tempDir);
+        runs.add(file);
+
+        return file;
+    }
+
+    private void writeRun(final File file, final Iterator<Line> iter) throws IOException {
+        assert file != null;
+        assert iter != null;
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), ENCODING));
+        try {
+            while (iter.hasNext()) {
+                writer.write(iter.next().text);
+                writer.write('\n');
+            }
+        }
+        finally {
+            Closer.close(writer);
+        }
+    }
+
+    /**
+     * Merge consecutive groups of spilled runs into one run each, which keeps equal lines in the order they were added.
+     */
+    private void mergePass() throws IOException {
+        List<File> pass = new ArrayList<File>(runs);
+        runs.clear();
+
+        try {
+            while (!pass.isEmpty()) {
+                List<File> group = pass.subList(0, Math.min(mergeWidth, pass.size()));
+
+                if (group.size() == 1) {
+                    runs.add(group.get(0));
+                    group.clear();
+                }
+                else {
+                    File file = createRunFile();
+
+                    log.debug("Merging {} runs into: {}", group.size(), file);
+
+                    List<RunReader> groupReaders = new ArrayList<RunReader>(group.size());
+                    try {
+                        List<Iterator<Line>> sources = new ArrayList<Iterator<Line>>(group.size());
+                        for (File run : group) {
+                            RunReader reader = new RunReader(run);
+                            groupReaders.add(reader);
+                            sources.add(reader);
+                        }
+
+                        writeRun(file, new MergeIterator(sources));
+                    }
+                    finally {
+                        for (RunReader reader : groupReaders) {
+                            reader.close();
+                        }
+                        delete(group);
+                        group.clear();
+                    }
+                }
+            }
+        }
+        finally {
+            // Whatever was not merged is still ours to delete
+            runs.addAll(pass);
+        }
+    }
+
+    private void delete(final List<File> files) {
+        for (File file : files) {
+            if (!file.delete()) {
+                log.warn("Failed to delete temporary file: {}", file);
+            }
+        }
+    }
+
+    private void sortRun(final List<Line> run) throws IOException {
+        if (threads == 1 || run.size() < PARALLEL_THRESHOLD) {
+            Collections.sort(run, comparator.getLineComparator());
+            return;
+        }
+
+        // Sort slices of the run concurrently, then merge them back in place
+        int n = Math.min(threads, run.size() / (PARALLEL_THRESHOLD / 2));
+        int size = (run.size() + n - 1) / n;
+        final List<List<Line>> slices = new ArrayList<List<Line>>(n);
+        for (int i = 0; i < run.size(); i += size) {
+            slices.add(new ArrayList<Line>(run.subList(i, Math.min(i + size, run.size()))));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(slices.size());
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(slices.size());
+            for (final List<Line> slice : slices) {
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        Collections.sort(slice, comparator.getLineComparator());
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sorting");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        List<Iterator<Line>> sources = new ArrayList<Iterator<Line>>(slices.size());
+        for (List<Line> slice : slices) {
+            sources.add(slice.iterator());
+        }
+
+        run.clear();
+        for (Iterator<Line> iter = new MergeIterator(sources); iter.hasNext();) {
+            run.add(iter.next());
+        }
+    }
+
+    /**
+     * Strips the sort keys off decorated lines.
+     */
+    private static class TextIterator
+        implements Iterator<String>
+    {
+        private final Iterator<Line> lines;
+
+        public TextIterator(final Iterator<Line> lines) {
+            assert lines != null;
+
+            this.lines = lines;
+        }
+
+        public boolean hasNext() {
+            return lines.hasNext();
+        }
+
+        public String next() {
+            return lines.next().text;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Reads back the lines of a spilled run, recomputing their sort keys.
+     */
+    private class RunReader
+        implements Iterator<Line>
+    {
+        private final BufferedReader reader;
+
+        private Line next;
+
+        public RunReader(final File file) throws IOException {
+            assert file != null;
+
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+            advance();
+        }
+
+        private void advance() {
+            try {
+                String line = reader.readLine();
+                next = line != null ? comparator.decorate(line) : null;
+            }
+            catch (IOException e) {
+                close();
+                throw new IllegalStateException("Failed to read sort run", e);
+            }
+
+            if (next == null) {
+                close();
+            }
+        }
+
+        public void close() {
+            Closer.close(reader);
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Line next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Line line = next;
+            advance();
+            return line;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Merges sorted sources; equal lines come out in source order, which keeps the sort stable.
+     */
+    private class MergeIterator
+        implements Iterator<Line>
+    {
+        private final PriorityQueue<Head> heads;
+
+        public MergeIterator(final List<Iterator<Line>> sources) {
+            assert sources != null;
+
+            heads = new PriorityQueue<Head>(Math.max(1, sources.size()));
+            for (int i = 0; i < sources.size(); i++) {
+                Iterator<Line> source = sources.get(i);
+                if (source.hasNext()) {
+                    heads.add(new Head(source, i));
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        public Line next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+
+            Line line = head.line;
+            if (head.source.hasNext()) {
+                head.line = head.source.next();
+                heads.add(head);
+            }
+
+            return line;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class Head
+        implements Comparable<Head>
+    {
+        private final Iterator<Line> source;
+
+        private final int index;
+
+        private Line line;
+
+        public Head(final Iterator<Line> source, final int index) {
+            this.source = source;
+            this.index = index;
+            this.line = source.next();
+        }
+
+        public int compareTo(final Head other) {
+            int result = comparator.compare(line, other.line);
+            return result != 0 ? result : index - other.index;
+        }
+    }
+}
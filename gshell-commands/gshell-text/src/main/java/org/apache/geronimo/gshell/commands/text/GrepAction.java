@@ -17,30 +17,38 @@
  * under the License.
  */
 
+
 package org.apache.geronimo.gshell.commands.text;
 
 import org.apache.commons.vfs.FileObject;
+import org.apache.commons.vfs.FileType;
+import org.apache.commons.vfs.Selectors;
 import org.apache.geronimo.gshell.clp.Argument;
 import org.apache.geronimo.gshell.clp.Option;
 import org.apache.geronimo.gshell.command.CommandAction;
 import org.apache.geronimo.gshell.command.CommandContext;
 import org.apache.geronimo.gshell.io.Closer;
 import org.apache.geronimo.gshell.io.IO;
+import org.apache.geronimo.gshell.io.ObjectChannel;
 import org.apache.geronimo.gshell.vfs.FileObjects;
 import org.apache.geronimo.gshell.vfs.support.VfsActionSupport;
-import org.apache.oro.text.MatchAction;
-import org.apache.oro.text.MatchActionInfo;
-import org.apache.oro.text.MatchActionProcessor;
-import org.apache.oro.text.regex.MalformedPatternException;
-import org.apache.oro.text.regex.MatchResult;
-import org.apache.oro.text.regex.Pattern;
-import org.apache.oro.text.regex.PatternCompiler;
-import org.apache.oro.text.regex.PatternMatcher;
-import org.apache.oro.text.regex.PatternMatcherInput;
-import org.apache.oro.text.regex.Perl5Compiler;
-import org.apache.oro.text.regex.Perl5Matcher;
-
-import java.io.BufferedInputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Displays lines matching a pattern.
@@ -56,6 +64,9 @@ public class GrepAction
     /** Return value when no matches are found. */
     public static final int NOT_FOUND = 1;
 
+    /** Most output a search holds back while the searches of earlier files finish. */
+    private static final int BUFFER_LIMIT = 64 * 1024;
+
     //
     // TODO: Add --pattern option (in addition to this argument) to allow patterns to start with "-"
     //
@@ -63,8 +74,8 @@ public class GrepAction
     @Argument(index=0, required=true)
     private String pattern;
 
-    @Argument(index=1, required=false)
-    private String path;
+    @Argument(index=1, multiValued=true)
+    private List<String> paths;
 
     @Option(name="-c", aliases={"--count"})
     private boolean count;
@@ -78,153 +89,471 @@ public class GrepAction
     @Option(name="-v", aliases={"--invert-match"})
     private boolean invertMatch;
 
-    /** Tracks the number of matches. */
-    private int matches = 0;
+    @Option(name="-F", aliases={"--fixed-strings"})
+    private boolean fixedStrings;
+
+    @Option(name="-r", aliases={"--recursive"})
+    private boolean recursive;
+
+    @Option(name="-H", aliases={"--with-filename"})
+    private boolean withFilename;
+
+    @Option(name="--no-filename")
+    private boolean noFilename;
+
+    @Option(name="--parallel", argumentRequired=true)
+    private int parallel = Runtime.getRuntime().availableProcessors();
 
     public Object execute(final CommandContext context) throws Exception {
         assert context != null;
         final IO io = context.getIo();
 
-        PatternCompiler compiler = new Perl5Compiler();
-        InvertableMatcher matcher = new InvertableMatcher(new Perl5Matcher());
-        MatchActionProcessor processor = new MatchActionProcessor(compiler, matcher);
-
+        LineMatcher matcher;
         try {
-            int options = Perl5Compiler.DEFAULT_MASK;
+            matcher = new LineMatcher(pattern, fixedStrings, ignoreCase, invertMatch);
+        }
+        catch (PatternSyntaxException e) {
+            io.error("Invalid pattern: " + e, e);
+            return CommandAction.Result.FAILURE;
+        }
+
+        int matches;
+
+        if ((paths == null || paths.isEmpty()) && io.acceptObjects()) {
+            matches = grep(io, matcher);
 
-            if (ignoreCase) {
-                options = Perl5Compiler.CASE_INSENSITIVE_MASK;
+            if (count) {
+                io.info("{}", matches);
             }
+        }
+        else if (paths == null || paths.isEmpty()) {
+            LineInput input = LineInput.open(io.inputStream);
+            matches = grep(input, matcher, null, io.isQuiet() ? null : io.out);
 
-            processor.addAction(pattern, options, new MatchAction() {
-                public void processMatch(final MatchActionInfo info) {
-                    matches++;
+            if (count) {
+                io.info("{}", matches);
+            }
+        }
+        else {
+            List<Source> sources = new ArrayList<Source>();
+            try {
+                for (String path : paths) {
+                    collect(context, path, sources);
+                }
 
-                    // Render output unless --count was configured
-                    if (!count) {
-                        StringBuilder buff = new StringBuilder();
+                boolean filenames = !noFilename && (withFilename || recursive || sources.size() > 1);
+                matches = grep(io, matcher, sources, filenames);
+            }
+            finally {
+                for (Source source : sources) {
+                    FileObjects.close(source.file);
+                }
+            }
+        }
 
-                        if (lineNumbers) {
-                            buff.append(info.lineNumber);
-                            buff.append(":");
-                        }
+        return matches != 0 ? FOUND: NOT_FOUND;
+    }
 
-                        buff.append(info.line);
+    /**
+     * Resolve the files to search for the given path, descending into directories if --recursive was configured.
+     */
+    private void collect(final CommandContext context, final String path, final List<Source> sources) throws Exception {
+        assert context != null;
+        assert path != null;
+        assert sources != null;
 
-                        io.info(buff.toString());
-                    }
+        FileObject file = resolveFile(context, path);
+
+        ensureFileExists(file);
+
+        if (file.getType() != FileType.FOLDER) {
+            sources.add(new Source(file, path));
+            return;
+        }
+
+        if (!recursive) {
+            context.getIo().error("{}: Is a directory", path);
+            FileObjects.close(file);
+            return;
+        }
+
+        FileObject[] files = file.findFiles(Selectors.SELECT_FILES);
+        if (files != null) {
+            // Search in a predictable order, whatever order the file system lists them in
+            Arrays.sort(files, new Comparator<FileObject>() {
+                public int compare(final FileObject o1, final FileObject o2) {
+                    return o1.getName().compareTo(o2.getName());
                 }
             });
-        }
-        catch (MalformedPatternException e) {
-            io.error("Invalid pattern: " + e, e);
-            return CommandAction.Result.FAILURE;
+
+            String base = path.endsWith("/") ? path : path + "/";
+            for (FileObject child : files) {
+                sources.add(new Source(child, base + file.getName().getRelativeName(child.getName())));
+            }
         }
 
-        if (path != null) {
-            FileObject file = resolveFile(context, path);
+        FileObjects.close(file);
+    }
 
-            try {
-                grep(context, processor, file);
+    /**
+     * Search files concurrently, while keeping the output in the order of the files.
+     */
+    private int grep(final IO io, final LineMatcher matcher, final List<Source> sources, final boolean filenames) throws Exception {
+        assert io != null;
+        assert matcher != null;
+        assert sources != null;
+
+        int threads = Math.max(1, Math.min(parallel, sources.size()));
+        int total = 0;
+
+        // VFS is only used from this thread, so only local files, read directly, can be searched concurrently
+        for (Source source : sources) {
+            if (!getFileSystemAccess().isLocalFile(source.file)) {
+                threads = 1;
+                break;
             }
-            finally {
-                FileObjects.close(file);
+        }
+
+        if (threads == 1) {
+            for (Source source : sources) {
+                total += display(io, createSearch(source, matcher, filenames, io.isQuiet() ? null : io.out, false).call(), filenames);
             }
+            return total;
         }
-        else {
-            processor.processMatches(context.getIo().inputStream, context.getIo().outputStream);
+
+        // Only keep a few files ahead of the output; the others hold back a bounded amount of it until their turn
+        int window = threads * 2;
+        LinkedList<Future<SearchResult>> pending = new LinkedList<Future<SearchResult>>();
+        LinkedList<OrderedWriter> writers = new LinkedList<OrderedWriter>();
+        OrderedOutput output = io.isQuiet() ? null : new OrderedOutput(io.out, BUFFER_LIMIT);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            int next = 0;
+            while (next < sources.size() || !pending.isEmpty()) {
+                while (next < sources.size() && pending.size() < window) {
+                    OrderedWriter writer = output != null ? new OrderedWriter(output, next) : null;
+                    writers.add(writer);
+                    pending.add(executor.submit(createSearch(sources.get(next++), matcher, filenames, writer != null ? new PrintWriter(writer) : null, true)));
+                }
+
+                if (output != null) {
+                    output.advance(next - pending.size());
+                }
+
+                SearchResult result;
+                try {
+                    result = pending.removeFirst().get();
+                }
+                catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception)cause;
+                    }
+                    throw (Error)cause;
+                }
+
+                OrderedWriter writer = writers.removeFirst();
+                if (writer != null) {
+                    writer.drain();
+                }
+                total += display(io, result, filenames);
+            }
+        }
+        finally {
+            executor.shutdownNow();
         }
 
-        if (count) {
-            io.info("{}", matches);
+        return total;
+    }
+
+    /**
+     * Check the file of the source, and resolve it to a local one if it is to be searched on another thread.
+     */
+    private Search createSearch(final Source source, final LineMatcher matcher, final boolean filenames, final PrintWriter out, final boolean local) throws IOException {
+        assert source != null;
+
+        FileObject file = source.file;
+        if (!file.getType().hasContent()) {
+            return new Search(source, matcher, filenames, out, null, "File has no content");
+        }
+        if (!file.isReadable()) {
+            return new Search(source, matcher, filenames, out, null, "File is not readable");
         }
 
-        return matches != 0 ? FOUND: NOT_FOUND;
+        return new Search(source, matcher, filenames, out, local ? getFileSystemAccess().getLocalFile(file) : null, null);
     }
 
-    private void grep(final CommandContext context, final MatchActionProcessor processor, final FileObject file) throws Exception {
-        assert context != null;
-        assert processor != null;
-        assert file != null;
-        
-        ensureFileExists(file);
-        ensureFileHasContent(file);
-        ensureFileIsReadable(file);
+    private int display(final IO io, final SearchResult result, final boolean filenames) {
+        assert io != null;
+        assert result != null;
 
-        BufferedInputStream input = new BufferedInputStream(file.getContent().getInputStream());
-        try {
-            processor.processMatches(input, context.getIo().outputStream);
+        if (result.error != null) {
+            io.error("{}: {}", result.source.path, result.error);
         }
-        finally {
-            Closer.close(input);
+        else if (count) {
+            io.info(filenames ? result.source.path + ":" + result.matches : String.valueOf(result.matches));
         }
+
+        return result.matches;
     }
 
     /**
-     * Delegating {@link PatternMatcher} which allows the match/contains results to be
-     * inverted based on the {@link GrepAction#invertMatch} field for --invert-match support.
+     * Match objects from the previous stage by their text, handing the selected ones on as-is.
      */
-    private final class InvertableMatcher
-        implements PatternMatcher
-    {
-        private final PatternMatcher delegate;
+    private int grep(final IO io, final LineMatcher matcher) throws IOException {
+        assert io != null;
+        assert matcher != null;
+
+        int matches = 0;
+        int lineno = 0;
+        ObjectChannel.Item item;
+
+        while ((item = io.readItem()) != null) {
+            lineno++;
+
+            if (!matcher.matches(item.text)) {
+                continue;
+            }
+
+            matches++;
 
-        public InvertableMatcher(final PatternMatcher delegate) {
-            this.delegate = delegate;
+            if (!count && !io.isQuiet()) {
+                io.emit(item.object, lineNumbers ? lineno + ":" + item.text : item.text);
+            }
         }
 
-        public boolean matchesPrefix(char[] input, Pattern pattern, int offset) {
-            boolean result = delegate.matchesPrefix(input, pattern, offset);
-            return invertMatch ? !result : result;
+        return matches;
+    }
+
+    /**
+     * Write the selected lines of the reader to the output, if any, and return how many were selected.
+     */
+    private int grep(final LineInput input, final LineMatcher matcher, final String prefix, final PrintWriter out) throws IOException {
+        assert input != null;
+        assert matcher != null;
+
+        StringBuilder buff = new StringBuilder();
+        int matches = 0;
+        int lineno = 0;
+        String line;
+
+        while ((line = input.readLine()) != null) {
+            lineno++;
+
+            if (!matcher.matches(line)) {
+                continue;
+            }
+
+            matches++;
+
+            // Render output unless --count was configured
+            if (!count && out != null) {
+                buff.setLength(0);
+
+                if (prefix != null) {
+                    buff.append(prefix);
+                    buff.append(':');
+                }
+
+                if (lineNumbers) {
+                    buff.append(lineno);
+                    buff.append(':');
+                }
+
+                buff.append(line);
+
+                out.println(buff);
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * A file to search, and the path to display for it.
+     */
+    private static class Source
+    {
+        private final FileObject file;
+
+        private final String path;
+
+        public Source(final FileObject file, final String path) {
+            assert file != null;
+            assert path != null;
+
+            this.file = file;
+            this.path = path;
         }
+    }
 
-        public boolean matchesPrefix(String input, Pattern pattern) {
-            boolean result = delegate.matchesPrefix(input, pattern);
-            return invertMatch ? !result : result;
+    /**
+     * Searches a single file, writing the selected lines to the given output, if any.
+     */
+    private class Search
+        implements Callable<SearchResult>
+    {
+        private final Source source;
+
+        private final LineMatcher matcher;
+
+        private final boolean filenames;
+
+        private final PrintWriter out;
+
+        private final File local;
+
+        private final String error;
+
+        public Search(final Source source, final LineMatcher matcher, final boolean filenames, final PrintWriter out, final File local, final String error) {
+            assert source != null;
+            assert matcher != null;
+
+            this.source = source;
+            this.matcher = matcher;
+            this.filenames = filenames;
+            this.out = out;
+            this.local = local;
+            this.error = error;
         }
 
-        public boolean matchesPrefix(char[] input, Pattern pattern) {
-            boolean result = delegate.matchesPrefix(input, pattern);
-            return invertMatch ? !result : result;
+        public SearchResult call() throws Exception {
+            SearchResult result = new SearchResult(source);
+
+            if (error != null) {
+                result.error = error;
+                return result;
+            }
+
+            LineInput input = null;
+            try {
+                input = local != null ? LineInput.open(local) : LineInput.open(getFileSystemAccess(), source.file);
+                result.matches = grep(input, matcher, filenames ? source.path : null, out);
+            }
+            catch (InterruptedIOException e) {
+                throw e;
+            }
+            catch (IOException e) {
+                result.error = e.getMessage();
+            }
+            finally {
+                Closer.close(input);
+            }
+
+            return result;
         }
+    }
 
-        public boolean matchesPrefix(PatternMatcherInput input, Pattern pattern) {
-            boolean result = delegate.matchesPrefix(input, pattern);
-            return invertMatch ? !result : result;
+    /**
+     * Keeps the output of concurrent searches in the order of their files.  The search at the head writes straight
+     * through, while the others buffer up to a limit and then wait for their turn.
+     */
+    private static class OrderedOutput
+    {
+        private final PrintWriter out;
+
+        private final int limit;
+
+        private int head;
+
+        public OrderedOutput(final PrintWriter out, final int limit) {
+            assert out != null;
+
+            this.out = out;
+            this.limit = limit;
         }
 
-        public boolean matches(String input, Pattern pattern) {
-            boolean result = delegate.matches(input, pattern);
-            return invertMatch ? !result : result;
+        public synchronized void advance(final int index) {
+            head = index;
+            notifyAll();
         }
+    }
+
+    /**
+     * Output of one search, in turn with the others of an {@link OrderedOutput}.
+     */
+    private static class OrderedWriter
+        extends Writer
+    {
+        private final OrderedOutput output;
+
+        private final int index;
 
-        public boolean matches(char[] input, Pattern pattern) {
-            boolean result = delegate.matches(input, pattern);
-            return invertMatch ? !result : result;
+        private final StringBuilder buffer = new StringBuilder();
+
+        private boolean direct;
+
+        public OrderedWriter(final OrderedOutput output, final int index) {
+            assert output != null;
+
+            this.output = output;
+            this.index = index;
         }
 
-        public boolean matches(PatternMatcherInput input, Pattern pattern) {
-            boolean result = delegate.matches(input, pattern);
-            return invertMatch ? !result : result;
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) throws IOException {
+            if (!direct) {
+                synchronized (output) {
+                    while (output.head != index && buffer.length() + len > output.limit) {
+                        try {
+                            output.wait();
+                        }
+                        catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                    }
+
+                    if (output.head != index) {
+                        buffer.append(cbuf, off, len);
+                        return;
+                    }
+                }
+
+                // Our turn lasts until the search is done, so everything from here on can go straight through
+                direct = true;
+                drain();
+            }
+
+            output.out.write(cbuf, off, len);
         }
 
-        public boolean contains(String input, Pattern pattern) {
-            boolean result = delegate.contains(input, pattern);
-            return invertMatch ? !result : result;
+        /**
+         * Write out whatever is buffered; only once it is this search's turn.
+         */
+        public void drain() {
+            if (buffer.length() != 0) {
+                output.out.append(buffer);
+                buffer.setLength(0);
+            }
         }
 
-        public boolean contains(char[] input, Pattern pattern) {
-            boolean result = delegate.contains(input, pattern);
-            return invertMatch ? !result : result;
+        @Override
+        public void flush() {
+            // empty
         }
 
-        public boolean contains(PatternMatcherInput input, Pattern pattern) {
-            boolean result = delegate.contains(input, pattern);
-            return invertMatch ? !result : result;
+        @Override
+        public void close() {
+            // empty
         }
+    }
+
+    /**
+     * The outcome of searching a single file.
+     */
+    private static class SearchResult
+    {
+        private final Source source;
+
+        private int matches;
+
+        private String error;
+
+        public SearchResult(final Source source) {
+            assert source != null;
 
-        public MatchResult getMatch() {
-            return delegate.getMatch();
+            this.source = source;
         }
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.commands.text;
+
+import org.apache.commons.vfs.FileObject;
+import org.apache.geronimo.gshell.io.MappedLineReader;
+import org.apache.geronimo.gshell.vfs.FileSystemAccess;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Source of text lines for the text commands.
+ *
+ * <p>
+ * Local files of a reasonable size are read through a {@link MappedLineReader}, everything else through a
+ * {@link BufferedReader}.
+ *
+ * @version $Rev$ $Date$
+ */
+public abstract class LineInput
+    implements Closeable
+{
+    /**
+     * Files smaller than this are cheaper to read than to map.
+     */
+    public static final long MAP_THRESHOLD = 256 * 1024;
+
+    /**
+     * Read the next line, or return null at the end of the input.
+     */
+    public abstract String readLine() throws IOException;
+
+    public static LineInput open(final InputStream input) {
+        assert input != null;
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+
+        return new LineInput() {
+            public String readLine() throws IOException {
+                return reader.readLine();
+            }
+
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    public static LineInput open(final FileSystemAccess fileSystemAccess, final FileObject file) throws IOException {
+        assert fileSystemAccess != null;
+        assert file != null;
+
+        if (fileSystemAccess.isLocalFile(file)) {
+            return open(fileSystemAccess.getLocalFile(file));
+        }
+
+        return open(file.getContent().getInputStream());
+    }
+
+    public static LineInput open(final File file) throws IOException {
+        assert file != null;
+
+        Charset charset = Charset.defaultCharset();
+
+        if (file.length() >= MAP_THRESHOLD && MappedLineReader.isSupported(charset)) {
+            final MappedLineReader reader = new MappedLineReader(file, charset);
+
+            return new LineInput() {
+                public String readLine() throws IOException {
+                    return reader.readLine();
+                }
+
+                public void close() throws IOException {
+                    reader.close();
+                }
+            };
+        }
+
+        return open(new FileInputStream(file));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.commands.text;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matches lines against a pattern.
+ *
+ * <p>
+ * Patterns without regular expression syntax are searched for as plain strings, and regular expressions which
+ * start with a literal only run the regex engine on lines which contain that literal.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LineMatcher
+{
+    private static final String META_CHARS = ".[]{}()\\*+?^$|";
+
+    /**
+     * Literals shorter than this make a poor filter, as they are found on most lines anyway.
+     */
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+    private final LiteralSearcher literal;
+
+    private final Pattern pattern;
+
+    private final boolean invert;
+
+    public LineMatcher(final String pattern, final boolean fixed, final boolean ignoreCase, final boolean invert) {
+        assert pattern != null;
+
+        this.invert = invert;
+
+        if (fixed || !containsMetaChars(pattern)) {
+            this.literal = new LiteralSearcher(pattern, ignoreCase);
+            this.pattern = null;
+        }
+        else {
+            int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+            this.pattern = Pattern.compile(pattern, flags);
+
+            String prefix = getLiteralPrefix(pattern);
+            this.literal = prefix.length() >= MIN_PREFIX_LENGTH ? new LiteralSearcher(prefix, ignoreCase) : null;
+        }
+    }
+
+    /**
+     * Check if the line is selected, taking inversion into account.
+     */
+    public boolean matches(final CharSequence line) {
+        assert line != null;
+
+        return find(line) != invert;
+    }
+
+    /**
+     * Whether the pattern is searched for as a plain string.
+     */
+    public boolean isLiteral() {
+        return pattern == null;
+    }
+
+    private boolean find(final CharSequence line) {
+        if (literal != null && literal.indexIn(line) < 0) {
+            return false;
+        }
+        if (pattern == null) {
+            return true;
+        }
+
+        Matcher matcher = pattern.matcher(line);
+        return matcher.find();
+    }
+
+    private static boolean containsMetaChars(final String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (META_CHARS.indexOf(pattern.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the literal text every match of the regular expression must start with, or an empty string if there is none.
+     */
+    static String getLiteralPrefix(final String pattern) {
+        assert pattern != null;
+
+        // Any alternation may make the prefix optional
+        if (pattern.indexOf('|') >= 0) {
+            return "";
+        }
+
+        int start = pattern.startsWith("^") ? 1 : 0;
+        int end = start;
+        while (end < pattern.length() && META_CHARS.indexOf(pattern.charAt(end)) < 0) {
+            end++;
+        }
+
+        // The last char may be made optional or repeated by a quantifier
+        if (end < pattern.length() && end > start && "?*{".indexOf(pattern.charAt(end)) >= 0) {
+            end--;
+        }
+
+        return pattern.substring(start, end);
+    }
+
+    /**
+     * Searches for a fixed string using the Boyer-Moore-Horspool algorithm.
+     */
+    static class LiteralSearcher
+    {
+        private final char[] needle;
+
+        private final boolean ignoreCase;
+
+        /**
+         * Shift per low byte of the char; chars sharing a low byte take the smallest shift, which is always safe.
+         */
+        private final int[] shifts = new int[256];
+
+        public LiteralSearcher(final String literal, final boolean ignoreCase) {
+            assert literal != null;
+
+            this.ignoreCase = ignoreCase;
+            this.needle = new char[literal.length()];
+            for (int i = 0; i < needle.length; i++) {
+                needle[i] = fold(literal.charAt(i));
+            }
+
+            int m = needle.length;
+            for (int i = 0; i < shifts.length; i++) {
+                shifts[i] = m;
+            }
+            for (int i = 0; i < m - 1; i++) {
+                shifts[needle[i] & 0xFF] = m - 1 - i;
+            }
+        }
+
+        private char fold(final char c) {
+            return ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+        }
+
+        /**
+         * Returns the index of the first occurrence of the literal, or -1 if there is none.
+         */
+        public int indexIn(final CharSequence text) {
+            assert text != null;
+
+            int m = needle.length;
+            if (m == 0) {
+                return 0;
+            }
+
+            int last = m - 1;
+            int limit = text.length() - m;
+            for (int i = 0; i <= limit;) {
+                char c = fold(text.charAt(i + last));
+                if (c == needle[last]) {
+                    int j = last - 1;
+                    while (j >= 0 && fold(text.charAt(i + j)) == needle[j]) {
+                        j--;
+                    }
+                    if (j < 0) {
+                        return i;
+                    }
+                }
+                i += shifts[c & 0xFF];
+            }
+
+            return -1;
+        }
+    }
+}
@@ -23,13 +23,9 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import java.io.BufferedInputStream;
-import java.io.InputStream;
+import java.util.Iterator;
+import java.io.File;
 import java.io.PrintWriter;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 
 import org.apache.geronimo.gshell.vfs.support.VfsActionSupport;
 import org.apache.geronimo.gshell.vfs.FileObjects;
@@ -37,6 +33,9 @@ import org.apache.geronimo.gshell.clp.Option;
 import org.apache.geronimo.gshell.clp.Argument;
 import org.apache.geronimo.gshell.command.CommandContext;
 import org.apache.geronimo.gshell.io.Closer;
+import org.apache.geronimo.gshell.io.IO;
+import org.apache.geronimo.gshell.io.ObjectChannel;
+import org.apache.geronimo.gshell.notification.ResultNotification;
 import org.apache.commons.vfs.FileObject;
 
 /**
@@ -67,6 +66,17 @@ public class SortAction extends VfsActionSupport {
     @Option(name = "-n")
     private boolean numeric;
 
+    @Option(name = "-S")
+    private String bufferSize;
+
+    @Option(name = "-T")
+    private String tempDir;
+
+    private File tempDirectory;
+
+    @Option(name = "--parallel")
+    private int parallel = Runtime.getRuntime().availableProcessors();
+
     @Argument(index = 0, required=false)
     private String path;
 
@@ -74,6 +84,10 @@ public class SortAction extends VfsActionSupport {
     public Object execute(CommandContext context) throws Exception {
         assert context != null;
 
+        if (tempDir != null) {
+            tempDirectory = resolveTempDirectory(context, tempDir);
+        }
+
         if (path != null) {
             FileObject file = resolveFile(context, path);
 
@@ -84,21 +98,48 @@ public class SortAction extends VfsActionSupport {
                 FileObjects.close(file);
             }
         }
+        else if (context.getIo().acceptObjects()) {
+            sort(context.getIo());
+        }
         else {
-            sort(context.getIo().inputStream, context.getIo().out);
+            sort(LineInput.open(context.getIo().inputStream), context.getIo().out);
         }
         return Result.SUCCESS;
     }
 
+    /**
+     * Resolve the directory sorted runs are spilled to against the current directory; it must be local, as the runs
+     * are written directly.
+     */
+    private File resolveTempDirectory(final CommandContext context, final String path) throws Exception {
+        assert context != null;
+        assert path != null;
+
+        FileObject dir = resolveFile(context, path);
+
+        ensureFileExists(dir);
+        ensureFileHasChildren(dir);
+
+        try {
+            if (!getFileSystemAccess().isLocalFile(dir)) {
+                throw new ResultNotification("Temporary directory is not local: " + dir.getName(), Result.FAILURE);
+            }
+
+            return getFileSystemAccess().getLocalFile(dir);
+        }
+        finally {
+            FileObjects.close(dir);
+        }
+    }
+
     protected void sort(final CommandContext context, final FileObject file) throws Exception {
         assert context != null;
         assert file != null;
 
         ensureFileExists(file);
         ensureFileHasContent(file);
-        ensureFileIsReadable(file);
 
-        BufferedInputStream input = new BufferedInputStream(file.getContent().getInputStream());
+        LineInput input = LineInput.open(getFileSystemAccess(), file);
         try {
             sort(input, context.getIo().out);
         }
@@ -107,22 +148,113 @@ public class SortAction extends VfsActionSupport {
         }
     }
 
-    protected void sort(InputStream input, PrintWriter out) throws Exception {
-        BufferedReader r = new BufferedReader(new InputStreamReader(input));
-        List<String> strings = new ArrayList<String>();
-        for (String s = r.readLine(); s != null; s = r.readLine()) {
-            strings.add(s);
-        }
+    private SortComparator createComparator() {
         char sep = (separator == null || separator.length() == 0) ? '\0' : separator.charAt(0);
-        Collections.sort(strings, new SortComparator(caseInsensitive, reverse, ignoreBlanks, numeric, sep, sortFields));
+        return new SortComparator(caseInsensitive, reverse, ignoreBlanks, numeric, sep, sortFields);
+    }
+
+    /**
+     * Sort objects from the previous stage by their text, handing them on as-is.  Objects can not be spilled to disk,
+     * so they are sorted in memory.
+     */
+    protected void sort(final IO io) throws Exception {
+        assert io != null;
+
+        SortComparator comparator = createComparator();
+        List<Entry> entries = new ArrayList<Entry>();
+
+        for (ObjectChannel.Item item = io.readItem(); item != null; item = io.readItem()) {
+            entries.add(new Entry(item, comparator.decorate(item.text)));
+        }
+
+        final Comparator<SortComparator.Line> lineComparator = comparator.getLineComparator();
+        Collections.sort(entries, new Comparator<Entry>() {
+            public int compare(final Entry e1, final Entry e2) {
+                return lineComparator.compare(e1.line, e2.line);
+            }
+        });
+
         String last = null;
-        for (String s : strings) {
-            if (last == null) {
+        for (Entry entry : entries) {
+            String text = entry.item.text;
+            if (!unique || last == null || !text.equals(last)) {
+                io.emit(entry.item.object, text);
+            }
+            last = text;
+        }
+    }
+
+    private static class Entry
+    {
+        private final ObjectChannel.Item item;
+
+        private final SortComparator.Line line;
+
+        public Entry(final ObjectChannel.Item item, final SortComparator.Line line) {
+            this.item = item;
+            this.line = line;
+        }
+    }
+
+    protected void sort(LineInput input, PrintWriter out) throws Exception {
+        SortComparator comparator = createComparator();
+        ExternalSorter sorter = new ExternalSorter(comparator, getMemoryLimit(), tempDirectory, Math.max(1, parallel));
+
+        try {
+            for (String s = input.readLine(); s != null; s = input.readLine()) {
+                sorter.add(s);
+            }
+
+            if (sorter.getRunCount() != 0) {
+                log.debug("Spilled {} runs to disk", sorter.getRunCount());
+            }
+
+            String last = null;
+            for (Iterator<String> iter = sorter.sort(); iter.hasNext();) {
+                String s = iter.next();
+                if (!unique || last == null || !s.equals(last)) {
+                    out.println(s);
+                }
                 last = s;
-            } else if (!unique || !s.equals(last)) {
-                out.println(s);
             }
         }
+        finally {
+            sorter.close();
+        }
+    }
+
+    /**
+     * The memory budget from <tt>-S</tt>, which takes a number of bytes with an optional K, M or G suffix;
+     * defaults to a quarter of the maximum heap.
+     */
+    private long getMemoryLimit() {
+        if (bufferSize == null || bufferSize.length() == 0) {
+            return Math.max(1024 * 1024, Runtime.getRuntime().maxMemory() / 4);
+        }
+
+        String size = bufferSize.trim().toUpperCase();
+        long multiplier = 1;
+
+        switch (size.charAt(size.length() - 1)) {
+            case 'G':
+                multiplier *= 1024;
+            case 'M':
+                multiplier *= 1024;
+            case 'K':
+                multiplier *= 1024;
+                size = size.substring(0, size.length() - 1);
+                break;
+            case 'B':
+                size = size.substring(0, size.length() - 1);
+                break;
+        }
+
+        long limit = Long.parseLong(size) * multiplier;
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        }
+
+        return limit;
     }
 
     public static class SortComparator implements Comparator<String> {
@@ -132,16 +264,7 @@ public class SortAction extends VfsActionSupport {
         private boolean ignoreBlanks;
         private boolean numeric;
         private char separator;
-        private List<Key> sortKeys;
-
-        private static Pattern fpPattern;
-        static {
-            final String Digits     = "(\\p{Digit}+)";
-            final String HexDigits  = "(\\p{XDigit}+)";
-            final String Exp        = "[eE][+-]?" + Digits;
-            final String fpRegex    = "([\\x00-\\x20]*[+-]?(NaN|Infinity|(((" + Digits + "(\\.)?(" + Digits + "?)(" + Exp + ")?)|(\\.(" + Digits + ")(" + Exp + ")?)|(((0[xX]" + HexDigits + "(\\.)?)|(0[xX]" + HexDigits + "?(\\.)" + HexDigits + "))[pP][+-]?" + Digits + "))" + "[fFdD]?))[\\x00-\\x20]*)(.*)";
-            fpPattern = Pattern.compile(fpRegex);
-        }
+        private Key[] sortKeys;
 
         public SortComparator(boolean caseInsensitive,
                               boolean reverse,
@@ -158,26 +281,45 @@ public class SortAction extends VfsActionSupport {
                 sortFields = new ArrayList<String>();
                 sortFields.add("1");
             }
-            sortKeys = new ArrayList<Key>();
-            for (String f : sortFields) {
-                sortKeys.add(new Key(f));
+            sortKeys = new Key[sortFields.size()];
+            for (int i = 0; i < sortKeys.length; i++) {
+                sortKeys[i] = new Key(sortFields.get(i));
             }
         }
 
+        /**
+         * Extract the sort keys of a line once, so comparisons only need to look at the precomputed regions and values.
+         */
+        public Line decorate(String str) {
+            int[] fields = fieldIndexes(str);
+            int[] regions = new int[sortKeys.length * 2];
+            double[] values = null;
+            for (int i = 0; i < sortKeys.length; i++) {
+                Key key = sortKeys[i];
+                getSortKey(str, fields, key, regions, i * 2);
+                if (key.numeric) {
+                    if (values == null) {
+                        values = new double[sortKeys.length];
+                    }
+                    values[i] = parseNumber(str, regions[i * 2], regions[i * 2 + 1]);
+                }
+            }
+            return new Line(str, regions, values);
+        }
+
         public int compare(String o1, String o2) {
+            return compare(decorate(o1), decorate(o2));
+        }
+
+        public int compare(Line l1, Line l2) {
             int res = 0;
 
-            List<Integer> fi1 = getFieldIndexes(o1);
-            List<Integer> fi2 = getFieldIndexes(o2);
-            for (Key key : sortKeys) {
-                int[] k1 = getSortKey(o1, fi1, key);
-                int[] k2 = getSortKey(o2, fi2, key);
+            for (int i = 0; i < sortKeys.length; i++) {
+                Key key = sortKeys[i];
                 if (key.numeric) {
-                    Double d1 = getDouble(o1, k1[0], k1[1]);
-                    Double d2 = getDouble(o2, k2[0], k2[1]);
-                    res = d1.compareTo(d2);
+                    res = Double.compare(l1.values[i], l2.values[i]);
                 } else {
-                    res = compareRegion(o1, k1[0], k1[1], o2, k2[0], k2[1], key.caseInsensitive);
+                    res = compareRegion(l1.text, l1.regions[i * 2], l1.regions[i * 2 + 1], l2.text, l2.regions[i * 2], l2.regions[i * 2 + 1], key.caseInsensitive);
                 }
                 if (res != 0) {
                     if (key.reverse) {
@@ -189,10 +331,58 @@ public class SortAction extends VfsActionSupport {
             return res;
         }
 
-        protected Double getDouble(String s, int start, int end) {
-            Matcher m = fpPattern.matcher(s.substring(start, end));
-            m.find();
-            return new Double(s.substring(0, m.end(1)));
+        /**
+         * Comparator for decorated lines.
+         */
+        public Comparator<Line> getLineComparator() {
+            return new Comparator<Line>() {
+                public int compare(Line l1, Line l2) {
+                    return SortComparator.this.compare(l1, l2);
+                }
+            };
+        }
+
+        /**
+         * Parse the leading decimal number of a region, ignoring leading blanks; regions without one count as zero.
+         */
+        protected double parseNumber(String s, int start, int end) {
+            int i = start;
+            while (i < end && s.charAt(i) <= ' ') {
+                i++;
+            }
+            int begin = i;
+            if (i < end && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+                i++;
+            }
+            int digits = 0;
+            while (i < end && Character.isDigit(s.charAt(i))) {
+                i++;
+                digits++;
+            }
+            if (i < end && s.charAt(i) == '.') {
+                i++;
+                while (i < end && Character.isDigit(s.charAt(i))) {
+                    i++;
+                    digits++;
+                }
+            }
+            if (digits == 0) {
+                return 0;
+            }
+            // Only take the exponent if it is complete
+            if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+                int j = i + 1;
+                if (j < end && (s.charAt(j) == '+' || s.charAt(j) == '-')) {
+                    j++;
+                }
+                if (j < end && Character.isDigit(s.charAt(j))) {
+                    while (j < end && Character.isDigit(s.charAt(j))) {
+                        j++;
+                    }
+                    i = j;
+                }
+            }
+            return Double.parseDouble(s.substring(begin, i));
         }
 
         protected int compareRegion(String s1, int start1, int end1, String s2, int start2, int end2, boolean caseInsensitive) {
@@ -219,70 +409,123 @@ public class SortAction extends VfsActionSupport {
             return n1 - n2;
         }
 
-        protected int[] getSortKey(String str, List<Integer> fields, Key key) {
+        /**
+         * Store the start and end of the key region of a line at <tt>regions[offset]</tt> and <tt>regions[offset + 1]</tt>.
+         */
+        protected void getSortKey(String str, int[] fields, Key key, int[] regions, int offset) {
             int start;
             int end;
-            if (key.startField * 2 < fields.size()) {
-                start = fields.get((key.startField - 1) * 2);
+            if (key.startField * 2 < fields.length) {
+                start = fields[(key.startField - 1) * 2];
                 if (key.ignoreBlanksStart) {
-                    while (start < fields.get((key.startField - 1) * 2 + 1) && Character.isWhitespace(str.charAt(start))) {
+                    while (start < fields[(key.startField - 1) * 2 + 1] && Character.isWhitespace(str.charAt(start))) {
                         start++;
                     }
                 }
                 if (key.startChar > 0) {
-                    start = Math.min(start + key.startChar - 1, fields.get((key.startField - 1) * 2 + 1));
+                    start = Math.min(start + key.startChar - 1, fields[(key.startField - 1) * 2 + 1]);
                 }
             } else {
                 start = 0;
             }
-            if (key.endField > 0 && key.endField * 2 < fields.size()) {
-                end =  fields.get((key.endField - 1) * 2);
+            if (key.endField > 0 && key.endField * 2 < fields.length) {
+                end =  fields[(key.endField - 1) * 2];
                 if (key.ignoreBlanksEnd) {
-                    while (end < fields.get((key.endField - 1) * 2 + 1) && Character.isWhitespace(str.charAt(end))) {
+                    while (end < fields[(key.endField - 1) * 2 + 1] && Character.isWhitespace(str.charAt(end))) {
                         end++;
                     }
                 }
                 if (key.endChar > 0) {
-                    end = Math.min(end + key.endChar - 1, fields.get((key.endField - 1) * 2 + 1));
+                    end = Math.min(end + key.endChar - 1, fields[(key.endField - 1) * 2 + 1]);
                 }
             } else {
                 end = str.length();
             }
-            return new int[] { start, end };
+            regions[offset] = start;
+            regions[offset + 1] = end;
         }
 
         protected List<Integer> getFieldIndexes(String o) {
-            List<Integer> fields = new ArrayList<Integer>();
+            int[] indexes = fieldIndexes(o);
+            List<Integer> fields = new ArrayList<Integer>(indexes.length);
+            for (int index : indexes) {
+                fields.add(index);
+            }
+            return fields;
+        }
+
+        /**
+         * Start and end (inclusive) of each field of a line, as consecutive pairs.
+         */
+        protected int[] fieldIndexes(String o) {
+            int[] fields = new int[8];
+            int count = 0;
             if (o.length() > 0) {
                 if (separator == '\0') {
-                    int i = 0;
-                    fields.add(0);
+                    fields[count++] = 0;
                     for (int idx = 1; idx < o.length(); idx++) {
                         if (Character.isWhitespace(o.charAt(idx)) && !Character.isWhitespace(o.charAt(idx - 1))) {
-                            fields.add(idx - 1);
-                            fields.add(idx);
+                            fields = ensureCapacity(fields, count + 2);
+                            fields[count++] = idx - 1;
+                            fields[count++] = idx;
                         }
                     }
-                    fields.add(o.length() - 1);
+                    fields = ensureCapacity(fields, count + 1);
+                    fields[count++] = o.length() - 1;
                 } else {
                     int last = -1;
                     for (int idx = o.indexOf(separator); idx >= 0; idx = o.indexOf(separator, idx + 1)) {
+                        fields = ensureCapacity(fields, count + 2);
                         if (last >= 0) {
-                            fields.add(last);
-                            fields.add(idx - 1);
+                            fields[count++] = last;
+                            fields[count++] = idx - 1;
                         } else if (idx > 0) {
-                            fields.add(0);
-                            fields.add(idx - 1);
+                            fields[count++] = 0;
+                            fields[count++] = idx - 1;
                         }
                         last = idx + 1;
                     }
                     if (last < o.length()) {
-                        fields.add(last < 0 ? 0 : last);
-                        fields.add(o.length() - 1);
+                        fields = ensureCapacity(fields, count + 2);
+                        fields[count++] = last < 0 ? 0 : last;
+                        fields[count++] = o.length() - 1;
                     }
                 }
             }
-            return fields;
+            if (count == fields.length) {
+                return fields;
+            }
+            int[] result = new int[count];
+            System.arraycopy(fields, 0, result, 0, count);
+            return result;
+        }
+
+        private static int[] ensureCapacity(int[] array, int size) {
+            if (size <= array.length) {
+                return array;
+            }
+            int[] result = new int[Math.max(size, array.length * 2)];
+            System.arraycopy(array, 0, result, 0, array.length);
+            return result;
+        }
+
+        /**
+         * A line with its sort key regions, and parsed values for numeric keys.
+         */
+        public static class Line {
+            final String text;
+            final int[] regions;
+            final double[] values;
+
+            Line(String text, int[] regions, double[] values) {
+                this.text = text;
+                this.regions = regions;
+                this.values = values;
+            }
+
+            public String getText() {
+                return text;
+            }
         }
 
         public class Key {
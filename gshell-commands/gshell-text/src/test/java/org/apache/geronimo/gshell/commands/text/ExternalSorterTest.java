@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commands.text;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link ExternalSorter} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ExternalSorterTest extends TestCase {
+
+    private List<String> createLines(int count) {
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(Integer.toString(random.nextInt(count / 2)) + " line " + i);
+        }
+        return lines;
+    }
+
+    private List<String> sort(List<String> lines, SortAction.SortComparator comparator, long memoryLimit, int threads, int expectedRuns) throws Exception {
+        return sort(lines, comparator, memoryLimit, threads, expectedRuns, new ExternalSorter(comparator, memoryLimit, null, threads));
+    }
+
+    private List<String> sort(List<String> lines, SortAction.SortComparator comparator, long memoryLimit, int threads, int expectedRuns, ExternalSorter sorter) throws Exception {
+        try {
+            for (String line : lines) {
+                sorter.add(line);
+            }
+            if (expectedRuns >= 0) {
+                assertEquals(expectedRuns, sorter.getRunCount());
+            }
+            else {
+                assertTrue(sorter.getRunCount() > 1);
+            }
+
+            List<String> result = new ArrayList<String>(lines.size());
+            for (Iterator<String> iter = sorter.sort(); iter.hasNext();) {
+                result.add(iter.next());
+            }
+            return result;
+        }
+        finally {
+            sorter.close();
+        }
+    }
+
+    public void testInMemory() throws Exception {
+        List<String> lines = createLines(1000);
+        SortAction.SortComparator comparator = new SortAction.SortComparator(false, false, false, false, '\0', null);
+
+        List<String> expected = new ArrayList<String>(lines);
+        Collections.sort(expected, comparator);
+
+        assertEquals(expected, sort(lines, comparator, Long.MAX_VALUE, 1, 0));
+    }
+
+    public void testSpilled() throws Exception {
+        List<String> lines = createLines(5000);
+        SortAction.SortComparator comparator = new SortAction.SortComparator(false, false, false, false, '\0', null);
+
+        List<String> expected = new ArrayList<String>(lines);
+        Collections.sort(expected, comparator);
+
+        assertEquals(expected, sort(lines, comparator, 16 * 1024, 1, -1));
+    }
+
+    public void testParallelIsStable() throws Exception {
+        List<String> lines = createLines(50000);
+
+        // Only compare the leading number, so stability is visible in the result
+        SortAction.SortComparator comparator = new SortAction.SortComparator(false, false, false, true, '\0', null);
+
+        List<String> expected = new ArrayList<String>(lines);
+        Collections.sort(expected, comparator);
+
+        assertEquals(expected, sort(lines, comparator, Long.MAX_VALUE, 4, 0));
+        assertEquals(expected, sort(lines, comparator, 256 * 1024, 4, -1));
+    }
+
+    public void testMergePasses() throws Exception {
+        List<String> lines = createLines(20000);
+        SortAction.SortComparator comparator = new SortAction.SortComparator(false, false, false, true, '\0', null);
+
+        List<String> expected = new ArrayList<String>(lines);
+        Collections.sort(expected, comparator);
+
+        File dir = File.createTempFile("gshell-sort-test", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        try {
+            ExternalSorter sorter = new ExternalSorter(comparator, 16 * 1024, dir, 1);
+            sorter.setMergeWidth(4);
+
+            assertEquals(expected, sort(lines, comparator, 16 * 1024, 1, -1, sorter));
+
+            // Merged runs are deleted as they go, and the rest on close
+            assertEquals(0, dir.list().length);
+        }
+        finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+}
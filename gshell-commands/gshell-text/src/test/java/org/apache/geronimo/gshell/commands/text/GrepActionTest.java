@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commands.text;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.clp.CommandLineProcessor;
+import org.apache.geronimo.gshell.clp.Option;
+
+/**
+ * Unit tests for the {@link GrepAction} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class GrepActionTest
+    extends TestCase
+{
+    /**
+     * Mirrors the options which the command support adds beside every action.
+     */
+    private static class HelpOptions
+    {
+        @Option(name="-h", aliases={"--help"}, requireOverride=true)
+        boolean displayHelp;
+    }
+
+    private HelpOptions help;
+
+    private CommandLineProcessor clp;
+
+    protected void setUp() throws Exception {
+        clp = new CommandLineProcessor();
+        clp.addBean(new GrepAction());
+
+        help = new HelpOptions();
+        clp.addBean(help);
+    }
+
+    protected void tearDown() throws Exception {
+        help = null;
+        clp = null;
+    }
+
+    public void testOptions() throws Exception {
+        clp.process("-i", "-n", "--no-filename", "--parallel", "2", "pattern", "a.txt", "b.txt");
+
+        assertFalse(help.displayHelp);
+    }
+
+    public void testHelp() throws Exception {
+        clp.process("-h");
+
+        assertTrue(help.displayHelp);
+    }
+}
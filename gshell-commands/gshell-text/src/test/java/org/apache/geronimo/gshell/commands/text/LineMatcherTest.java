@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.commands.text;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link LineMatcher} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LineMatcherTest
+    extends TestCase
+{
+    public void testLiteral() {
+        LineMatcher matcher = new LineMatcher("ERROR", false, false, false);
+        assertTrue(matcher.isLiteral());
+
+        assertTrue(matcher.matches("2008-01-01 ERROR something failed"));
+        assertTrue(matcher.matches("ERROR"));
+        assertFalse(matcher.matches("2008-01-01 error something failed"));
+        assertFalse(matcher.matches("ERRO"));
+        assertFalse(matcher.matches(""));
+    }
+
+    public void testLiteralIgnoreCase() {
+        LineMatcher matcher = new LineMatcher("Error", false, true, false);
+
+        assertTrue(matcher.matches("an eRRoR here"));
+        assertFalse(matcher.matches("an err or here"));
+    }
+
+    public void testFixedStrings() {
+        LineMatcher matcher = new LineMatcher("a.b*", true, false, false);
+        assertTrue(matcher.isLiteral());
+
+        assertTrue(matcher.matches("xa.b*x"));
+        assertFalse(matcher.matches("xaxbbx"));
+    }
+
+    public void testRegex() {
+        LineMatcher matcher = new LineMatcher("fo+ba?r", false, false, false);
+        assertFalse(matcher.isLiteral());
+
+        assertTrue(matcher.matches("fooobr"));
+        assertTrue(matcher.matches("xxfobar"));
+        assertFalse(matcher.matches("fbar"));
+    }
+
+    public void testInvert() {
+        LineMatcher matcher = new LineMatcher("^#", false, false, true);
+
+        assertTrue(matcher.matches("value"));
+        assertFalse(matcher.matches("# comment"));
+    }
+
+    public void testLiteralPrefix() {
+        assertEquals("abc", LineMatcher.getLiteralPrefix("abc.*"));
+        assertEquals("abc", LineMatcher.getLiteralPrefix("^abc\\d"));
+        assertEquals("ab", LineMatcher.getLiteralPrefix("abc?"));
+        assertEquals("ab", LineMatcher.getLiteralPrefix("abc{2}"));
+        assertEquals("abc", LineMatcher.getLiteralPrefix("abc+"));
+        assertEquals("", LineMatcher.getLiteralPrefix("abc|def"));
+        assertEquals("", LineMatcher.getLiteralPrefix("(?i)abc"));
+    }
+
+    public void testLiteralSearcher() {
+        LineMatcher.LiteralSearcher searcher = new LineMatcher.LiteralSearcher("needle", false);
+
+        assertEquals(0, searcher.indexIn("needle in a haystack"));
+        assertEquals(14, searcher.indexIn("haystack with needle"));
+        assertEquals(-1, searcher.indexIn("haystack with needl"));
+        assertEquals(-1, searcher.indexIn("short"));
+
+        // Chars sharing a low byte with a needle char must not skip past a match
+        searcher = new LineMatcher.LiteralSearcher("a\u0161b", false);
+        assertEquals(2, searcher.indexIn("\u0161aa\u0161b"));
+    }
+}
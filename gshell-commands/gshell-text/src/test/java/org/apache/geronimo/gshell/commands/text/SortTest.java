@@ -18,12 +18,18 @@
  */
 package org.apache.geronimo.gshell.commands.text;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Collections;
 
 import junit.framework.TestCase;
 import org.apache.geronimo.gshell.commands.text.SortAction;
+import org.apache.geronimo.gshell.io.IO;
+import org.apache.geronimo.gshell.io.ObjectChannel;
+import org.apache.geronimo.gshell.io.Pipe;
 
 public class SortTest extends TestCase {
 
@@ -58,4 +64,44 @@ public class SortTest extends TestCase {
         assertTrue(Arrays.asList(s1, s2, s0).equals(strings));
     }
 
+    public void testSortNumericField() {
+        String s0 = "b 1e3 x";
+        String s1 = "c -2.5x x";
+        String s2 = "a none x";
+        String s3 = "d 40 x";
+        List<String> strings = Arrays.asList(s0, s1, s2, s3);
+
+        SortAction.SortComparator comparator = new SortAction.SortComparator(false, false, false, false, '\0', Arrays.asList("2n"));
+        Collections.sort(strings, comparator);
+        assertTrue(Arrays.asList(s1, s2, s3, s0).equals(strings));
+
+        assertTrue(comparator.compare(comparator.decorate(s3), comparator.decorate(s0)) < 0);
+        assertEquals(0, comparator.compare(comparator.decorate(s0), comparator.decorate(s0)));
+    }
+
+    public void testSortObjects() throws Exception {
+        Object o1 = new Object();
+        Object o2 = new Object();
+
+        ObjectChannel input = new ObjectChannel(new Pipe());
+        input.put(o1, "b");
+        input.put(o2, "a");
+        input.getOutputStream().close();
+
+        ObjectChannel output = new ObjectChannel(new Pipe());
+
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        IO io = new IO(new ByteArrayInputStream(new byte[0]), new PrintStream(buff), false);
+        io.setObjectInput(input);
+        io.setObjectOutput(output);
+
+        assertTrue(io.acceptObjects());
+        new SortAction().sort(io);
+        output.getOutputStream().close();
+
+        // The objects themselves are handed on, in the order of their text
+        assertSame(o2, output.take());
+        assertSame(o1, output.take());
+        assertNull(output.take());
+    }
 }
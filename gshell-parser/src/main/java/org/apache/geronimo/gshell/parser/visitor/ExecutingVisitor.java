@@ -19,6 +19,7 @@
 
 package org.apache.geronimo.gshell.parser.visitor;
 
+import org.apache.geronimo.gshell.ansi.Ansi;
 import org.apache.geronimo.gshell.command.Arguments;
 import org.apache.geronimo.gshell.command.Variables;
 import org.apache.geronimo.gshell.commandline.CommandLineExecutionFailed;
@@ -26,6 +27,9 @@ import org.apache.geronimo.gshell.commandline.CommandLineExecutor;
 import org.apache.geronimo.gshell.interpolation.VariableInterpolator;
 import org.apache.geronimo.gshell.io.Closer;
 import org.apache.geronimo.gshell.io.IO;
+import org.apache.geronimo.gshell.io.ObjectChannel;
+import org.apache.geronimo.gshell.io.Pipe;
+import org.apache.geronimo.gshell.io.SystemOutputHijacker;
 import org.apache.geronimo.gshell.notification.ErrorNotification;
 import org.apache.geronimo.gshell.notification.Notification;
 import org.apache.geronimo.gshell.parser.ASTCommandLine;
@@ -38,17 +42,22 @@ import org.apache.geronimo.gshell.parser.CommandLineParserVisitor;
 import org.apache.geronimo.gshell.parser.SimpleNode;
 import org.apache.geronimo.gshell.shell.Shell;
 import org.apache.geronimo.gshell.shell.ShellContext;
+import org.apache.geronimo.gshell.shell.ShellContextHolder;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -59,12 +68,32 @@ import java.util.concurrent.atomic.AtomicReference;
 public class ExecutingVisitor
     implements CommandLineParserVisitor
 {
+    /**
+     * Shared pool of daemon threads for pipeline stages; idle threads are reused and eventually reaped.
+     *
+     * Threads only hold the thread context of the stage they are running, see {@link InheritingRunnable}.
+     */
+    private static final ExecutorService DEFAULT_STAGE_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public Thread newThread(final Runnable task) {
+            Thread t = new Thread(task, "gshell-pipeline-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            t.setContextClassLoader(ExecutingVisitor.class.getClassLoader());
+            return t;
+        }
+    });
+
     private final ShellContext context;
 
     private final CommandLineExecutor executor;
 
     private final VariableInterpolator interp = new VariableInterpolator();
 
+    private Executor stageExecutor = DEFAULT_STAGE_EXECUTOR;
+
+    private int pipeBufferSize = Pipe.DEFAULT_BUFFER_SIZE;
+
     public ExecutingVisitor(final ShellContext context, final CommandLineExecutor executor) {
         assert context != null;
         assert executor != null;
@@ -73,6 +102,26 @@ public class ExecutingVisitor
         this.executor = executor;
     }
 
+    /**
+     * Set the executor used to run all but the last stage of a pipeline.
+     *
+     * <p>
+     * Stages block on each other, so the executor must be able to run every stage of a pipeline concurrently.
+     */
+    public void setStageExecutor(final Executor stageExecutor) {
+        assert stageExecutor != null;
+
+        this.stageExecutor = stageExecutor;
+    }
+
+    public void setPipeBufferSize(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pipe buffer size must be positive: " + size);
+        }
+
+        this.pipeBufferSize = size;
+    }
+
     public Object visit(final SimpleNode node, final Object data) {
         assert node != null;
 
@@ -154,6 +203,13 @@ public class ExecutingVisitor
         return appendString(node.getValue(), data);
     }
 
+    /**
+     * Create a thread for a pipeline stage the stage executor rejected.
+     *
+     * <p>
+     * Stages normally run on the stage executor, so this is no longer called for every stage; use
+     * {@link #setStageExecutor} to control which threads stages run on.
+     */
     protected Thread createThread(final Runnable task) {
         return new Thread(task);
     }
@@ -163,22 +219,28 @@ public class ExecutingVisitor
 
         // Prepare IOs
         final IO[] ios = new IO[commands.length];
-        PipedOutputStream pos = null;
+        ObjectChannel channel = null;
 
         IO io = this.context.getIo();
 
         for (int i = 0; i < ios.length; i++) {
-            InputStream is = (i == 0) ? io.inputStream : new PipedInputStream(pos);
+            ObjectChannel input = channel;
+            InputStream is = (i == 0) ? io.inputStream : input.getInputStream();
             OutputStream os;
 
             if (i == ios.length - 1) {
                 os = io.outputStream;
+                channel = null;
             }
             else {
-                os = pos = new PipedOutputStream();
+                channel = new ObjectChannel(new Pipe(pipeBufferSize));
+                os = channel.getOutputStream();
             }
 
             ios[i] = new IO(is, new PrintStream(os), io.errorStream);
+            ios[i].setAnsiEnabled(channel != null ? Boolean.FALSE : io.getAnsiEnabled());
+            ios[i].setObjectInput(input);
+            ios[i].setObjectOutput(channel);
         }
 
         final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
@@ -226,7 +288,14 @@ public class ExecutingVisitor
                 }
             };
             if (idx != commands.length - 1) {
-                createThread(r).start();
+                Runnable stage = new InheritingRunnable(r);
+                try {
+                    stageExecutor.execute(stage);
+                }
+                catch (RejectedExecutionException e) {
+                    // Stages must run concurrently, so never leave one behind
+                    createThread(stage).start();
+                }
             } else {
                 r.run();
             }
@@ -248,4 +317,52 @@ public class ExecutingVisitor
 
         return ref.get();
     }
+
+    /**
+     * Carries the thread context of the submitting thread over to a pooled stage thread, which would otherwise
+     * only have inherited it if the thread had been created for the stage.
+     *
+     * <p>
+     * Pooled threads inherit the context of whichever thread happened to create them, and keep whatever a stage
+     * leaves behind, so the context is replaced on entry and cleared on exit rather than restored.
+     */
+    private static class InheritingRunnable
+        implements Runnable
+    {
+        private final Runnable task;
+
+        private final ShellContext shellContext = ShellContextHolder.get(true);
+
+        private final boolean ansiEnabled = Ansi.isEnabled();
+
+        private final SystemOutputHijacker.StreamRegistration streams = SystemOutputHijacker.getRegistration();
+
+        private final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+        public InheritingRunnable(final Runnable task) {
+            assert task != null;
+
+            this.task = task;
+        }
+
+        public void run() {
+            Thread thread = Thread.currentThread();
+            ClassLoader prevCL = thread.getContextClassLoader();
+
+            ShellContextHolder.set(shellContext);
+            Ansi.setEnabled(ansiEnabled);
+            SystemOutputHijacker.setRegistration(streams);
+            thread.setContextClassLoader(classLoader);
+
+            try {
+                task.run();
+            }
+            finally {
+                ShellContextHolder.set(null);
+                Ansi.clear();
+                SystemOutputHijacker.setRegistration(null);
+                thread.setContextClassLoader(prevCL);
+            }
+        }
+    }
 }
@@ -60,4 +60,11 @@ public class Ansi
     public static boolean isEnabled() {
         return holder.get();
     }
+
+    /**
+     * Forget the flag set for the current thread, reverting to detection.
+     */
+    public static void clear() {
+        holder.remove();
+    }
 }
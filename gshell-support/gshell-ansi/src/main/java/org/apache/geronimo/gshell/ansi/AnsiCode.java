@@ -65,19 +65,27 @@ public enum AnsiCode
 
     private final int code;
 
+    private final String attrib;
+
     private AnsiCode(final int code) {
         this.code = code;
+        this.attrib = ESC + "[" + code + "m";
     }
 
     private AnsiCode(final AnsiCode code) {
         this(code.code);
     }
     
+    /**
+     * Returns the escape sequence which selects this attribute.
+     */
+    public String attrib() {
+        return attrib;
+    }
+
     public static String attrib(final AnsiCode code) {
         assert code != null;
 
-        StringBuilder buff = new StringBuilder();
-        buff.append(ESC).append("[").append(code.code).append("m");
-        return buff.toString();
+        return code.attrib;
     }
 }
@@ -31,7 +31,10 @@ import java.io.Writer;
 public class AnsiRenderWriter
     extends PrintWriter
 {
-    private final AnsiRenderer renderer = new AnsiRenderer();
+    /**
+     * True to render codes, false to strip them (when the sink is not a terminal), or null to use {@link Ansi#isEnabled}.
+     */
+    private volatile Boolean ansiEnabled;
 
     public AnsiRenderWriter(final OutputStream out) {
         super(out);
@@ -49,9 +52,28 @@ public class AnsiRenderWriter
         super(out, autoFlush);
     }
 
+    public Boolean getAnsiEnabled() {
+        return ansiEnabled;
+    }
+
+    public void setAnsiEnabled(final Boolean ansiEnabled) {
+        this.ansiEnabled = ansiEnabled;
+    }
+
+    public boolean isAnsiEnabled() {
+        Boolean flag = ansiEnabled;
+
+        // Late bind the current system detected ANSI state
+        if (flag == null) {
+            return Ansi.isEnabled();
+        }
+
+        return flag;
+    }
+
     public void write(final String s) {
         if (AnsiRenderer.test(s)) {
-            super.write(renderer.render(s));
+            super.write(AnsiRenderer.render(s, isAnsiEnabled()));
         }
         else {
             super.write(s);
@@ -19,6 +19,9 @@
 
 package org.apache.geronimo.gshell.ansi;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Renders ANSI color escape-codes in strings by parsing out some special syntax to pick up the correct fluff to use.
  *
@@ -29,6 +32,10 @@ package org.apache.geronimo.gshell.ansi;
  *  @|<code>(,<code>)*<space><text>|
  * </pre>
  *
+ * <p>
+ * Rendered results of short inputs (prompts, message patterns, {@link #encode} output) are cached, so repeatedly
+ * rendering the same markup only costs a lookup.  When ANSI is disabled the markup is stripped.
+ *
  * @version $Rev$ $Date$
  */
 public class AnsiRenderer
@@ -45,57 +52,173 @@ public class AnsiRenderer
 
     public static final String CODE_LIST_SEPARATOR  = ",";
 
-    private final AnsiBuffer buff = new AnsiBuffer();
+    private static final char CODE_TEXT_SEPARATOR_CHAR = ' ';
+
+    private static final char CODE_LIST_SEPARATOR_CHAR = ',';
+
+    private static final AnsiCode[] CODES = AnsiCode.values();
+
+    /**
+     * Inputs longer than this are rendered without caching.
+     */
+    private static final int MAX_CACHED_LENGTH = 512;
+
+    private static final int MAX_CACHED_TEMPLATES = 1024;
+
+    private static final Map<String,Template> templates = new ConcurrentHashMap<String,Template>();
+
+    private final Boolean ansiEnabled;
+
+    /**
+     * @param ansiEnabled   True to render codes, false to strip them, or null to use {@link Ansi#isEnabled}.
+     */
+    public AnsiRenderer(final Boolean ansiEnabled) {
+        this.ansiEnabled = ansiEnabled;
+    }
+
+    public AnsiRenderer() {
+        this(null);
+    }
+
+    public boolean isAnsiEnabled() {
+        // Late bind the current system detected ANSI state
+        if (ansiEnabled == null) {
+            return Ansi.isEnabled();
+        }
+
+        return ansiEnabled;
+    }
 
     public String render(final String input) throws RenderException {
+        return render(input, isAnsiEnabled());
+    }
+
+    public static String render(final String input, final boolean ansiEnabled) throws RenderException {
         assert input != null;
 
-        // current, prefix and suffix positions
-        int c = 0, p, s;
+        int p = input.indexOf(BEGIN_TOKEN);
+        if (p < 0) {
+            return input;
+        }
 
-        while (c < input.length()) {
-            p = input.indexOf(BEGIN_TOKEN, c);
-            if (p < 0) { break; }
+        if (input.length() > MAX_CACHED_LENGTH) {
+            StringBuilder buff = new StringBuilder(input.length() + 32);
+            scan(input, p, buff, ansiEnabled);
+            return buff.toString();
+        }
+
+        Template template = templates.get(input);
+        if (template == null) {
+            template = new Template(input, p);
+
+            if (templates.size() >= MAX_CACHED_TEMPLATES) {
+                templates.clear();
+            }
+            templates.put(input, template);
+        }
 
+        return ansiEnabled ? template.ansi : template.plain;
+    }
+
+    /**
+     * Renders the given input with any markup stripped.
+     */
+    public static String strip(final String input) throws RenderException {
+        return render(input, false);
+    }
+
+    /**
+     * Pre-rendered forms of an input, with and without ANSI codes.
+     */
+    private static class Template
+    {
+        public final String ansi;
+
+        public final String plain;
+
+        public Template(final String input, final int start) {
+            StringBuilder buff = new StringBuilder(input.length() + 32);
+            scan(input, start, buff, true);
+            ansi = buff.toString();
+
+            buff.setLength(0);
+            scan(input, start, buff, false);
+            plain = buff.toString();
+        }
+    }
+
+    /**
+     * Renders the input into the given buffer in a single pass.
+     *
+     * @param input         The input to render
+     * @param start         The index of the first begin token
+     * @param buff          The buffer to render into
+     * @param ansiEnabled   True to emit codes, false to strip them
+     */
+    private static void scan(final String input, final int start, final StringBuilder buff, final boolean ansiEnabled) {
+        // current, prefix and suffix positions
+        int c = 0, p = start, s;
+
+        while (p >= 0) {
             s = input.indexOf(END_TOKEN, p + BEGIN_TOKEN_SIZE);
             if (s < 0) {
                 throw new RenderException("Missing '" + END_TOKEN + "': " + input);
             }
 
-            String expr = input.substring(p + BEGIN_TOKEN_SIZE, s);
+            buff.append(input, c, p);
 
-            buff.append(input.substring(c, p));
-
-            evaluate(expr);
+            evaluate(input, p + BEGIN_TOKEN_SIZE, s, buff, ansiEnabled);
 
             c = s + END_TOKEN_SIZE;
+            p = input.indexOf(BEGIN_TOKEN, c);
         }
 
-        buff.append(input.substring(c));
-
-        return buff.toString();
+        buff.append(input, c, input.length());
     }
 
-    private void evaluate(final String input) throws RenderException {
-        assert input != null;
+    private static void evaluate(final String input, final int begin, final int end, final StringBuilder buff, final boolean ansiEnabled) {
+        int i = input.indexOf(CODE_TEXT_SEPARATOR_CHAR, begin);
+        if (i < 0 || i >= end) {
+            throw new RenderException("Missing ANSI code/text separator '" + CODE_TEXT_SEPARATOR + "': " + input.substring(begin, end));
+        }
+
+        // Resolve all of the codes before emitting anything
+        for (int b = begin, e; b < i; b = e + 1) {
+            e = input.indexOf(CODE_LIST_SEPARATOR_CHAR, b);
+            if (e < 0 || e > i) {
+                e = i;
+            }
 
-        int i = input.indexOf(CODE_TEXT_SEPARATOR);
-        if (i < 0) {
-            throw new RenderException("Missing ANSI code/text separator '" + CODE_TEXT_SEPARATOR + "': " + input);
+            AnsiCode code = lookup(input, b, e);
+            if (ansiEnabled && code != null) {
+                buff.append(code.attrib());
+            }
         }
 
-        String tmp = input.substring(0, i);
-        String[] codes = tmp.split(CODE_LIST_SEPARATOR);
-        String text = input.substring(i + 1, input.length());
+        buff.append(input, i + 1, end);
+
+        if (ansiEnabled) {
+            buff.append(AnsiCode.OFF.attrib());
+        }
+    }
 
-        for (String name : codes) {
-            AnsiCode code = AnsiCode.valueOf(name.toUpperCase());
-            buff.attrib(code);
+    /**
+     * Returns the code named by the given region, ignoring case, or null if the region is empty.
+     */
+    private static AnsiCode lookup(final String input, final int begin, final int end) {
+        int len = end - begin;
+        if (len == 0) {
+            return null;
         }
 
-        buff.append(text);
+        for (AnsiCode code : CODES) {
+            String name = code.name();
+            if (name.length() == len && input.regionMatches(true, begin, name, 0, len)) {
+                return code;
+            }
+        }
 
-        buff.attrib(AnsiCode.OFF);
+        throw new RenderException("Unknown ANSI code '" + input.substring(begin, end) + "': " + input);
     }
 
     //
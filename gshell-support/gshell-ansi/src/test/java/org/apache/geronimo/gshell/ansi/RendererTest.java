@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.ansi;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the {@link AnsiRenderer} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class RendererTest
+    extends TestCase
+{
+    private static final String BOLD = AnsiCode.BOLD.attrib();
+
+    private static final String RED = AnsiCode.RED.attrib();
+
+    private static final String OFF = AnsiCode.OFF.attrib();
+
+    public void testPlainText() throws Exception {
+        String text = "no markup here";
+
+        assertSame(text, AnsiRenderer.render(text, true));
+    }
+
+    public void testRender() throws Exception {
+        String result = AnsiRenderer.render("a @|bold b| c @|Red,bold d e|", true);
+
+        assertEquals("a " + BOLD + "b" + OFF + " c " + RED + BOLD + "d e" + OFF, result);
+    }
+
+    public void testStrip() throws Exception {
+        assertEquals("a b c d e", AnsiRenderer.strip("a @|bold b| c @|red,bold d e|"));
+    }
+
+    public void testEncode() throws Exception {
+        String text = AnsiRenderer.encode("help", AnsiCode.BOLD);
+
+        assertEquals(BOLD + "help" + OFF, AnsiRenderer.render(text, true));
+        assertEquals("help", AnsiRenderer.render(text, false));
+
+        // Cached results are reused
+        assertSame(AnsiRenderer.render(text, true), AnsiRenderer.render(text, true));
+    }
+
+    public void testLongInput() throws Exception {
+        StringBuilder buff = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            buff.append("x @|bold y| ");
+            expected.append("x ").append(BOLD).append("y").append(OFF).append(" ");
+        }
+
+        assertEquals(expected.toString(), AnsiRenderer.render(buff.toString(), true));
+    }
+
+    public void testMissingEndToken() throws Exception {
+        try {
+            AnsiRenderer.render("@|bold text", true);
+            fail();
+        }
+        catch (AnsiRenderer.RenderException expected) {}
+    }
+
+    public void testMissingSeparator() throws Exception {
+        try {
+            AnsiRenderer.render("@|bold| text", true);
+            fail();
+        }
+        catch (AnsiRenderer.RenderException expected) {}
+    }
+
+    public void testUnknownCode() throws Exception {
+        try {
+            AnsiRenderer.render("@|nosuchcode text|", true);
+            fail();
+        }
+        catch (AnsiRenderer.RenderException expected) {}
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.clp;
+
+import org.apache.geronimo.gshell.clp.setter.CollectionFieldSetter;
+import org.apache.geronimo.gshell.clp.setter.FieldSetter;
+import org.apache.geronimo.gshell.clp.setter.MethodSetter;
+import org.apache.geronimo.gshell.clp.setter.Setter;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable model of the {@link Option} and {@link Argument} annotations of a bean type.
+ *
+ * <p>
+ * Discovering annotations requires reflecting over the entire class hierarchy, so the model is built
+ * once per type and cached.  Binding the model to a bean instance only needs to create setters.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class BeanDescriptor
+{
+    private static final Map<Class,Reference<BeanDescriptor>> cache = new WeakHashMap<Class,Reference<BeanDescriptor>>();
+
+    private final Class type;
+
+    private final List<Binding> options;
+
+    private final List<Binding> arguments;
+
+    private BeanDescriptor(final Class type) {
+        assert type != null;
+
+        this.type = type;
+
+        List<Binding> options = new ArrayList<Binding>();
+        List<Binding> arguments = new ArrayList<Binding>();
+
+        // Recursively process all the methods/fields.
+        for (Class t=type; t!=null; t=t.getSuperclass()) {
+            // Discover methods
+            for (Method method : t.getDeclaredMethods()) {
+                Option option = method.getAnnotation(Option.class);
+                if (option != null) {
+                    options.add(new Binding(method, null, new OptionDescriptor(method.getName(), option, false)));
+                }
+
+                Argument argument = method.getAnnotation(Argument.class);
+                if (argument != null) {
+                    addArgument(arguments, new Binding(method, null, new ArgumentDescriptor(method.getName(), argument, false)), argument);
+                }
+            }
+
+            // Discover fields
+            for (Field field : t.getDeclaredFields()) {
+                boolean multiValued = Collection.class.isAssignableFrom(field.getType());
+
+                Option option = field.getAnnotation(Option.class);
+                if (option != null) {
+                    options.add(new Binding(null, field, new OptionDescriptor(field.getName(), option, multiValued)));
+                }
+
+                Argument argument = field.getAnnotation(Argument.class);
+                if (argument != null) {
+                    addArgument(arguments, new Binding(null, field, new ArgumentDescriptor(field.getName(), argument, multiValued)), argument);
+                }
+            }
+        }
+
+        // Sanity check the argument indexes
+        for (int i=0; i<arguments.size(); i++) {
+            if (arguments.get(i) == null) {
+                throw new IllegalAnnotationError("No argument annotation for index: " + i);
+            }
+        }
+
+        this.options = Collections.unmodifiableList(options);
+        this.arguments = Collections.unmodifiableList(arguments);
+    }
+
+    private static void addArgument(final List<Binding> arguments, final Binding binding, final Argument argument) {
+        int index = argument.index();
+
+        // Make sure the argument will fit in the list
+        while (index >= arguments.size()) {
+            arguments.add(null);
+        }
+
+        if (arguments.get(index) != null) {
+            throw new IllegalAnnotationError("Duplicate argument index: " + index);
+        }
+
+        arguments.set(index, binding);
+    }
+
+    public Class getType() {
+        return type;
+    }
+
+    /**
+     * Option bindings, in discovery order.
+     */
+    public List<Binding> getOptions() {
+        return options;
+    }
+
+    /**
+     * Argument bindings, indexed by {@link Argument#index}.
+     */
+    public List<Binding> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Returns the descriptor for the given type, building it on first use.
+     */
+    public static BeanDescriptor forType(final Class type) {
+        assert type != null;
+
+        synchronized (cache) {
+            Reference<BeanDescriptor> ref = cache.get(type);
+            BeanDescriptor desc = ref != null ? ref.get() : null;
+
+            if (desc == null) {
+                desc = new BeanDescriptor(type);
+
+                // Soft-reference the value, as it refers back to the type which would otherwise pin the weak key
+                cache.put(type, new SoftReference<BeanDescriptor>(desc));
+            }
+
+            return desc;
+        }
+    }
+
+    /**
+     * An annotated method or field, with its pre-built descriptor.
+     */
+    public static final class Binding
+    {
+        private final Method method;
+
+        private final Field field;
+
+        public final Descriptor descriptor;
+
+        private Binding(final Method method, final Field field, final Descriptor descriptor) {
+            assert method != null || field != null;
+            assert descriptor != null;
+
+            this.method = method;
+            this.field = field;
+            this.descriptor = descriptor;
+        }
+
+        public Setter createSetter(final Object bean) {
+            assert bean != null;
+
+            if (method != null) {
+                return new MethodSetter(bean, method);
+            }
+            else if (Collection.class.isAssignableFrom(field.getType())) {
+                return new CollectionFieldSetter(bean, field);
+            }
+            else {
+                return new FieldSetter(bean, field);
+            }
+        }
+    }
+}
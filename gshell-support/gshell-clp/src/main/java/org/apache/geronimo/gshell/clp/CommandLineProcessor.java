@@ -22,21 +22,15 @@ package org.apache.geronimo.gshell.clp;
 import org.apache.geronimo.gshell.clp.handler.Handler;
 import org.apache.geronimo.gshell.clp.handler.Handlers;
 import org.apache.geronimo.gshell.clp.handler.Parameters;
-import org.apache.geronimo.gshell.clp.setter.CollectionFieldSetter;
-import org.apache.geronimo.gshell.clp.setter.FieldSetter;
-import org.apache.geronimo.gshell.clp.setter.MethodSetter;
 import org.apache.geronimo.gshell.clp.setter.Setter;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 
 /**
  * Processes an object for command-line configuration annotations.
@@ -49,6 +43,10 @@ public class CommandLineProcessor
 
     private final List<Handler> argumentHandlers = new ArrayList<Handler>();
 
+    private final Map<String,Handler> optionsByName = new HashMap<String,Handler>();
+
+    private final Map<String,Handler> optionsByAlias = new HashMap<String,Handler>();
+
     private boolean stopAtNonOption = false;
 
     public CommandLineProcessor() {}
@@ -88,58 +86,22 @@ public class CommandLineProcessor
     private void discoverDescriptors(final Object bean) {
         assert bean != null;
 
-        // Recursively process all the methods/fields.
-        for (Class type=bean.getClass(); type!=null; type=type.getSuperclass()) {
-            // Discover methods
-            for (Method method : type.getDeclaredMethods()) {
-                Option option = method.getAnnotation(Option.class);
-                if (option != null) {
-                    addOption(new MethodSetter(bean, method), option);
-                }
+        // Reflection over the type is cached, only the setters need to be bound to the bean
+        BeanDescriptor desc = BeanDescriptor.forType(bean.getClass());
 
-                Argument argument = method.getAnnotation(Argument.class);
-                if (argument != null) {
-                    addArgument(new MethodSetter(bean, method), argument);
-                }
-            }
-
-            // Discover fields
-            for (Field field : type.getDeclaredFields()) {
-                Option option = field.getAnnotation(Option.class);
-                if (option != null) {
-                    addOption(createFieldSetter(bean, field), option);
-                }
-
-                Argument argument = field.getAnnotation(Argument.class);
-                if (argument != null) {
-                    addArgument(createFieldSetter(bean, field), argument);
-                }
-            }
-        }
-
-        // Sanity check the argument indexes
-        for (int i=0; i< argumentHandlers.size(); i++) {
-            if (argumentHandlers.get(i) == null) {
-                throw new IllegalAnnotationError("No argument annotation for index: " + i);
-            }
+        for (BeanDescriptor.Binding binding : desc.getOptions()) {
+            addOption(binding.createSetter(bean), (OptionDescriptor)binding.descriptor);
         }
-    }
-    
-    private Setter createFieldSetter(final Object bean, final Field field) {
-        assert bean != null;
-        assert field != null;
 
-        if (Collection.class.isAssignableFrom(field.getType())) {
-            return new CollectionFieldSetter(bean, field);
-        }
-        else {
-            return new FieldSetter(bean, field);
+        List<BeanDescriptor.Binding> arguments = desc.getArguments();
+        for (int i=0; i<arguments.size(); i++) {
+            BeanDescriptor.Binding binding = arguments.get(i);
+            addArgument(binding.createSetter(bean), (ArgumentDescriptor)binding.descriptor, i);
         }
     }
 
-    private void addArgument(final Setter setter, final Argument argument) {
-        Handler handler = Handlers.create(new ArgumentDescriptor(setter.getName(), argument, setter.isMultiValued()), setter);
-    	int index = argument.index();
+    private void addArgument(final Setter setter, final ArgumentDescriptor descriptor, final int index) {
+        Handler handler = Handlers.create(descriptor, setter);
 
         // Make sure the argument will fit in the list
     	while (index >= argumentHandlers.size()) {
@@ -153,16 +115,20 @@ public class CommandLineProcessor
         argumentHandlers.set(index, handler);
     }
 
-    private void addOption(final Setter setter, final Option option) {
-        Handler handler = Handlers.create(new OptionDescriptor(setter.getName(), option, setter.isMultiValued()), setter);
-        checkOptionNotInMap(option.name());
+    private void addOption(final Setter setter, final OptionDescriptor descriptor) {
+        Handler handler = Handlers.create(descriptor, setter);
+        checkOptionNotInMap(descriptor.getName());
 
-        for (String alias : option.aliases()) {
+        for (String alias : descriptor.getAliases()) {
             checkOptionNotInMap(alias);
         }
 
         optionHandlers.add(handler);
 
+        optionsByName.put(descriptor.getName(), handler);
+        for (String alias : descriptor.getAliases()) {
+            optionsByAlias.put(alias, handler);
+        }
     }
 
     private void checkOptionNotInMap(final String name) throws IllegalAnnotationError {
@@ -329,8 +295,14 @@ public class CommandLineProcessor
             // Search for parts of the name (=prefix) - most specific first 
             for (int i=name.length(); i>1; i--) {
                 String prefix = name.substring(0, i);
-                Map<String, Handler> possibleHandlers = filter(optionHandlers, prefix);
-                handler = possibleHandlers.get(prefix);
+
+                // Long prefixes only match aliases, short ones only match names
+                if (prefix.contains("--")) {
+                    handler = optionsByAlias.get(prefix);
+                }
+                else {
+                    handler = optionsByName.get(prefix);
+                }
 
                 if (handler != null) {
                     return handler;
@@ -341,41 +313,13 @@ public class CommandLineProcessor
         return handler;
     }
 
-    private Map<String, Handler> filter(List<Handler> handlers, String keyFilter) {
-        Map<String, Handler> map = new TreeMap<String, Handler>();
-
-        for (Handler handler : handlers) {
-        	if (keyFilter.contains("--")) {
-        		for (String alias : ((OptionDescriptor)handler.descriptor).getAliases()) {
-        			if (alias.startsWith(keyFilter)) {
-        				map.put(alias, handler);
-        			}
-        		}
-        	} else {
-        		if (((OptionDescriptor)handler.descriptor).getName().startsWith(keyFilter)) {
-                    map.put(((OptionDescriptor)handler.descriptor).getName(), handler);
-                }
-        	}
-        }
-
-        return map;
-    }
-    
     private Handler findOptionByName(String name) {
-        for (Handler handler : optionHandlers) {
-            OptionDescriptor option = (OptionDescriptor)handler.descriptor;
-
-            if (name.equals(option.getName())) {
-                return handler;
-            }
+        Handler handler = optionsByName.get(name);
 
-            for (String alias : option.getAliases()) {
-                if (name.equals(alias)) {
-                    return handler;
-                }
-            }
+        if (handler == null) {
+            handler = optionsByAlias.get(name);
         }
 
-        return null;
+        return handler;
     }
 }
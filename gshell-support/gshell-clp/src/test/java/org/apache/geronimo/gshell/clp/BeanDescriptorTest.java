@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.clp;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.clp.handler.Handler;
+import org.apache.geronimo.gshell.clp.handler.Parameters;
+import org.apache.geronimo.gshell.clp.setter.Setter;
+
+import java.util.List;
+
+/**
+ * Tests for the {@link BeanDescriptor} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class BeanDescriptorTest
+    extends TestCase
+{
+    public void testCached() throws Exception {
+        BeanDescriptor desc1 = BeanDescriptor.forType(Simple.class);
+        BeanDescriptor desc2 = BeanDescriptor.forType(Simple.class);
+
+        assertSame(desc1, desc2);
+    }
+
+    public void testDescriptors() throws Exception {
+        BeanDescriptor desc = BeanDescriptor.forType(Simple.class);
+
+        assertEquals(1, desc.getOptions().size());
+        assertEquals("-h", ((OptionDescriptor)desc.getOptions().get(0).descriptor).getName());
+
+        List<BeanDescriptor.Binding> args = desc.getArguments();
+        assertEquals(2, args.size());
+        assertEquals("arg1", args.get(0).descriptor.getId());
+        assertEquals("arg2", args.get(1).descriptor.getId());
+        assertTrue(args.get(1).descriptor.isMultiValued());
+    }
+
+    public void testSharedBetweenBeans() throws Exception {
+        Simple bean1 = new Simple();
+        new CommandLineProcessor(bean1).process("-h", "a", "b");
+
+        Simple bean2 = new Simple();
+        new CommandLineProcessor(bean2).process("c");
+
+        assertTrue(bean1.help);
+        assertEquals("a", bean1.arg1);
+        assertEquals(1, bean1.arg2.size());
+
+        assertFalse(bean2.help);
+        assertEquals("c", bean2.arg1);
+        assertNull(bean2.arg2);
+    }
+
+    public void testKeyValueOption() throws Exception {
+        Properties bean = new Properties();
+        new CommandLineProcessor(bean).process("--define=a=b");
+
+        assertEquals("--define=a=b", bean.value);
+    }
+
+    public void testMissingIndex() throws Exception {
+        try {
+            BeanDescriptor.forType(MissingIndex.class);
+            fail();
+        }
+        catch (IllegalAnnotationError ignore) {}
+    }
+
+    private static class Simple
+    {
+        @Option(name="-h", aliases={"--help"})
+        boolean help;
+
+        @Argument(index=0)
+        String arg1;
+
+        @Argument(index=1)
+        List<String> arg2;
+    }
+
+    private static class Properties
+    {
+        @Option(name="-D", aliases={"--define"}, handler=Capture.class)
+        String value;
+    }
+
+    public static class Capture
+        extends Handler<String>
+    {
+        public Capture(final Descriptor desc, final Setter<? super String> setter) {
+            super(desc, setter);
+        }
+
+        public int handle(final Parameters params) throws ProcessingException {
+            setter.set(params.get(0));
+            return 1;
+        }
+
+        public String getDefaultToken() {
+            return "VAL";
+        }
+    }
+
+    private static class MissingIndex
+    {
+        @Argument(index=1)
+        String arg;
+    }
+}
@@ -28,6 +28,11 @@ public interface EventManager
 {
     void addListener(EventListener listener);
 
+    /**
+     * Add a listener which is only notified of events of the given types, or their sub-types.
+     */
+    void addListener(EventListener listener, Class<?>... types);
+
     void removeListneer(EventListener listener);
 
     EventPublisher getPublisher();
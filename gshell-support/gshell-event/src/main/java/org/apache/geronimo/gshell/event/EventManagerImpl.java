@@ -22,32 +22,124 @@ package org.apache.geronimo.gshell.event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The default {@link EventManager} and {@link EventPublisher} components.
  *
+ * Events are delivered on the publishing thread by default.  In asynchronous mode each listener has its own bounded
+ * queue, drained in order and in batches by the executor, so a publisher only blocks when a listener falls behind.
+ * Listeners which must see an event before {@link #publish} returns should not be used in asynchronous mode.
+ *
  * @version $Rev$ $Date$
  */
 public class EventManagerImpl
     implements EventManager, EventPublisher
 {
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
-    private final Set<EventListener> listeners = new LinkedHashSet<EventListener>();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+    private boolean async;
+
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private Executor executor;
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Deliver events from per-listener queues instead of on the publishing thread.  Only affects listeners added
+     * after it is set.
+     */
+    public void setAsync(final boolean async) {
+        this.async = async;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(final int queueSize) {
+        assert queueSize > 0;
+
+        this.queueSize = queueSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        assert batchSize > 0;
+
+        this.batchSize = batchSize;
+    }
+
+    public void setExecutor(final Executor executor) {
+        assert executor != null;
+
+        this.executor = executor;
+    }
+
+    private synchronized Executor getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                public Thread newThread(final Runnable task) {
+                    Thread thread = new Thread(task, "Event Dispatcher-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return executor;
+    }
 
     //
     // EventManager
     //
 
     public void addListener(final EventListener listener) {
+        addListener(listener, new Class<?>[0]);
+    }
+
+    public void addListener(final EventListener listener, final Class<?>... types) {
         assert listener != null;
+        assert types != null;
+
+        for (Class<?> type : types) {
+            if (!Event.class.isAssignableFrom(type)) {
+                throw new IllegalArgumentException("Not an event type: " + type);
+            }
+        }
 
         log.trace("Adding listener: {}", listener);
 
-        synchronized (listeners) {
-            listeners.add(listener);
+        // Re-adding a listener replaces its subscription, as adding to a set used to
+        synchronized (subscriptions) {
+            remove(listener);
+            subscriptions.add(async ? new AsyncSubscription(listener, types) : new Subscription(listener, types));
         }
     }
 
@@ -56,8 +148,16 @@ public class EventManagerImpl
         
         log.trace("Removing listener: {}", listener);
 
-        synchronized (listeners) {
-            listeners.remove(listener);
+        synchronized (subscriptions) {
+            remove(listener);
+        }
+    }
+
+    private void remove(final EventListener listener) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.listener.equals(listener)) {
+                subscriptions.remove(subscription);
+            }
         }
     }
 
@@ -65,6 +165,15 @@ public class EventManagerImpl
         return this;
     }
 
+    /**
+     * Wait for all asynchronously queued events to be delivered.
+     */
+    public void flush() throws InterruptedException {
+        for (Subscription subscription : subscriptions) {
+            subscription.flush();
+        }
+    }
+
     //
     // EventPublisher
     //
@@ -74,13 +183,53 @@ public class EventManagerImpl
 
         log.trace("Publishing event: {}", event);
 
-        EventListener[] targets;
-        
-        synchronized (listeners) {
-            targets = listeners.toArray(new EventListener[listeners.size()]);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accepts(event)) {
+                subscription.publish(event);
+            }
         }
+    }
+
+    /**
+     * A listener and the event types it is interested in, which is notified on the publishing thread.
+     */
+    private class Subscription
+    {
+        protected final EventListener listener;
+
+        private final Class<?>[] types;
+
+        public Subscription(final EventListener listener, final Class<?>[] types) {
+            assert listener != null;
+            assert types != null;
 
-        for (EventListener listener : targets) {
+            this.listener = listener;
+            this.types = types;
+        }
+
+        public boolean accepts(final Event event) {
+            if (types.length == 0) {
+                return true;
+            }
+
+            for (Class<?> type : types) {
+                if (type.isInstance(event)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        public void publish(final Event event) {
+            deliver(event);
+        }
+
+        public void flush() throws InterruptedException {
+            // Nothing is queued
+        }
+
+        protected void deliver(final Event event) {
             log.trace("Firing event ({}) to listener: {}", event, listener);
 
             try {
@@ -90,5 +239,109 @@ public class EventManagerImpl
                 log.error("Listener handler raised an exception", e);
             }
         }
+
+        protected void deliver(final List<Event> events) {
+            if (events.size() > 1 && listener instanceof EventBatchListener) {
+                log.trace("Firing {} events to listener: {}", events.size(), listener);
+
+                try {
+                    ((EventBatchListener)listener).onEvents(Collections.unmodifiableList(events));
+                }
+                catch (Exception e) {
+                    log.error("Listener handler raised an exception", e);
+                }
+            }
+            else {
+                for (Event event : events) {
+                    deliver(event);
+                }
+            }
+        }
+    }
+
+    /**
+     * A subscription with its own bounded queue, drained in order by at most one task at a time.
+     */
+    private class AsyncSubscription
+        extends Subscription
+        implements Runnable
+    {
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<Event>(queueSize);
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private volatile Thread drainer;
+
+        public AsyncSubscription(final EventListener listener, final Class<?>[] types) {
+            super(listener, types);
+        }
+
+        public void publish(final Event event) {
+            pending.incrementAndGet();
+
+            if (!queue.offer(event)) {
+                if (Thread.currentThread() == drainer) {
+                    // The listener published to itself with a full queue; waiting would never finish
+                    log.warn("Event queue full, delivering out of order to listener: {}", listener);
+                    deliver(event);
+                    delivered(1);
+                    return;
+                }
+
+                try {
+                    queue.put(event);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Interrupted while queuing event ({}) for listener: {}", event, listener);
+                    delivered(1);
+                    return;
+                }
+            }
+
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                getExecutor().execute(this);
+            }
+        }
+
+        public void run() {
+            List<Event> batch = new ArrayList<Event>(batchSize);
+
+            do {
+                drainer = Thread.currentThread();
+
+                while (queue.drainTo(batch, batchSize) > 0) {
+                    deliver(batch);
+                    delivered(batch.size());
+                    batch.clear();
+                }
+
+                drainer = null;
+                scheduled.set(false);
+
+                // Carry on if an event arrived after the last drain and no other task has picked it up
+            }
+            while (!queue.isEmpty() && scheduled.compareAndSet(false, true));
+        }
+
+        private void delivered(final int count) {
+            if (pending.addAndGet(-count) == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        public synchronized void flush() throws InterruptedException {
+            while (pending.get() > 0) {
+                wait(100);
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.event;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for the {@link EventManagerImpl} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class EventManagerImplTest
+    extends TestCase
+{
+    private EventManagerImpl manager;
+
+    protected void setUp() throws Exception {
+        manager = new EventManagerImpl();
+    }
+
+    protected void tearDown() throws Exception {
+        manager = null;
+    }
+
+    public void testSynchronousDelivery() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        manager.addListener(listener);
+
+        TestEvent event = new TestEvent(1);
+        manager.publish(event);
+
+        assertEquals(1, listener.events.size());
+        assertSame(event, listener.events.get(0));
+    }
+
+    public void testTypeFilter() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        manager.addListener(listener, TestEvent.class);
+
+        manager.publish(new OtherEvent());
+        manager.publish(new TestEvent(1));
+
+        assertEquals(1, listener.events.size());
+        assertTrue(listener.events.get(0) instanceof TestEvent);
+    }
+
+    public void testInvalidType() throws Exception {
+        try {
+            manager.addListener(new RecordingListener(), String.class);
+            fail();
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+    }
+
+    public void testRemoveListener() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        manager.addListener(listener, TestEvent.class);
+        manager.removeListneer(listener);
+
+        manager.publish(new TestEvent(1));
+
+        assertEquals(0, listener.events.size());
+    }
+
+    public void testAsynchronousDeliveryIsOrdered() throws Exception {
+        manager.setAsync(true);
+        manager.setQueueSize(8);
+        manager.setBatchSize(4);
+
+        RecordingListener listener = new RecordingListener();
+        manager.addListener(listener);
+
+        for (int i = 0; i < 1000; i++) {
+            manager.publish(new TestEvent(i));
+        }
+
+        manager.flush();
+
+        assertEquals(1000, listener.events.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, ((TestEvent)listener.events.get(i)).id);
+        }
+    }
+
+    public void testAsynchronousBatchDelivery() throws Exception {
+        manager.setAsync(true);
+
+        final List<Integer> batches = new ArrayList<Integer>();
+
+        EventBatchListener listener = new EventBatchListener() {
+            public synchronized void onEvent(final Event event) throws Exception {
+                batches.add(1);
+            }
+
+            public synchronized void onEvents(final List<Event> events) throws Exception {
+                batches.add(events.size());
+            }
+        };
+        manager.addListener(listener);
+
+        for (int i = 0; i < 500; i++) {
+            manager.publish(new TestEvent(i));
+        }
+
+        manager.flush();
+
+        int total = 0;
+        synchronized (listener) {
+            for (int size : batches) {
+                assertTrue(size <= EventManagerImpl.DEFAULT_BATCH_SIZE);
+                total += size;
+            }
+        }
+        assertEquals(500, total);
+    }
+
+    private static class RecordingListener
+        implements EventListener
+    {
+        public final List<Event> events = new ArrayList<Event>();
+
+        public void onEvent(final Event event) throws Exception {
+            events.add(event);
+        }
+    }
+
+    private static class TestEvent
+        implements Event
+    {
+        public final int id;
+
+        public TestEvent(final int id) {
+            this.id = id;
+        }
+    }
+
+    private static class OtherEvent
+        implements Event
+    {
+    }
+}
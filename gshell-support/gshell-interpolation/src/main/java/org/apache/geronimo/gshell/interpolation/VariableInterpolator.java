@@ -19,24 +19,50 @@
 
 package org.apache.geronimo.gshell.interpolation;
 
+import org.apache.commons.jexl.Expression;
 import org.apache.geronimo.gshell.command.Variables;
 import org.apache.geronimo.gshell.notification.ErrorNotification;
-import org.codehaus.plexus.interpolation.InterpolationException;
-import org.codehaus.plexus.interpolation.Interpolator;
-import org.codehaus.plexus.interpolation.RegexBasedInterpolator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Provides interpolation for shell variables using Jexl.
  *
  * Still using Jexl here for now, since it can handle expression like <tt>${env.TERM}</tt>
  * (where <tt>env</tt> is a variable bound to a map, ...).
  *
+ * Inputs are split once into literal text and <tt>${...}</tt> references, and the result is kept for the next time
+ * the same input is seen.  References to a plain variable name are looked up directly; anything else is compiled
+ * by Jexl once per input.  Unresolved references are left as they are, and resolved values are interpolated in turn.
+ *
  * @version $Rev$ $Date$
  */
 public class VariableInterpolator
 {
+    private static final int MAX_TEMPLATES = 1024;
+
+    /**
+     * Parsed templates, shared by all instances, as an interpolator is created for each command-line executed.
+     */
+    private static final Map<String,Template> templates = new ConcurrentHashMap<String,Template>();
+
+    /**
+     * Jexl keywords, which must be evaluated rather than looked up as variable names.
+     */
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+        "and", "div", "else", "empty", "eq", "false", "foreach", "ge", "gt", "if", "in", "le",
+        "lt", "mod", "ne", "new", "not", "null", "or", "size", "true", "while"
+    ));
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     public String interpolate(final String input, final Variables vars) {
@@ -48,28 +74,222 @@ public class VariableInterpolator
             return input;
         }
 
-        Interpolator interp = createInterpolator(vars);
-
         log.trace("Interpolating: {}", input);
 
-        String result;
-        try {
-            result = interp.interpolate(input);
-        }
-        catch (InterpolationException e) {
-            throw new ErrorNotification("Failed to interpolate expression: " + input, e);
-        }
+        String result = interpolate(input, new Evaluator(vars), null);
 
         log.trace("Iterpolated result: {}", result);
 
         return result;
     }
 
-    private Interpolator createInterpolator(final Variables vars) {
-        assert vars != null;
-        
-        Interpolator interp = new RegexBasedInterpolator();
-        interp.addValueSource(new VariablesValueSource(vars));
-        return interp;
+    private String interpolate(final String input, final Evaluator evaluator, List<String> active) {
+        assert input != null;
+        assert evaluator != null;
+
+        Template template = getTemplate(input);
+        if (template.refs.length == 0) {
+            return input;
+        }
+
+        StringBuilder buff = new StringBuilder(input.length() + 32);
+
+        for (int i = 0; i < template.refs.length; i++) {
+            buff.append(template.literals[i]);
+
+            Reference ref = template.refs[i];
+            Object value = evaluator.evaluate(ref);
+
+            if (value == null) {
+                buff.append(ref.text);
+                continue;
+            }
+
+            String text = String.valueOf(value);
+
+            if (text.indexOf('$') != -1) {
+                if (active == null) {
+                    active = new LinkedList<String>();
+                }
+                else if (active.contains(ref.expression)) {
+                    throw new ErrorNotification("Failed to interpolate expression: " + input + "; cycle detected: " + active);
+                }
+
+                active.add(ref.expression);
+                text = interpolate(text, evaluator, active);
+                active.remove(active.size() - 1);
+            }
+
+            buff.append(text);
+        }
+
+        buff.append(template.literals[template.refs.length]);
+
+        return buff.toString();
+    }
+
+    private Template getTemplate(final String input) {
+        Template template = templates.get(input);
+
+        if (template == null) {
+            template = new Template(input);
+
+            // Crude bound; templates are cheap to rebuild
+            if (templates.size() >= MAX_TEMPLATES) {
+                templates.clear();
+            }
+            templates.put(input, template);
+        }
+
+        return template;
+    }
+
+    /**
+     * An input split into literal text and the references between them; there is always one more literal than
+     * there are references.
+     */
+    private static final class Template
+    {
+        public final String[] literals;
+
+        public final Reference[] refs;
+
+        public Template(final String input) {
+            assert input != null;
+
+            List<String> literals = new ArrayList<String>();
+            List<Reference> refs = new ArrayList<Reference>();
+
+            int pos = 0;
+            int from = 0;
+
+            while (true) {
+                int start = input.indexOf("${", from);
+                if (start == -1) {
+                    break;
+                }
+
+                // Expressions have at least one character and do not span lines
+                int end = input.indexOf('}', start + 3);
+                if (end == -1) {
+                    break;
+                }
+                if (containsLineBreak(input, start + 2, end)) {
+                    from = start + 1;
+                    continue;
+                }
+
+                // For ${${name} only the innermost reference is one, the rest is text
+                int inner = input.lastIndexOf("${", end - 3);
+                if (inner > start) {
+                    start = inner;
+                }
+
+                literals.add(input.substring(pos, start));
+                refs.add(new Reference(input.substring(start, end + 1), input.substring(start + 2, end)));
+
+                pos = from = end + 1;
+            }
+
+            literals.add(input.substring(pos));
+
+            this.literals = literals.toArray(new String[literals.size()]);
+            this.refs = refs.toArray(new Reference[refs.size()]);
+        }
+
+        private static boolean containsLineBreak(final String input, final int start, final int end) {
+            for (int i = start; i < end; i++) {
+                char c = input.charAt(i);
+                if (c == '\n' || c == '\r') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A <tt>${...}</tt> reference.
+     */
+    private static final class Reference
+    {
+        public final String text;
+
+        public final String expression;
+
+        /**
+         * True when the expression is just a variable name.
+         */
+        public final boolean simple;
+
+        private volatile Expression compiled;
+
+        public Reference(final String text, String expression) {
+            assert text != null;
+            assert expression != null;
+
+            if (expression.startsWith(".")) {
+                expression = expression.substring(1);
+            }
+
+            this.text = text;
+            this.expression = expression;
+            this.simple = isName(expression);
+        }
+
+        private static boolean isName(final String expression) {
+            if (expression.length() == 0 || !Character.isJavaIdentifierStart(expression.charAt(0))) {
+                return false;
+            }
+
+            for (int i = 1; i < expression.length(); i++) {
+                if (!Character.isJavaIdentifierPart(expression.charAt(i))) {
+                    return false;
+                }
+            }
+
+            return !KEYWORDS.contains(expression);
+        }
+
+        public Expression getCompiled() {
+            Expression expr = compiled;
+
+            if (expr == null) {
+                expr = VariablesValueSource.compile(expression);
+                compiled = expr;
+            }
+
+            return expr;
+        }
+    }
+
+    /**
+     * Evaluates references against a set of variables, creating the Jexl context only when needed.
+     */
+    private static final class Evaluator
+    {
+        private final Variables vars;
+
+        private VariablesValueSource source;
+
+        public Evaluator(final Variables vars) {
+            assert vars != null;
+
+            this.vars = vars;
+        }
+
+        public Object evaluate(final Reference ref) {
+            assert ref != null;
+
+            if (ref.simple) {
+                return vars.get(ref.expression);
+            }
+
+            if (source == null) {
+                source = new VariablesValueSource(vars);
+            }
+
+            return source.getValue(ref.getCompiled());
+        }
     }
-}
\ No newline at end of file
+}
@@ -39,7 +39,7 @@ import java.util.Set;
 public class VariablesValueSource
     extends AbstractValueSource
 {
-    private final FlatResolver resolver = new FlatResolver(true);
+    private static final FlatResolver resolver = new FlatResolver(true);
 
     private final JexlContext jexlContext;
 
@@ -80,15 +80,38 @@ public class VariablesValueSource
     public Object getValue(final String input) {
         assert input != null;
 
+        return getValue(compile(input));
+    }
+
+    /**
+     * Evaluate a compiled expression against the variables.
+     */
+    public Object getValue(final Expression expr) {
+        assert expr != null;
+
         if (variables == null) {
             throw new IllegalStateException("Variables have not yet been set");
         }
-        
+
+        try {
+            return expr.evaluate(jexlContext);
+        }
+        catch (Exception e) {
+            throw new ErrorNotification("Failed to evaluate expression: " + expr.getExpression(), e);
+        }
+    }
+
+    /**
+     * Compile an expression, which may be evaluated any number of times, against any variables.
+     */
+    public static Expression compile(final String input) {
+        assert input != null;
+
         try {
             Expression expr = ExpressionFactory.createExpression(input);
             expr.addPreResolver(resolver);
 
-            return expr.evaluate(jexlContext);
+            return expr;
         }
         catch (Exception e) {
             throw new ErrorNotification("Failed to evaluate expression: " + input, e);
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.interpolation;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.command.Variables;
+import org.apache.geronimo.gshell.notification.ErrorNotification;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for the {@link VariableInterpolator} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class VariableInterpolatorTest
+    extends TestCase
+{
+    private VariableInterpolator interp;
+
+    private Variables vars;
+
+    protected void setUp() throws Exception {
+        interp = new VariableInterpolator();
+
+        vars = new Variables();
+        vars.set("a", "A");
+        vars.set("b", "B");
+    }
+
+    protected void tearDown() throws Exception {
+        interp = null;
+        vars = null;
+    }
+
+    private String interpolate(final String input) {
+        return interp.interpolate(input, vars);
+    }
+
+    public void testNoReferences() throws Exception {
+        String input = "plain text";
+        assertSame(input, interpolate(input));
+
+        assertEquals("$a { } $", interpolate("$a { } $"));
+    }
+
+    public void testLiteralsAndReferences() throws Exception {
+        assertEquals("A", interpolate("${a}"));
+        assertEquals("x A y", interpolate("x ${a} y"));
+        assertEquals("AB", interpolate("${a}${b}"));
+        assertEquals("-A-B-", interpolate("-${a}-${b}-"));
+    }
+
+    public void testLeadingDot() throws Exception {
+        assertEquals("A", interpolate("${.a}"));
+    }
+
+    public void testNonStringValue() throws Exception {
+        vars.set("n", 42);
+
+        assertEquals("n=42", interpolate("n=${n}"));
+    }
+
+    public void testUnresolved() throws Exception {
+        assertEquals("${zz}", interpolate("${zz}"));
+        assertEquals("x ${zz} A", interpolate("x ${zz} ${a}"));
+    }
+
+    public void testUnterminated() throws Exception {
+        assertEquals("${a", interpolate("${a"));
+        assertEquals("A ${", interpolate("${a} ${"));
+    }
+
+    public void testEmpty() throws Exception {
+        assertEquals("${}", interpolate("${}"));
+        assertEquals("${}A", interpolate("${}${a}"));
+    }
+
+    public void testNestedOnlyInnermost() throws Exception {
+        assertEquals("${A}", interpolate("${${a}}"));
+    }
+
+    public void testRecursiveValues() throws Exception {
+        vars.set("c", "${a}-${b}");
+        vars.set("d", "<${c}>");
+
+        assertEquals("<A-B>", interpolate("${d}"));
+    }
+
+    public void testRecursiveUnresolved() throws Exception {
+        vars.set("c", "${zz}");
+
+        assertEquals("${zz}", interpolate("${c}"));
+    }
+
+    public void testRepeatedReferenceIsNotCycle() throws Exception {
+        vars.set("c", "${a}");
+        vars.set("d", "${c}${c}");
+
+        assertEquals("AA AA", interpolate("${d} ${d}"));
+    }
+
+    public void testCycle() throws Exception {
+        vars.set("c", "${c}");
+
+        try {
+            interpolate("${c}");
+            fail();
+        }
+        catch (ErrorNotification expected) {
+            // ignore
+        }
+    }
+
+    public void testIndirectCycle() throws Exception {
+        vars.set("p", "x${q}");
+        vars.set("q", "y${p}");
+
+        try {
+            interpolate("${p}");
+            fail();
+        }
+        catch (ErrorNotification expected) {
+            // ignore
+        }
+    }
+
+    public void testMapPath() throws Exception {
+        Map<String,String> env = new HashMap<String,String>();
+        env.put("X", "ex");
+        vars.set("env", env);
+
+        assertEquals("ex", interpolate("${env.X}"));
+        assertEquals("[ex] A", interpolate("[${env.X}] ${a}"));
+        assertEquals("${env.Y}", interpolate("${env.Y}"));
+    }
+
+    public void testMapPathRecursive() throws Exception {
+        Map<String,String> env = new HashMap<String,String>();
+        env.put("X", "${a}");
+        vars.set("env", env);
+
+        assertEquals("A", interpolate("${env.X}"));
+    }
+
+    public void testKeyword() throws Exception {
+        assertEquals("true", interpolate("${true}"));
+    }
+
+    public void testLineBreaks() throws Exception {
+        assertEquals("${a\n}", interpolate("${a\n}"));
+        assertEquals("${\na}", interpolate("${\na}"));
+        assertEquals("${a\r}", interpolate("${a\r}"));
+
+        // References on either side of a line break are fine
+        assertEquals("A\nB", interpolate("${a}\n${b}"));
+
+        // An expression broken over lines is skipped, and the next one found
+        assertEquals("${x\ny} A", interpolate("${x\ny} ${a}"));
+    }
+
+    public void testTemplateReused() throws Exception {
+        String input = "[${a}]";
+        assertEquals("[A]", interpolate(input));
+
+        // Values are never cached with the template
+        vars.set("a", "changed");
+        assertEquals("[changed]", interpolate(input));
+
+        Variables other = new Variables();
+        other.set("a", "other");
+        assertEquals("[other]", interp.interpolate(input, other));
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffers output, and decides for itself when to flush it through.
+ *
+ * Calls to {@link #flush} are treated as hints, so writers which flush on every line can sit on top without each
+ * line costing a write to the underlying stream.  Buffered output is always written once the buffer is full, on
+ * {@link #sync} or {@link #close}, and never waits longer than the flush interval.
+ *
+ * Deferred flushes are timed by a shared timer, but written by a pooled flusher thread, so a stream blocked on a slow
+ * or stalled reader only holds up its own output.
+ *
+ * @version $Rev$ $Date$
+ */
+public class FlushingOutputStream
+    extends FilterOutputStream
+{
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * When buffered output is flushed through, other than when the buffer is full.
+     */
+    public static enum Policy
+    {
+        /**
+         * On newline or flush; for output someone is watching.  Lines arriving faster than the flush interval are
+         * written together.
+         */
+        LINE,
+
+        /**
+         * Only once the flush interval has passed; for output read by another program.
+         */
+        BUFFER
+    }
+
+    private static ScheduledExecutorService timer;
+
+    private static ExecutorService flushers;
+
+    private final Policy policy;
+
+    private final long interval;
+
+    private final byte[] buff;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int count;
+
+    private long lastFlush;
+
+    private boolean scheduled;
+
+    /**
+     * @param out       The stream to flush through to.
+     * @param policy    When to flush.
+     * @param size      Buffer size in bytes.
+     * @param interval  Milliseconds buffered output may wait before it is flushed.
+     */
+    public FlushingOutputStream(final OutputStream out, final Policy policy, final int size, final long interval) {
+        super(out);
+
+        assert out != null;
+        assert policy != null;
+        assert size > 0;
+        assert interval >= 0;
+
+        this.policy = policy;
+        this.buff = new byte[size];
+        this.interval = interval;
+    }
+
+    public FlushingOutputStream(final OutputStream out, final Policy policy, final long interval) {
+        this(out, policy, DEFAULT_BUFFER_SIZE, interval);
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        lock.lock();
+        try {
+            if (count == buff.length) {
+                drain();
+            }
+
+            buff[count++] = (byte)b;
+
+            if (b == '\n') {
+                flushLine();
+            }
+            else {
+                schedule();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        lock.lock();
+        try {
+            if (len >= buff.length) {
+                // Too big to buffer, so write it straight through after what is buffered
+                if (count > 0) {
+                    out.write(buff, 0, count);
+                    count = 0;
+                }
+                out.write(b, off, len);
+                out.flush();
+                lastFlush = System.currentTimeMillis();
+                return;
+            }
+
+            if (len > buff.length - count) {
+                drain();
+            }
+
+            System.arraycopy(b, off, buff, count, len);
+            count += len;
+
+            if (containsNewline(b, off, len)) {
+                flushLine();
+            }
+            else {
+                schedule();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean containsNewline(final byte[] b, final int off, final int len) {
+        for (int i = off + len - 1; i >= off; i--) {
+            if (b[i] == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Flush if the policy flushes on newlines and the interval has passed since the last flush, else wait for it.
+     */
+    private void flushLine() throws IOException {
+        if (policy == Policy.LINE && System.currentTimeMillis() - lastFlush >= interval) {
+            drain();
+        }
+        else {
+            schedule();
+        }
+    }
+
+    /**
+     * Treated as a newline; use {@link #sync} to flush unconditionally.
+     */
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            flushLine();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush all buffered output through now.
+     */
+    public void sync() throws IOException {
+        lock.lock();
+        try {
+            drain();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if there is output which has not yet been flushed through.
+     */
+    public boolean isBuffering() {
+        lock.lock();
+        try {
+            return count > 0;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            try {
+                drain();
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (count > 0) {
+            out.write(buff, 0, count);
+            count = 0;
+        }
+
+        out.flush();
+        lastFlush = System.currentTimeMillis();
+    }
+
+    /**
+     * Make sure buffered output is flushed once the interval has passed.
+     */
+    private void schedule() {
+        if (count == 0 || scheduled) {
+            return;
+        }
+
+        // Only cleared once the flush has run, so a stalled stream never has more than one flush in flight
+        scheduled = true;
+
+        final Runnable flush = new Runnable() {
+            public void run() {
+                lock.lock();
+                try {
+                    scheduled = false;
+
+                    if (count > 0) {
+                        drain();
+                    }
+                }
+                catch (IOException e) {
+                    // ignore, the writer will see the failure on its next write
+                }
+                finally {
+                    lock.unlock();
+                }
+            }
+        };
+
+        // The timer only hands off; writing may block for as long as the reader of the stream likes
+        getTimer().schedule(new Runnable() {
+            public void run() {
+                getFlushers().execute(flush);
+            }
+        }, Math.max(interval, 1), TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(final Runnable task) {
+                    Thread thread = new Thread(task, "Output Flush Timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return timer;
+    }
+
+    private static synchronized ExecutorService getFlushers() {
+        if (flushers == null) {
+            flushers = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                public Thread newThread(final Runnable task) {
+                    Thread thread = new Thread(task, "Output Flusher-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return flushers;
+    }
+}
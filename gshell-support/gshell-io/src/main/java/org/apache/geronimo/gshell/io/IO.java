@@ -82,6 +82,16 @@ public class IO
      */
     private Verbosity verbosity = Verbosity.INFO;
 
+    /**
+     * Channel from the previous pipeline stage, if any.
+     */
+    private ObjectChannel objectInput;
+
+    /**
+     * Channel to the next pipeline stage, if any.
+     */
+    private ObjectChannel objectOutput;
+
     /**
      * Construct a new IO container.
      *
@@ -107,14 +117,14 @@ public class IO
         //
 
 
-        this.out = new AnsiRenderWriter(outputStream, autoFlush);
+        this.out = new TextWriter(outputStream, autoFlush);
 
         /// Don't rewrite the error stream if we have the same stream for out and error
         if (isSharedOutputStreams()) {
             this.err = this.out;
         }
         else {
-            this.err = new AnsiRenderWriter(errorStream, autoFlush);
+            this.err = new TextWriter(errorStream, autoFlush);
         }
 
         // this.out = new PrintWriter(out, autoFlush);
@@ -162,6 +172,41 @@ public class IO
     }
 
 
+    /**
+     * Construct a new IO container, sharing the input and settings of another but writing to different streams.
+     *
+     * @param io    The container to share input and settings with; must not be null
+     * @param out   The output stream; must not be null
+     * @param err   The error output stream; must not be null
+     */
+    public IO(final IO io, final PrintStream out, final PrintStream err) {
+        assert io != null;
+        assert out != null;
+        assert err != null;
+
+        this.inputStream = io.inputStream;
+        this.outputStream = out;
+        this.errorStream = err;
+
+        // Share the reader, so nothing it has read ahead is lost
+        this.in = io.in;
+
+        this.out = new TextWriter(outputStream, true);
+
+        if (isSharedOutputStreams()) {
+            this.err = this.out;
+        }
+        else {
+            this.err = new TextWriter(errorStream, true);
+        }
+
+        setAnsiEnabled(io.getAnsiEnabled());
+
+        this.verbosity = io.verbosity;
+        this.objectInput = io.objectInput;
+        this.objectOutput = io.objectOutput;
+    }
+
     /**
      * Helper which uses current values from {@link System}.
      */
@@ -206,6 +251,20 @@ public class IO
         return verbosity;
     }
     
+    /**
+     * Returns the ANSI setting of the output writer; null if it follows {@link org.apache.geronimo.gshell.ansi.Ansi#isEnabled}.
+     */
+    public Boolean getAnsiEnabled() {
+        return ((AnsiRenderWriter)out).getAnsiEnabled();
+    }
+
+    /**
+     * Set to false to strip ANSI markup from the output writer when it does not lead to a terminal.
+     */
+    public void setAnsiEnabled(final Boolean flag) {
+        ((AnsiRenderWriter)out).setAnsiEnabled(flag);
+    }
+
     /**
      * Check if the verbosity level is set to {@link Verbosity#SILENT}.
      */
@@ -268,6 +327,152 @@ public class IO
         }
     }
 
+    //
+    // Object Channels
+    //
+
+    public void setObjectInput(final ObjectChannel channel) {
+        this.objectInput = channel;
+    }
+
+    public ObjectChannel getObjectInput() {
+        return objectInput;
+    }
+
+    public void setObjectOutput(final ObjectChannel channel) {
+        this.objectOutput = channel;
+    }
+
+    public ObjectChannel getObjectOutput() {
+        return objectOutput;
+    }
+
+    /**
+     * Check if there is a previous pipeline stage which objects may be read from.
+     */
+    public boolean hasObjectInput() {
+        return objectInput != null;
+    }
+
+    /**
+     * Check if the previous pipeline stage emits objects, in which case they should be read with {@link #readItem}
+     * or {@link #readObject}; otherwise the input streams should be used.  Waits for the first output of the stage.
+     */
+    public boolean acceptObjects() throws IOException {
+        return objectInput != null && objectInput.acceptObjects();
+    }
+
+    /**
+     * Read the next object from the previous pipeline stage; text written by that stage is read as one string per line.
+     *
+     * <p>Once objects have been read, the raw input streams must not be used.
+     *
+     * @return  The next object, or null at the end of input.
+     */
+    public Object readObject() throws IOException {
+        if (objectInput == null) {
+            throw new IllegalStateException("No object input");
+        }
+
+        return objectInput.take();
+    }
+
+    /**
+     * Read the next object, and the text it would have been rendered as, from the previous pipeline stage.
+     *
+     * @return  The next item, or null at the end of input.
+     */
+    public ObjectChannel.Item readItem() throws IOException {
+        if (objectInput == null) {
+            throw new IllegalStateException("No object input");
+        }
+
+        return objectInput.takeItem();
+    }
+
+    /**
+     * Emit an object to the next pipeline stage, or render it as text when the next stage reads text or there is none.
+     */
+    public void emit(final Object obj) throws IOException {
+        assert obj != null;
+
+        emit(obj, String.valueOf(obj));
+    }
+
+    /**
+     * Emit an object to the next pipeline stage, or the given text when the next stage reads text or there is none.
+     */
+    public void emit(final Object obj, final String text) throws IOException {
+        assert obj != null;
+
+        // In text mode the object is written as text, which keeps it in order by itself
+        if (objectOutput != null && !objectOutput.isTextMode()) {
+            flushText();
+
+            if (objectOutput.put(obj, text)) {
+                return;
+            }
+        }
+
+        info(text);
+    }
+
+    /**
+     * Hand on any text written since the last flush, so it reaches the next pipeline stage ahead of an emitted object.
+     */
+    protected void flushText() throws IOException {
+        if (((TextWriter)out).isWritten()) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Output writer which notes whether text has been written since it was last flushed.
+     */
+    private static class TextWriter
+        extends AnsiRenderWriter
+    {
+        private volatile boolean written;
+
+        public TextWriter(final OutputStream out, final boolean autoFlush) {
+            super(out, autoFlush);
+        }
+
+        public boolean isWritten() {
+            return written;
+        }
+
+        @Override
+        public void write(final int c) {
+            written = true;
+            super.write(c);
+        }
+
+        @Override
+        public void write(final char[] buf, final int off, final int len) {
+            written = true;
+            super.write(buf, off, len);
+        }
+
+        @Override
+        public void write(final String s, final int off, final int len) {
+            written = true;
+            super.write(s, off, len);
+        }
+
+        @Override
+        public void println() {
+            written = true;
+            super.println();
+        }
+
+        @Override
+        public void flush() {
+            written = false;
+            super.flush();
+        }
+    }
+
     //
     // Verbosity
     //
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads lines from a file by scanning a memory mapped view of it, without going through a stream and reader.
+ *
+ * <p>
+ * Lines are terminated by LF, CR or CR LF, the same as {@link java.io.BufferedReader#readLine}.  Only charsets
+ * which encode ASCII as single bytes can be read this way, see {@link #isSupported}.
+ *
+ * <p>
+ * Files are mapped one window at a time.  Mappings can not be released explicitly, so each window is only unmapped
+ * once it has been garbage collected, after the reader has moved past it or been closed.  Until then it takes up
+ * address space and, on some platforms, keeps the file from being deleted or truncated.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MappedLineReader
+    implements Closeable
+{
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final CharsetDecoder decoder;
+
+    private int windowSize;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+
+    private long base;
+
+    private boolean skipLF;
+
+    private char[] chars = new char[256];
+
+    public MappedLineReader(final File file, final Charset charset, final int windowSize) throws IOException {
+        assert file != null;
+        assert charset != null;
+        if (!isSupported(charset)) {
+            throw new IllegalArgumentException("Charset does not encode ASCII as single bytes: " + charset);
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+
+        this.decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.windowSize = windowSize;
+        this.channel = new FileInputStream(file).getChannel();
+        this.size = channel.size();
+    }
+
+    public MappedLineReader(final File file, final Charset charset) throws IOException {
+        this(file, charset, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedLineReader(final File file) throws IOException {
+        this(file, Charset.defaultCharset());
+    }
+
+    /**
+     * Check if lines in the given charset can be found by scanning for line terminator bytes, which holds
+     * when the charset encodes all of ASCII as the same single bytes.
+     */
+    public static boolean isSupported(final Charset charset) {
+        assert charset != null;
+
+        if (!charset.canEncode()) {
+            return false;
+        }
+
+        char[] ascii = new char[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (char)i;
+        }
+
+        ByteBuffer bytes;
+        try {
+            bytes = charset.newEncoder().encode(CharBuffer.wrap(ascii));
+        }
+        catch (CharacterCodingException e) {
+            return false;
+        }
+
+        if (bytes.remaining() != ascii.length) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length; i++) {
+            if (bytes.get(i) != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the next line, or return null at the end of the file.
+     */
+    public String readLine() throws IOException {
+        while (true) {
+            if (!buffer.hasRemaining() && !remap(false)) {
+                return null;
+            }
+
+            if (skipLF) {
+                skipLF = false;
+                if (buffer.get(buffer.position()) == '\n') {
+                    buffer.position(buffer.position() + 1);
+                    continue;
+                }
+            }
+
+            int start = buffer.position();
+            int limit = buffer.limit();
+            for (int i = start; i < limit; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' || b == '\r') {
+                    String line = decode(start, i);
+                    buffer.position(i + 1);
+                    skipLF = b == '\r';
+                    return line;
+                }
+            }
+
+            if (base + limit == size) {
+                String line = decode(start, limit);
+                buffer.position(limit);
+                return line;
+            }
+
+            // The line runs past the window, so map again starting at the line; grow if it fills a whole window
+            remap(start == 0);
+        }
+    }
+
+    private boolean remap(final boolean grow) throws IOException {
+        long position = base + buffer.position();
+        if (position >= size) {
+            return false;
+        }
+
+        if (grow) {
+            windowSize = (int)Math.min(Integer.MAX_VALUE, windowSize * 2L);
+        }
+
+        int length = (int)Math.min(size - position, windowSize);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        base = position;
+
+        return true;
+    }
+
+    private String decode(final int start, final int end) throws IOException {
+        int length = end - start;
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+
+        // Plain ASCII maps straight to chars, anything else goes through the decoder
+        int i = 0;
+        for (; i < length; i++) {
+            byte b = buffer.get(start + i);
+            if (b < 0) {
+                break;
+            }
+            chars[i] = (char)b;
+        }
+        if (i == length) {
+            return new String(chars, 0, length);
+        }
+
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(end);
+        bytes.position(start);
+
+        CharBuffer out = CharBuffer.allocate((int)Math.ceil(length * (double)decoder.maxCharsPerByte()));
+        decoder.reset();
+        decoder.decode(bytes, out, true);
+        decoder.flush(out);
+
+        return new String(out.array(), 0, out.position());
+    }
+
+    public void close() throws IOException {
+        // Let go of the current window, so it can be unmapped as soon as it is collected
+        buffer = ByteBuffer.allocate(0);
+
+        channel.close();
+    }
+}
@@ -0,0 +1,568 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+/**
+ * Link between two adjacent pipeline stages, which carries either bytes or objects.
+ *
+ * <p>
+ * The mode is chosen by the reading side: reading from {@link #getInputStream} selects text mode, where
+ * bytes flow through the underlying {@link Pipe} and emitted objects are rendered as text.  Calling
+ * {@link #take} selects object mode, where emitted objects are handed over as-is, and any text written is
+ * delivered as one {@link String} per line.  {@link #acceptObjects} lets the reader pick object mode only
+ * when the writer actually emits objects.
+ *
+ * <p>
+ * Until the reader has chosen, output is held in the order it was written, up to the size of the pipe, so
+ * writers only block when they would have blocked on a full pipe.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ObjectChannel
+{
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static enum Mode
+    {
+        UNDECIDED, TEXT, OBJECTS
+    }
+
+    /**
+     * An object and its text rendering.
+     */
+    public static class Item
+    {
+        public final Object object;
+
+        public final String text;
+
+        public Item(final Object object, final String text) {
+            assert object != null;
+            assert text != null;
+
+            this.object = object;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Bytes held for the reader, before it has chosen a mode or while it catches up in text mode.
+     */
+    private static class Chunk
+    {
+        private final byte[] bytes;
+
+        private int pos;
+
+        private final boolean written;
+
+        public Chunk(final byte[] bytes, final boolean written) {
+            this.bytes = bytes;
+            this.written = written;
+        }
+    }
+
+    private final Pipe pipe;
+
+    private final int capacity;
+
+    private final int bufferSize;
+
+    private final Charset charset;
+
+    private final byte[] lineSeparator;
+
+    /**
+     * Held output; chunks and items until object mode is selected, then items only.
+     */
+    private final LinkedList<Object> queue = new LinkedList<Object>();
+
+    /**
+     * Bytes written by the writer which are held in the queue.
+     */
+    private int queuedBytes;
+
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    private boolean pendingReturn;
+
+    private Mode mode = Mode.UNDECIDED;
+
+    private boolean writerClosed;
+
+    private boolean readerClosed;
+
+    private final InputStream in = new ChannelInputStream();
+
+    private final OutputStream out = new ChannelOutputStream();
+
+    /**
+     * @param pipe          The pipe which carries text
+     * @param capacity      The number of objects which may be queued
+     * @param bufferSize    The number of bytes which may be held before the reader has chosen a mode
+     * @param charset       The encoding of the text written to the channel
+     */
+    public ObjectChannel(final Pipe pipe, final int capacity, final int bufferSize, final Charset charset) {
+        assert pipe != null;
+        assert charset != null;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+
+        this.pipe = pipe;
+        this.capacity = capacity;
+        this.bufferSize = bufferSize;
+        this.charset = charset;
+        this.lineSeparator = System.getProperty("line.separator").getBytes(charset);
+    }
+
+    public ObjectChannel(final Pipe pipe, final int capacity) {
+        this(pipe, capacity, pipe.getSize(), Charset.defaultCharset());
+    }
+
+    public ObjectChannel(final Pipe pipe) {
+        this(pipe, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Byte input for the reading stage; the first use selects text mode.
+     */
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    /**
+     * Byte output for the writing stage.
+     */
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * Hand an object to the reading stage.
+     *
+     * @param obj   The object
+     * @param text  The text to render the object as, if the reader reads text
+     * @return      True if the channel took the object; false if the reader is in text mode and the text must be written.
+     */
+    public synchronized boolean put(final Object obj, final String text) throws IOException {
+        assert obj != null;
+        assert text != null;
+
+        while (true) {
+            ensureReaderOpen();
+
+            if (mode == Mode.TEXT) {
+                return false;
+            }
+
+            if (queue.size() < capacity) {
+                queue.addLast(new Item(obj, text));
+                notifyAll();
+                return true;
+            }
+
+            await();
+        }
+    }
+
+    public boolean put(final Object obj) throws IOException {
+        assert obj != null;
+
+        return put(obj, String.valueOf(obj));
+    }
+
+    /**
+     * Select object mode if the writer's first output is an object, otherwise text mode; waits for the writer's first
+     * output if need be.
+     *
+     * @return  True if the channel is in object mode.
+     */
+    public synchronized boolean acceptObjects() throws IOException {
+        while (mode == Mode.UNDECIDED && queue.isEmpty() && !writerClosed && !readerClosed) {
+            await();
+        }
+
+        if (mode == Mode.UNDECIDED) {
+            select(!queue.isEmpty() && queue.getFirst() instanceof Item ? Mode.OBJECTS : Mode.TEXT);
+        }
+
+        return mode == Mode.OBJECTS;
+    }
+
+    /**
+     * Take the next object from the writing stage; the first use selects object mode.
+     *
+     * @return  The next object, or null once the writer has closed and everything has been taken.
+     */
+    public Object take() throws IOException {
+        Item item = takeItem();
+
+        return item != null ? item.object : null;
+    }
+
+    /**
+     * Take the next object and its text rendering from the writing stage; the first use selects object mode.
+     * Lines of text are taken as items whose object is the line itself.
+     *
+     * @return  The next item, or null once the writer has closed and everything has been taken.
+     */
+    public synchronized Item takeItem() throws IOException {
+        if (mode == Mode.UNDECIDED) {
+            select(Mode.OBJECTS);
+        }
+        else if (mode == Mode.TEXT) {
+            throw new IllegalStateException("Channel is in text mode");
+        }
+
+        while (queue.isEmpty() && !writerClosed && !readerClosed) {
+            await();
+        }
+
+        if (readerClosed) {
+            throw new IOException("Channel closed");
+        }
+        if (queue.isEmpty()) {
+            return null;
+        }
+
+        Item item = (Item)queue.removeFirst();
+        notifyAll();
+
+        return item;
+    }
+
+    public synchronized boolean isObjectMode() {
+        return mode == Mode.OBJECTS;
+    }
+
+    public synchronized boolean isTextMode() {
+        return mode == Mode.TEXT;
+    }
+
+    private void select(final Mode mode) {
+        assert Thread.holdsLock(this);
+
+        this.mode = mode;
+
+        if (mode == Mode.OBJECTS) {
+            // Split held text into lines, in place
+            for (ListIterator<Object> iter = queue.listIterator(); iter.hasNext();) {
+                Object element = iter.next();
+
+                if (element instanceof Chunk) {
+                    iter.remove();
+
+                    Chunk chunk = (Chunk)element;
+                    for (String text : splitLines(chunk.bytes, chunk.pos, chunk.bytes.length - chunk.pos)) {
+                        iter.add(new Item(text, text));
+                    }
+                }
+            }
+
+            queuedBytes = 0;
+
+            if (writerClosed) {
+                flushLine();
+            }
+        }
+
+        notifyAll();
+    }
+
+    private void ensureReaderOpen() throws IOException {
+        if (readerClosed) {
+            throw new IOException("Channel broken; reader closed");
+        }
+    }
+
+    private void enqueue(final Object element) throws IOException {
+        assert Thread.holdsLock(this);
+
+        while (queue.size() >= capacity && !readerClosed) {
+            await();
+        }
+
+        ensureReaderOpen();
+
+        queue.addLast(element);
+        notifyAll();
+    }
+
+    /**
+     * Split text into lines, with the same terminators as BufferedReader, keeping any incomplete line for later.
+     */
+    private LinkedList<String> splitLines(final byte[] b, final int off, final int len) {
+        assert Thread.holdsLock(this);
+
+        LinkedList<String> lines = new LinkedList<String>();
+
+        for (int i = off; i < off + len; i++) {
+            byte c = b[i];
+            if (c == '\n') {
+                if (!pendingReturn) {
+                    lines.add(takeLine());
+                }
+                pendingReturn = false;
+            }
+            else if (c == '\r') {
+                lines.add(takeLine());
+                pendingReturn = true;
+            }
+            else {
+                line.write(c);
+                pendingReturn = false;
+            }
+        }
+
+        return lines;
+    }
+
+    private String takeLine() {
+        String text = new String(line.toByteArray(), charset);
+        line.reset();
+        return text;
+    }
+
+    private void flushLine() {
+        assert Thread.holdsLock(this);
+
+        if (line.size() != 0) {
+            String text = takeLine();
+            queue.addLast(new Item(text, text));
+        }
+    }
+
+    /**
+     * Write text, either to the queue or, once the reader reads text and has caught up, to the pipe.
+     *
+     * @return  True if the text was taken; false if it must be written to the pipe.
+     */
+    private synchronized boolean writeText(final byte[] b, final int off, final int len) throws IOException {
+        while (true) {
+            if (writerClosed) {
+                throw new IOException("Channel closed");
+            }
+            ensureReaderOpen();
+
+            if (mode == Mode.OBJECTS) {
+                for (String text : splitLines(b, off, len)) {
+                    enqueue(new Item(text, text));
+                }
+                return true;
+            }
+
+            if (mode == Mode.TEXT && queue.isEmpty()) {
+                return false;
+            }
+
+            // Hold the text, as long as the pipe could have
+            if (queuedBytes == 0 || queuedBytes + len <= bufferSize) {
+                byte[] bytes = new byte[len];
+                System.arraycopy(b, off, bytes, 0, len);
+
+                queue.addLast(new Chunk(bytes, true));
+                queuedBytes += len;
+                notifyAll();
+                return true;
+            }
+
+            await();
+        }
+    }
+
+    /**
+     * Read held output in text mode, rendering any held objects.
+     *
+     * @return  The number of bytes read, or -1 if nothing is held and the pipe must be read.
+     */
+    private synchronized int readText(final byte[] b, final int off, final int len) {
+        if (mode == Mode.UNDECIDED) {
+            select(Mode.TEXT);
+        }
+
+        if (queue.isEmpty()) {
+            return -1;
+        }
+
+        Object element = queue.getFirst();
+        if (element instanceof Item) {
+            byte[] text = ((Item)element).text.getBytes(charset);
+            byte[] bytes = new byte[text.length + lineSeparator.length];
+            System.arraycopy(text, 0, bytes, 0, text.length);
+            System.arraycopy(lineSeparator, 0, bytes, text.length, lineSeparator.length);
+
+            element = new Chunk(bytes, false);
+            queue.set(0, element);
+        }
+
+        Chunk chunk = (Chunk)element;
+        int n = Math.min(len, chunk.bytes.length - chunk.pos);
+        System.arraycopy(chunk.bytes, chunk.pos, b, off, n);
+        chunk.pos += n;
+
+        if (chunk.pos == chunk.bytes.length) {
+            queue.removeFirst();
+
+            if (chunk.written) {
+                queuedBytes -= chunk.bytes.length;
+            }
+            notifyAll();
+        }
+
+        return n;
+    }
+
+    private synchronized int availableText() {
+        if (mode == Mode.UNDECIDED) {
+            select(Mode.TEXT);
+        }
+
+        if (queue.isEmpty()) {
+            return -1;
+        }
+
+        Object element = queue.getFirst();
+        if (element instanceof Chunk) {
+            Chunk chunk = (Chunk)element;
+            return chunk.bytes.length - chunk.pos;
+        }
+
+        return 1;
+    }
+
+    private synchronized void closeWriter() throws IOException {
+        if (writerClosed) {
+            return;
+        }
+
+        try {
+            if (mode == Mode.OBJECTS && !readerClosed) {
+                flushLine();
+            }
+        }
+        finally {
+            writerClosed = true;
+            line.reset();
+            notifyAll();
+
+            pipe.getOutputStream().close();
+        }
+    }
+
+    private synchronized void closeReader() throws IOException {
+        if (mode == Mode.UNDECIDED) {
+            mode = Mode.TEXT;
+        }
+
+        readerClosed = true;
+        queue.clear();
+        queuedBytes = 0;
+        notifyAll();
+
+        pipe.getInputStream().close();
+    }
+
+    private void await() throws InterruptedIOException {
+        try {
+            wait();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private class ChannelInputStream
+        extends InputStream
+    {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            int n = readText(b, off, len);
+            if (n >= 0) {
+                return n;
+            }
+
+            return pipe.getInputStream().read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            int n = availableText();
+            if (n >= 0) {
+                return n;
+            }
+
+            return pipe.getInputStream().available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeReader();
+        }
+    }
+
+    private class ChannelOutputStream
+        extends OutputStream
+    {
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0 || writeText(b, off, len)) {
+                return;
+            }
+
+            // The reader is reading text and has caught up; the pipe does its own blocking
+            pipe.getOutputStream().write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeWriter();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * In-memory, bounded byte pipe between a single writer and a single reader thread.
+ *
+ * <p>
+ * Bytes are held in a ring buffer; the writer blocks while the buffer is full and the reader
+ * blocks while it is empty, each waking the other as soon as there is work to do.  Closing the
+ * output signals end-of-stream to the reader, closing the input fails any further writes.
+ *
+ * @version $Rev$ $Date$
+ */
+public class Pipe
+{
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] buffer;
+
+    private int head;
+
+    private int count;
+
+    private boolean writerClosed;
+
+    private boolean readerClosed;
+
+    private final InputStream in = new PipeInputStream();
+
+    private final OutputStream out = new PipeOutputStream();
+
+    public Pipe(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + size);
+        }
+
+        this.buffer = new byte[size];
+    }
+
+    public Pipe() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the number of bytes the pipe can hold.
+     */
+    public int getSize() {
+        return buffer.length;
+    }
+
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    private synchronized void write(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            while (count == buffer.length && !readerClosed && !writerClosed) {
+                await();
+            }
+
+            if (writerClosed) {
+                throw new IOException("Pipe closed");
+            }
+            if (readerClosed) {
+                throw new IOException("Pipe broken; reader closed");
+            }
+
+            // Copy up to the end of the free region, which may wrap around
+            int tail = (head + count) % buffer.length;
+            int n = Math.min(len, Math.min(buffer.length - count, buffer.length - tail));
+            System.arraycopy(b, off, buffer, tail, n);
+
+            count += n;
+            off += n;
+            len -= n;
+
+            notifyAll();
+        }
+    }
+
+    private synchronized int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (count == 0 && !writerClosed && !readerClosed) {
+            await();
+        }
+
+        if (readerClosed) {
+            throw new IOException("Pipe closed");
+        }
+        if (count == 0) {
+            // Writer closed and everything has been drained
+            return -1;
+        }
+
+        // Copy up to the end of the used region, which may wrap around
+        int n = Math.min(len, Math.min(count, buffer.length - head));
+        System.arraycopy(buffer, head, b, off, n);
+
+        head = (head + n) % buffer.length;
+        count -= n;
+
+        notifyAll();
+
+        return n;
+    }
+
+    private synchronized int available() {
+        return count;
+    }
+
+    private synchronized void closeWriter() {
+        writerClosed = true;
+        notifyAll();
+    }
+
+    private synchronized void closeReader() {
+        readerClosed = true;
+        count = 0;
+        notifyAll();
+    }
+
+    private void await() throws InterruptedIOException {
+        try {
+            wait();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private class PipeInputStream
+        extends InputStream
+    {
+        private final byte[] single = new byte[1];
+
+        @Override
+        public int read() throws IOException {
+            int n = Pipe.this.read(single, 0, 1);
+            return n == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (off < 0 || len < 0 || off + len > b.length) {
+                throw new IndexOutOfBoundsException();
+            }
+
+            return Pipe.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Pipe.this.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeReader();
+        }
+    }
+
+    private class PipeOutputStream
+        extends OutputStream
+    {
+        private final byte[] single = new byte[1];
+
+        @Override
+        public void write(final int b) throws IOException {
+            single[0] = (byte)b;
+            Pipe.this.write(single, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (off < 0 || len < 0 || off + len > b.length) {
+                throw new IndexOutOfBoundsException();
+            }
+
+            Pipe.this.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeWriter();
+        }
+    }
+}
@@ -22,6 +22,7 @@ package org.apache.geronimo.gshell.io;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Locale;
 
 //
 // FIXME: Probably need to add some support to hijack System.in too
@@ -31,6 +32,9 @@ import java.io.PrintStream;
  * Hijacks the systems standard output and error streams on a per-thread basis
  * and redirects to given streams.
  *
+ * Registrations form an immutable chain held by each thread, so writes and (de)registration take no locks;
+ * only installing and uninstalling are synchronized.
+ *
  * @version $Rev$ $Date$
  */
 public class SystemOutputHijacker
@@ -43,21 +47,21 @@ public class SystemOutputHijacker
     /**
      * The previously installed System streams, initialized when installing.
      */
-    private static StreamPair previous;
+    private static volatile StreamPair previous;
     
     /**
      * Flag to indicate if the hijacker is installed or not.
      */
-    private static boolean installed;
+    private static volatile boolean installed;
 
     /**
      * Check if the hijacker has been installed.
      */
-    public static synchronized boolean isInstalled() {
+    public static boolean isInstalled() {
         return installed;
     }
     
-    private static synchronized void ensureInstalled() {
+    private static void ensureInstalled() {
         if (!isInstalled()) {
             throw new IllegalStateException("Not installed");
         }
@@ -121,7 +125,7 @@ public class SystemOutputHijacker
     /**
      * Get the current stream registration.
      */
-    private static synchronized StreamRegistration registration(final boolean required) {
+    private static StreamRegistration registration(final boolean required) {
         if (required) {
             ensureRegistered();
         }
@@ -132,11 +136,11 @@ public class SystemOutputHijacker
     /**
      * Check if there are streams registered for the current thread.
      */
-    public static synchronized boolean isRegistered() {
+    public static boolean isRegistered() {
         return registration(false) != null;
     }
     
-    private static synchronized void ensureRegistered() {
+    private static void ensureRegistered() {
         ensureInstalled();
         
         if (!isRegistered()) {
@@ -147,7 +151,7 @@ public class SystemOutputHijacker
     /**
      * Register streams for the current thread.
      */
-    public static synchronized void register(final PrintStream out, final PrintStream err) {
+    public static void register(final PrintStream out, final PrintStream err) {
         ensureInstalled();
         
         StreamRegistration prev = registration(false);
@@ -162,14 +166,14 @@ public class SystemOutputHijacker
     /**
      * Register combinded streams for the current thread.
      */
-    public static synchronized void register(final PrintStream out) {
+    public static void register(final PrintStream out) {
         register(out, out);
     }
     
     /**
      * Register streams for the current thread.
      */
-    public static synchronized void register(final StreamPair pair) {
+    public static void register(final StreamPair pair) {
         assert pair != null;
         
         register(pair.out, pair.err);
@@ -178,22 +182,41 @@ public class SystemOutputHijacker
     /**
      * Reregister streams for the current thread, and restore the previous if any.
      */
-    public static synchronized void deregister() {
+    public static void deregister() {
         StreamRegistration cur = registration(true);
         
         registrations.set(cur.previous);
     }
     
+    /**
+     * Get the stream registrations of the current thread, to carry over to another thread; null if none.
+     */
+    public static StreamRegistration getRegistration() {
+        return registration(false);
+    }
+
+    /**
+     * Replace the stream registrations of the current thread, or clear them if null.
+     */
+    public static void setRegistration(final StreamRegistration registration) {
+        if (registration == null) {
+            registrations.remove();
+        }
+        else {
+            registrations.set(registration);
+        }
+    }
+
     /**
      * Stream registration information.
      */
-    private static class StreamRegistration
+    public static final class StreamRegistration
     {
         public final StreamPair streams;
         
         public final StreamRegistration previous;
         
-        public StreamRegistration(final StreamPair streams, final StreamRegistration previous) {
+        private StreamRegistration(final StreamPair streams, final StreamRegistration previous) {
             assert streams != null;
             
             this.streams = streams;
@@ -204,16 +227,20 @@ public class SystemOutputHijacker
     /**
      * Returns the currently registered streams.
      */
-    private static synchronized StreamPair current() {
+    private static StreamPair current() {
         StreamRegistration reg = registration(false);
         if (reg == null) {
-            return previous;
+            // Writes racing an uninstall fall back to the system streams
+            StreamPair pair = previous;
+            return pair != null ? pair : StreamPair.SYSTEM;
         }
         return reg.streams;
     }
     
     /**
      * Delegates write calls to the currently registered stream.
+     *
+     * The print methods are delegated too, as the inherited ones lock this stream, which all threads share.
      */
     private static class DelegateStream
         extends PrintStream
@@ -253,6 +280,121 @@ public class SystemOutputHijacker
         public void close() {
             get().close();
         }
+
+        public boolean checkError() {
+            return get().checkError();
+        }
+
+        public void print(final boolean b) {
+            get().print(b);
+        }
+
+        public void print(final char c) {
+            get().print(c);
+        }
+
+        public void print(final int i) {
+            get().print(i);
+        }
+
+        public void print(final long l) {
+            get().print(l);
+        }
+
+        public void print(final float f) {
+            get().print(f);
+        }
+
+        public void print(final double d) {
+            get().print(d);
+        }
+
+        public void print(final char[] s) {
+            get().print(s);
+        }
+
+        public void print(final String s) {
+            get().print(s);
+        }
+
+        public void print(final Object obj) {
+            get().print(obj);
+        }
+
+        public void println() {
+            get().println();
+        }
+
+        public void println(final boolean x) {
+            get().println(x);
+        }
+
+        public void println(final char x) {
+            get().println(x);
+        }
+
+        public void println(final int x) {
+            get().println(x);
+        }
+
+        public void println(final long x) {
+            get().println(x);
+        }
+
+        public void println(final float x) {
+            get().println(x);
+        }
+
+        public void println(final double x) {
+            get().println(x);
+        }
+
+        public void println(final char[] x) {
+            get().println(x);
+        }
+
+        public void println(final String x) {
+            get().println(x);
+        }
+
+        public void println(final Object x) {
+            get().println(x);
+        }
+
+        public PrintStream printf(final String format, final Object... args) {
+            get().printf(format, args);
+            return this;
+        }
+
+        public PrintStream printf(final Locale l, final String format, final Object... args) {
+            get().printf(l, format, args);
+            return this;
+        }
+
+        public PrintStream format(final String format, final Object... args) {
+            get().format(format, args);
+            return this;
+        }
+
+        public PrintStream format(final Locale l, final String format, final Object... args) {
+            get().format(l, format, args);
+            return this;
+        }
+
+        public PrintStream append(final CharSequence csq) {
+            get().append(csq);
+            return this;
+        }
+
+        public PrintStream append(final CharSequence csq, final int start, final int end) {
+            get().append(csq, start, end);
+            return this;
+        }
+
+        public PrintStream append(final char c) {
+            get().append(c);
+            return this;
+        }
     }
 
     //
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.io;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Unit tests for the {@link FlushingOutputStream} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class FlushingOutputStreamTest
+    extends TestCase
+{
+    private CountingOutputStream target;
+
+    protected void setUp() throws Exception {
+        target = new CountingOutputStream();
+    }
+
+    protected void tearDown() throws Exception {
+        target = null;
+    }
+
+    public void testLineFlushesOnNewline() throws Exception {
+        FlushingOutputStream out = new FlushingOutputStream(target, FlushingOutputStream.Policy.LINE, 1000, 0);
+
+        out.write("abc".getBytes());
+        assertEquals(0, target.size());
+
+        out.write("\n".getBytes());
+        assertEquals("abc\n", target.toString());
+    }
+
+    public void testLineBatchesWithinInterval() throws Exception {
+        FlushingOutputStream out = new FlushingOutputStream(target, FlushingOutputStream.Policy.LINE, 1000, 60000);
+        PrintStream ps = new PrintStream(out, true);
+
+        // The first line goes straight out, the rest wait for the interval
+        for (int i = 0; i < 100; i++) {
+            ps.println("line");
+        }
+        assertEquals(1, target.flushes);
+
+        out.sync();
+        assertEquals(100 * ("line" + System.getProperty("line.separator")).length(), target.size());
+        assertEquals(2, target.flushes);
+    }
+
+    public void testBufferIgnoresFlush() throws Exception {
+        FlushingOutputStream out = new FlushingOutputStream(target, FlushingOutputStream.Policy.BUFFER, 1000, 60000);
+        PrintStream ps = new PrintStream(out, true);
+
+        ps.println("line");
+        ps.flush();
+        assertEquals(0, target.size());
+
+        out.sync();
+        assertEquals("line", target.toString().trim());
+    }
+
+    public void testBufferFlushesWhenFull() throws Exception {
+        FlushingOutputStream out = new FlushingOutputStream(target, FlushingOutputStream.Policy.BUFFER, 4, 60000);
+
+        out.write("abc".getBytes());
+        assertEquals(0, target.size());
+
+        out.write("de".getBytes());
+        assertEquals("abc", target.toString());
+
+        out.write("0123456789".getBytes());
+        assertEquals("abcde0123456789", target.toString());
+    }
+
+    public void testBufferFlushesAfterInterval() throws Exception {
+        FlushingOutputStream out = new FlushingOutputStream(target, FlushingOutputStream.Policy.BUFFER, 1000, 10);
+
+        out.write("abc".getBytes());
+
+        long timeout = System.currentTimeMillis() + 5000;
+        while (target.size() == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+
+        assertEquals("abc", target.toString());
+    }
+
+    public void testClose() throws Exception {
+        FlushingOutputStream out = new FlushingOutputStream(target, FlushingOutputStream.Policy.BUFFER, 1000, 60000);
+
+        out.write("abc".getBytes());
+        out.close();
+
+        assertEquals("abc", target.toString());
+        assertTrue(target.closed);
+    }
+
+    public void testStalledStreamDoesNotDelayOthers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        OutputStream stalled = new OutputStream() {
+            public void write(final int b) throws IOException {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    throw new IOException();
+                }
+            }
+        };
+
+        try {
+            FlushingOutputStream blocked = new FlushingOutputStream(stalled, FlushingOutputStream.Policy.BUFFER, 1000, 1);
+            blocked.write("stuck".getBytes());
+
+            // Give the blocked flush time to start
+            Thread.sleep(50);
+
+            FlushingOutputStream out = new FlushingOutputStream(target, FlushingOutputStream.Policy.BUFFER, 1000, 10);
+            out.write("abc".getBytes());
+
+            long timeout = System.currentTimeMillis() + 5000;
+            while (target.size() == 0 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+
+            assertEquals("abc", target.toString());
+        }
+        finally {
+            release.countDown();
+        }
+    }
+
+    private static class CountingOutputStream
+        extends ByteArrayOutputStream
+    {
+        public int flushes;
+
+        public boolean closed;
+
+        public synchronized void flush() throws IOException {
+            flushes++;
+        }
+
+        public void close() throws IOException {
+            closed = true;
+        }
+    }
+}
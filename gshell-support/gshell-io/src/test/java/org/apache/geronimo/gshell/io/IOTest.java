@@ -21,6 +21,15 @@ package org.apache.geronimo.gshell.io;
 
 import junit.framework.TestCase;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
 /**
  * Unit tests for the {@link IO} class.
  *
@@ -31,7 +40,7 @@ public class IOTest
 {
     public void testConstructorArgs() throws Exception {
         try {
-            new IO(null, null, null);
+            new IO((InputStream)null, null, null);
             fail("Accepted null value");
         }
         catch (AssertionError expected) {
@@ -57,4 +66,108 @@ public class IOTest
         // Happy day...
         new IO(System.in, System.out, System.err);
     }
+
+    private static class CountingOutputStream
+        extends FilterOutputStream
+    {
+        private int flushes;
+
+        public CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushes++;
+            super.flush();
+        }
+    }
+
+    private IO createIO(final ObjectChannel channel, final OutputStream out) {
+        PrintStream stream = new PrintStream(out, false);
+        IO io = new IO(new ByteArrayInputStream(new byte[0]), stream, stream, false);
+        io.setObjectOutput(channel);
+        return io;
+    }
+
+    public void testEmitTextModeDoesNotFlush() throws Exception {
+        ObjectChannel channel = new ObjectChannel(new Pipe(4096), 4);
+        CountingOutputStream out = new CountingOutputStream(channel.getOutputStream());
+        IO io = createIO(channel, out);
+
+        // Reading the stream selects text mode
+        io.out.print("a");
+        io.out.flush();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(channel.getInputStream()));
+        assertEquals('a', reader.read());
+        assertFalse(channel.acceptObjects());
+
+        int flushes = out.flushes;
+        for (int i = 0; i < 100; i++) {
+            io.emit(i);
+        }
+        assertEquals(flushes, out.flushes);
+
+        io.out.flush();
+        io.outputStream.close();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(String.valueOf(i), reader.readLine());
+        }
+        assertNull(reader.readLine());
+    }
+
+    public void testEmitFlushesPrecedingText() throws Exception {
+        ObjectChannel channel = new ObjectChannel(new Pipe(4096), 4);
+        CountingOutputStream out = new CountingOutputStream(channel.getOutputStream());
+        final IO io = createIO(channel, out);
+
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    io.emit(1);
+                    io.emit(2);
+                    io.out.println("text");
+                    io.emit(3);
+                    io.emit(4);
+                    io.out.flush();
+                    io.outputStream.close();
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writer.start();
+
+        assertEquals(1, channel.take());
+        assertEquals(2, channel.take());
+        assertEquals("text", channel.take());
+        assertEquals(3, channel.take());
+        assertEquals(4, channel.take());
+        assertNull(channel.take());
+
+        writer.join();
+    }
+
+    public void testEmitFlushesOnlyAfterText() throws Exception {
+        ObjectChannel channel = new ObjectChannel(new Pipe(4096), 256);
+        CountingOutputStream out = new CountingOutputStream(channel.getOutputStream());
+        IO io = createIO(channel, out);
+
+        for (int i = 0; i < 100; i++) {
+            io.emit(i);
+        }
+        assertEquals(0, out.flushes);
+
+        io.out.println("text");
+        io.emit(100);
+        io.emit(101);
+        assertEquals(1, out.flushes);
+    }
 }
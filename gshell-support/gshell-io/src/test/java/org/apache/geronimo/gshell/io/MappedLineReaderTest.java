@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.io;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for the {@link MappedLineReader} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MappedLineReaderTest
+    extends TestCase
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File file;
+
+    protected void setUp() throws Exception {
+        file = File.createTempFile("gshell-mapped", ".txt");
+    }
+
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private List<String> readMapped(final String text, final int windowSize) throws Exception {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+
+        List<String> lines = new ArrayList<String>();
+        MappedLineReader reader = new MappedLineReader(file, UTF_8, windowSize);
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private List<String> readBuffered(final String text) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new StringReader(text));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private void assertSameLines(final String text) throws Exception {
+        List<String> expected = readBuffered(text);
+        for (int window = 1; window <= 16; window++) {
+            assertEquals("window " + window, expected, readMapped(text, window));
+        }
+        assertEquals(expected, readMapped(text, MappedLineReader.DEFAULT_WINDOW_SIZE));
+    }
+
+    public void testEmpty() throws Exception {
+        assertSameLines("");
+    }
+
+    public void testTerminators() throws Exception {
+        assertSameLines("a\nbb\r\nccc\rdddd\n\n\r\r\n");
+        assertSameLines("no terminator");
+        assertSameLines("\r\n");
+    }
+
+    public void testLongLines() throws Exception {
+        StringBuilder buff = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < i; j++) {
+                buff.append((char)('a' + j % 26));
+            }
+            buff.append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        assertSameLines(buff.toString());
+    }
+
+    public void testMultiByte() throws Exception {
+        assertSameLines("caf\u00e9\n\u65e5\u672c\u8a9e\r\nplain\n\u00fc\u00f6\u00e4");
+    }
+
+    public void testSupportedCharsets() {
+        assertTrue(MappedLineReader.isSupported(UTF_8));
+        assertTrue(MappedLineReader.isSupported(Charset.forName("ISO-8859-1")));
+        assertFalse(MappedLineReader.isSupported(Charset.forName("UTF-16")));
+    }
+}
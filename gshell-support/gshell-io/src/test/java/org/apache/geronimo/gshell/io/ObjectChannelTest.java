@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.io;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+/**
+ * Unit tests for the {@link ObjectChannel} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ObjectChannelTest
+    extends TestCase
+{
+    private ObjectChannel channel;
+
+    protected void setUp() throws Exception {
+        channel = new ObjectChannel(new Pipe(64), 4);
+    }
+
+    protected void tearDown() throws Exception {
+        channel = null;
+    }
+
+    private Thread write(final Object... items) {
+        Thread writer = new Thread() {
+            public void run() {
+                PrintStream out = new PrintStream(channel.getOutputStream());
+                try {
+                    for (Object item : items) {
+                        if (item instanceof String) {
+                            out.print(item);
+                            out.flush();
+                        }
+                        else if (!channel.put(item)) {
+                            out.println(item);
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                finally {
+                    out.close();
+                }
+            }
+        };
+        writer.start();
+        return writer;
+    }
+
+    public void testObjectMode() throws Exception {
+        Thread writer = write("a\n", 1, "b\r\nc\rd", 2, 3, 4, 5, 6);
+
+        assertEquals("a", channel.take());
+        assertEquals(1, channel.take());
+        assertEquals("b", channel.take());
+        assertEquals("c", channel.take());
+        // "d" is only a complete line once the writer closes, after the objects
+        assertEquals(2, channel.take());
+        for (int i = 3; i <= 6; i++) {
+            assertEquals(i, channel.take());
+        }
+        assertEquals("d", channel.take());
+        assertNull(channel.take());
+        assertTrue(channel.isObjectMode());
+
+        writer.join();
+    }
+
+    public void testTextMode() throws Exception {
+        Thread writer = write("a\n", 1, "b\n");
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(channel.getInputStream()));
+        assertEquals("a", reader.readLine());
+        assertEquals("1", reader.readLine());
+        assertEquals("b", reader.readLine());
+        assertNull(reader.readLine());
+        assertFalse(channel.isObjectMode());
+
+        writer.join();
+    }
+
+    public void testReaderClosedUnblocksWriter() throws Exception {
+        Thread writer = write(1, 2, 3);
+
+        channel.getInputStream().close();
+        writer.join(5000);
+
+        assertFalse(writer.isAlive());
+    }
+
+    public void testTextWriteDoesNotWaitForReader() throws Exception {
+        OutputStream out = channel.getOutputStream();
+
+        // Held until the reader chooses, as the pipe would have held it
+        out.write("0123456789".getBytes());
+        out.close();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(channel.getInputStream()));
+        assertEquals("0123456789", reader.readLine());
+        assertNull(reader.readLine());
+    }
+
+    public void testAcceptObjects() throws Exception {
+        Thread writer = write(1, "a\n", 2);
+
+        assertTrue(channel.acceptObjects());
+        assertEquals(1, channel.take());
+
+        ObjectChannel.Item item = channel.takeItem();
+        assertEquals("a", item.object);
+        assertEquals("a", item.text);
+
+        assertEquals(2, channel.take());
+        assertNull(channel.take());
+
+        writer.join();
+    }
+
+    public void testAcceptObjectsWithText() throws Exception {
+        Thread writer = write("a\n", 1, "b\n");
+
+        assertFalse(channel.acceptObjects());
+
+        // Objects are rendered in order with the text around them
+        BufferedReader reader = new BufferedReader(new InputStreamReader(channel.getInputStream()));
+        assertEquals("a", reader.readLine());
+        assertEquals("1", reader.readLine());
+        assertEquals("b", reader.readLine());
+        assertNull(reader.readLine());
+
+        writer.join();
+    }
+
+    public void testRenderedText() throws Exception {
+        assertTrue(channel.put(new Object(), "text"));
+        channel.getOutputStream().close();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(channel.getInputStream()));
+        assertEquals("text", reader.readLine());
+        assertNull(reader.readLine());
+    }
+
+    public void testCharset() throws Exception {
+        Charset charset = Charset.forName("UTF-8");
+        channel = new ObjectChannel(new Pipe(64), 4, 64, charset);
+
+        String text = "gr\u00fc\u00dfe";
+        OutputStream out = channel.getOutputStream();
+        out.write((text + "\n").getBytes(charset));
+        out.close();
+
+        assertEquals(text, channel.take());
+        assertNull(channel.take());
+    }
+}
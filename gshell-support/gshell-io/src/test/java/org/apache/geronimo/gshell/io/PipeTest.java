@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.io;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Unit tests for the {@link Pipe} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PipeTest
+    extends TestCase
+{
+    public void testReadAfterClose() throws Exception {
+        Pipe pipe = new Pipe(8);
+        OutputStream out = pipe.getOutputStream();
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+
+        InputStream in = pipe.getInputStream();
+        assertEquals(3, in.available());
+        assertEquals(1, in.read());
+        assertEquals(2, in.read());
+        assertEquals(3, in.read());
+        assertEquals(-1, in.read());
+    }
+
+    public void testTransferLargerThanBuffer() throws Exception {
+        final Pipe pipe = new Pipe(7);
+        final byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)i;
+        }
+
+        Thread writer = new Thread() {
+            public void run() {
+                OutputStream out = pipe.getOutputStream();
+                try {
+                    out.write(data, 0, 5000);
+                    for (int i = 5000; i < data.length; i++) {
+                        out.write(data[i]);
+                    }
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                finally {
+                    Closer.close(out);
+                }
+            }
+        };
+        writer.start();
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        InputStream in = pipe.getInputStream();
+        byte[] buff = new byte[13];
+        int n;
+        while ((n = in.read(buff)) != -1) {
+            result.write(buff, 0, n);
+        }
+        writer.join();
+
+        byte[] bytes = result.toByteArray();
+        assertEquals(data.length, bytes.length);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(data[i], bytes[i]);
+        }
+    }
+
+    public void testWriteAfterReaderClosed() throws Exception {
+        Pipe pipe = new Pipe(4);
+        pipe.getInputStream().close();
+
+        try {
+            pipe.getOutputStream().write(1);
+            fail();
+        }
+        catch (IOException expected) {
+            // ignore
+        }
+    }
+
+    public void testBlockedWriterReleasedWhenReaderCloses() throws Exception {
+        final Pipe pipe = new Pipe(2);
+        final IOException[] failure = new IOException[1];
+
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    pipe.getOutputStream().write(new byte[10]);
+                }
+                catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        writer.start();
+
+        // Let the writer fill the buffer and block
+        Thread.sleep(100);
+        pipe.getInputStream().close();
+        writer.join(5000);
+
+        assertFalse(writer.isAlive());
+        assertNotNull(failure[0]);
+    }
+}
@@ -206,4 +206,43 @@ public class SystemOutputHijackerTest
         
         assertEquals("hijacked!!", msg);
     }
+
+    public void testCarryRegistration() throws Exception {
+        installOut();
+
+        final SystemOutputHijacker.StreamRegistration registration = SystemOutputHijacker.getRegistration();
+        assertNotNull(registration);
+
+        final boolean[] registered = new boolean[3];
+
+        Runnable task = new Runnable() {
+            public void run() {
+                // Like a pooled thread which was created by someone else
+                SystemOutputHijacker.setRegistration(null);
+                registered[0] = SystemOutputHijacker.isRegistered();
+
+                SystemOutputHijacker.setRegistration(registration);
+                registered[1] = SystemOutputHijacker.isRegistered();
+                System.out.print("carried");
+
+                SystemOutputHijacker.setRegistration(null);
+                registered[2] = SystemOutputHijacker.isRegistered();
+            }
+        };
+
+        try {
+            Thread t = new Thread(task);
+            t.start();
+            t.join();
+        }
+        finally {
+            deregisterAndUninstall();
+        }
+
+        assertFalse(registered[0]);
+        assertTrue(registered[1]);
+        assertFalse(registered[2]);
+
+        assertEquals("carried", new String(buff.toByteArray()));
+    }
 }
@@ -29,9 +29,7 @@ import org.apache.commons.vfs.provider.AbstractFileSystem;
 import org.apache.geronimo.gshell.vfs.provider.meta.data.MetaData;
 import org.apache.geronimo.gshell.vfs.provider.meta.data.MetaDataRegistry;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 
 /**
  * Meta file system.
@@ -81,15 +79,7 @@ public class MetaFileSystem
     String[] listChildren(final FileName name) throws FileSystemException {
         assert name != null;
 
-        MetaData data = registry.lookupData(name);
-        Collection<MetaData> children = data.getChildren();
-
-        List<String> names = new ArrayList<String>(children.size());
-        for (MetaData child : children) {
-            names.add(child.getName().getBaseName());
-        }
-
-        return names.toArray(new String[names.size()]);
+        return registry.lookupData(name).getChildNames();
     }
 
     FileContentInfoFactory getFileContentInfoFactory() {
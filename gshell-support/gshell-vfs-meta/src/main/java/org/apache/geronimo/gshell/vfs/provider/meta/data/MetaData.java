@@ -26,7 +26,9 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -44,11 +46,21 @@ public class MetaData
 
     private final MetaDataContent content;
 
-    private final Map<String,Object> attributes = new HashMap<String,Object>();
+    private final Map<String,Object> attributes = Collections.synchronizedMap(new HashMap<String,Object>());
 
-    private final Collection<MetaData> children = new ArrayList<MetaData>();
+    /**
+     * Children by base-name, guarded by this instance.
+     */
+    private final Map<String,MetaData> children = new LinkedHashMap<String,MetaData>();
 
-    private long lastModified = -1;
+    /**
+     * Immutable snapshot of the children, rebuilt on first use after a change.
+     */
+    private volatile Collection<MetaData> childrenSnapshot;
+
+    private volatile String[] childNamesSnapshot;
+
+    private volatile long lastModified = -1;
 
     //
     // TODO: Consider changing "name" to a String here?  name.getParent() is used in a few places, so have to resolve that first, perhaps expose MetaData getParent() ?
@@ -135,11 +147,52 @@ public class MetaData
         return old;
     }
 
+    /**
+     * Returns an immutable snapshot of the children.
+     */
     public Collection<MetaData> getChildren() {
-        return children;
+        Collection<MetaData> snapshot = childrenSnapshot;
+
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = Collections.unmodifiableList(new ArrayList<MetaData>(children.values()));
+                childrenSnapshot = snapshot;
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Returns the base-names of the children.
+     */
+    public String[] getChildNames() {
+        String[] snapshot = childNamesSnapshot;
+
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = children.keySet().toArray(new String[children.size()]);
+                childNamesSnapshot = snapshot;
+            }
+        }
+
+        // Callers may modify the array they get
+        return snapshot.clone();
     }
 
-    public void addChild(final MetaData data) {
+    public synchronized MetaData getChild(final String baseName) {
+        assert baseName != null;
+
+        return children.get(baseName);
+    }
+
+    private void childrenChanged() {
+        childrenSnapshot = null;
+        childNamesSnapshot = null;
+        updateLastModified();
+    }
+
+    public synchronized void addChild(final MetaData data) {
         assert data != null;
 
         if (!getType().hasChildren()) {
@@ -151,11 +204,11 @@ public class MetaData
 
         log.trace("Adding child: {}", data);
 
-        getChildren().add(data);
-        updateLastModified();
+        children.put(data.getName().getBaseName(), data);
+        childrenChanged();
     }
 
-    public void removeChild(final MetaData data) {
+    public synchronized void removeChild(final MetaData data) {
         assert data != null;
 
         if (!getType().hasChildren()) {
@@ -167,14 +220,14 @@ public class MetaData
 
         log.trace("Removing child: {}", data);
         
-        getChildren().remove(data);
-        updateLastModified();
+        children.remove(data.getName().getBaseName());
+        childrenChanged();
     }
 
-    public boolean hasChild(final MetaData data) {
+    public synchronized boolean hasChild(final MetaData data) {
         assert data != null;
 
-        return getChildren().contains(data);
+        return data.equals(children.get(data.getName().getBaseName()));
     }
 
     @Override
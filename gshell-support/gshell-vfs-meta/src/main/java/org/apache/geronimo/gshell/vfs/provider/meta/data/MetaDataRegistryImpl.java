@@ -28,8 +28,8 @@ import org.apache.geronimo.gshell.vfs.provider.meta.MetaFileNameParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * {@link MetaDataRegistry} component.
@@ -41,7 +41,7 @@ public class MetaDataRegistryImpl
 {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
-    private final Map<FileName, MetaData> nodes = new HashMap<FileName, MetaData>();
+    private final Map<FileName, MetaData> nodes = new ConcurrentHashMap<FileName, MetaData>();
 
     private final EventPublisher eventPublisher;
 
@@ -64,7 +64,7 @@ public class MetaDataRegistryImpl
         return nodes;
     }
     
-    public void registerData(final FileName name, final MetaData data) {
+    public synchronized void registerData(final FileName name, final MetaData data) {
         assert name != null;
         assert data != null;
 
@@ -94,10 +94,9 @@ public class MetaDataRegistryImpl
         MetaData parent = null;
 
         if (parentName != null) {
-            if (containsData(parentName)) {
-                parent = lookupData(parentName);
-            }
-            else {
+            parent = getNodes().get(parentName);
+
+            if (parent == null) {
                 log.trace("Building parent tree: {}", parentName);
                 
                 parent = new MetaData(parentName, FileType.FOLDER);
@@ -108,7 +107,7 @@ public class MetaDataRegistryImpl
         return parent;
     }
 
-    public void removeData(final FileName name) {
+    public synchronized void removeData(final FileName name) {
         assert name != null;
 
         log.trace("Removing data: {}", name);
@@ -116,8 +115,8 @@ public class MetaDataRegistryImpl
         MetaData data = getNodes().remove(name);
 
         FileName parentName = name.getParent();
-        if (parentName != null && containsData(parentName)) {
-            MetaData parent = lookupData(parentName);
+        MetaData parent = parentName != null ? getNodes().get(parentName) : null;
+        if (parent != null) {
             parent.removeChild(data);
         }
 
@@ -134,14 +133,16 @@ public class MetaDataRegistryImpl
         assert name != null;
 
         log.trace("Looking up data: {}", name);
-        
-        if (!containsData(name)) {
+
+        MetaData data = getNodes().get(name);
+
+        if (data == null) {
             //
             // TODO: Maybe reconsider just returning null, not sure the exception sipmlifies anything
             //
             throw new MetaDataRegistryException("No data registered for: " + name);
         }
 
-        return getNodes().get(name);
+        return data;
     }
 }
\ No newline at end of file
@@ -22,7 +22,9 @@ package org.apache.geronimo.gshell.vfs.provider.meta.data;
 import org.apache.commons.vfs.FileName;
 import org.apache.geronimo.gshell.spring.SpringTestSupport;
 import org.apache.geronimo.gshell.vfs.provider.meta.AccessibleMetaDataRegistry;
+import org.apache.geronimo.gshell.vfs.provider.meta.MetaFileNameParser;
 
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -47,4 +49,23 @@ public class MetaDataRegistryImplTest
         assertNotNull(nodes);
         assertEquals(1, nodes.size());
     }
+
+    public void testChildIndex() throws Exception {
+        MetaFileNameParser parser = new MetaFileNameParser();
+        FileName a = parser.parseUri("meta:/commands/a");
+        FileName b = parser.parseUri("meta:/commands/b");
+
+        registry.registerData(a, new MetaData(a));
+        registry.registerData(b, new MetaData(b));
+
+        MetaData parent = registry.lookupData(a.getParent());
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(parent.getChildNames()));
+        assertSame(registry.lookupData(a), parent.getChild("a"));
+        assertEquals(2, parent.getChildren().size());
+
+        registry.removeData(a);
+        assertEquals(Arrays.asList("b"), Arrays.asList(parent.getChildNames()));
+        assertNull(parent.getChild("a"));
+        assertEquals(1, parent.getChildren().size());
+    }
 }
\ No newline at end of file
@@ -98,9 +98,13 @@ public class XStoreImpl
             throw new XStoreException(e);
         }
         finally {
+            // Never leave this store attached to the thread, which may be pooled
             if (prev != null) {
                 XStoreHolder.set(prev);
             }
+            else {
+                XStoreHolder.clear();
+            }
         }
     }
 
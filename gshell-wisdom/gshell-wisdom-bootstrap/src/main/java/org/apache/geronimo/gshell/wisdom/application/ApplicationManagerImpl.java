@@ -28,6 +28,8 @@ import org.apache.geronimo.gshell.artifact.Artifact;
 import org.apache.geronimo.gshell.artifact.ArtifactResolver;
 import org.apache.geronimo.gshell.chronos.StopWatch;
 import org.apache.geronimo.gshell.event.EventPublisher;
+import org.apache.geronimo.gshell.io.IO;
+import org.apache.geronimo.gshell.io.IOAware;
 import org.apache.geronimo.gshell.shell.Shell;
 import org.apache.geronimo.gshell.shell.ShellContext;
 import org.apache.geronimo.gshell.shell.ShellContextHolder;
@@ -36,7 +38,6 @@ import org.apache.geronimo.gshell.spring.BeanContainerAware;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -132,10 +133,7 @@ public class ApplicationManagerImpl
     private ClassPath loadClassPath(final ApplicationModel model) throws Exception {
         assert model != null;
 
-        // FIXME: Get basedir from application
-        Artifact artifact = model.getArtifact();
-        ClassPathCache cache = new ClassPathCache(new File(new File(System.getProperty("gshell.home")), "var/" + artifact.getGroup() + "/" + artifact.getName() + "/classpath.ser"));
-                
+        ClassPathCache cache = ClassPathCache.forArtifact(model.getArtifact());
         ClassPath classPath = cache.get();
 
         if (classPath == null) {
@@ -176,11 +174,28 @@ public class ApplicationManagerImpl
     //
 
     public Shell create() throws Exception {
+        return createShell(null);
+    }
+
+    public Shell create(final IO io) throws Exception {
+        assert io != null;
+
+        return createShell(io);
+    }
+
+    private Shell createShell(final IO io) throws Exception {
         // Make sure that we have a valid context
         getApplication();
 
         final Shell shell = applicationContainer.getBean(Shell.class);
 
+        if (io != null) {
+            if (!(shell instanceof IOAware)) {
+                throw new IllegalStateException("Shell does not support custom IO: " + shell);
+            }
+            ((IOAware)shell).setIo(io);
+        }
+
         final ShellContext context = shell.getContext();
 
         log.debug("Created shell instance: {}", shell);
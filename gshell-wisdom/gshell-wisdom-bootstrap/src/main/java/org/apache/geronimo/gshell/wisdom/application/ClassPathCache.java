@@ -20,26 +20,43 @@
 package org.apache.geronimo.gshell.wisdom.application;
 
 import org.apache.geronimo.gshell.application.ClassPath;
+import org.apache.geronimo.gshell.artifact.Artifact;
 import org.apache.geronimo.gshell.io.Closer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Helper to manage caching of {@link ClassPath} instances.
  *
+ * The cache is a versioned, line-oriented UTF-8 file, with one tab-separated line per artifact holding its
+ * coordinates, file size, last-modified time and path.  A cached classpath is only returned when every
+ * artifact file still has the recorded size and last-modified time.
+ *
  * @version $Rev$ $Date$
  */
 public class ClassPathCache
 {
+    private static final String HEADER = "#gshell-classpath:2";
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final char SEPARATOR = '\t';
+
+    private static final String NULL = "-";
+
+    private static final int FIELDS = 8;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final File file;
@@ -49,19 +66,53 @@ public class ClassPathCache
         this.file = file;
     }
 
+    /**
+     * Returns the cache for the classpath of the given artifact.
+     */
+    public static ClassPathCache forArtifact(final Artifact artifact) {
+        assert artifact != null;
+
+        // FIXME: Get basedir from application
+        File dir = new File(new File(System.getProperty("gshell.home")), "var/" + artifact.getGroup() + "/" + artifact.getName());
+        return new ClassPathCache(new File(dir, "classpath.cache"));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
     public void set(final ClassPath classPath) throws IOException {
         assert classPath != null;
 
         // noinspection ResultOfMethodCallIgnored
         file.getParentFile().mkdirs();
-        ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+        // Write to a temporary file first, so readers never see a partial cache
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), ENCODING));
         try {
-            output.writeObject(classPath);
-            log.debug("Saved classpath to cache: {}", file);
+            writer.write(HEADER);
+            writer.newLine();
+
+            StringBuilder buff = new StringBuilder();
+            for (Artifact artifact : classPath.getArtifacts()) {
+                buff.setLength(0);
+                format(artifact, buff);
+                writer.write(buff.toString());
+                writer.newLine();
+            }
         }
         finally {
-            Closer.close(output);
+            Closer.close(writer);
+        }
+
+        // noinspection ResultOfMethodCallIgnored
+        file.delete();
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to rename " + tmp + " to " + file);
         }
+
+        log.debug("Saved classpath to cache: {}", file);
     }
 
     public ClassPath get() {
@@ -69,29 +120,126 @@ public class ClassPathCache
             return null;
         }
 
-        ClassPath classPath;
+        List<Artifact> artifacts = new ArrayList<Artifact>();
 
         try {
-            ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
             try {
-                classPath = (ClassPath)input.readObject();
-                log.debug("Loaded classpath from cache: {}", file);
+                if (!HEADER.equals(reader.readLine())) {
+                    log.debug("Classpath cache format is not supported: {}", file);
+                    return null;
+                }
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() == 0) {
+                        continue;
+                    }
+
+                    Artifact artifact = parse(line);
+                    if (artifact == null) {
+                        log.debug("Classpath is not valid; stale entry: {}", line);
+                        return null;
+                    }
+
+                    artifacts.add(artifact);
+                }
             }
             finally {
-                Closer.close(input);
+                Closer.close(reader);
             }
         }
         catch (Exception e) {
             log.warn("Failed to load classpath from cache", e);
             return null;
         }
-        
-        if (classPath.isValid()) {
-            return classPath;
+
+        log.debug("Loaded classpath from cache: {}", file);
+
+        return new ClassPathImpl(artifacts);
+    }
+
+    private static void format(final Artifact artifact, final StringBuilder buff) {
+        assert artifact != null;
+        assert buff != null;
+
+        File file = artifact.getFile();
+
+        append(buff, artifact.getGroup());
+        append(buff, artifact.getName());
+        append(buff, artifact.getVersion());
+        append(buff, artifact.getType());
+        append(buff, artifact.getClassifier());
+
+        if (file != null) {
+            buff.append(file.length()).append(SEPARATOR);
+            buff.append(file.lastModified()).append(SEPARATOR);
+            buff.append(file.getAbsolutePath());
         }
+        else {
+            buff.append(NULL).append(SEPARATOR);
+            buff.append(NULL).append(SEPARATOR);
+            buff.append(NULL);
+        }
+    }
+
+    private static void append(final StringBuilder buff, final String value) {
+        buff.append(value != null ? value : NULL).append(SEPARATOR);
+    }
+
+    /**
+     * Parse a cached artifact line, returning null if the line is malformed or its file has changed.
+     */
+    private static Artifact parse(final String line) {
+        assert line != null;
+
+        String[] fields = split(line);
+        if (fields == null) {
+            return null;
+        }
+
+        Artifact artifact = new Artifact();
+        artifact.setGroup(value(fields[0]));
+        artifact.setName(value(fields[1]));
+        artifact.setVersion(value(fields[2]));
+        artifact.setType(value(fields[3]));
+        artifact.setClassifier(value(fields[4]));
+
+        String path = value(fields[7]);
+        if (path != null) {
+            File file = new File(path);
+
+            // length() and lastModified() are both 0 when the file is missing
+            if (file.length() != Long.parseLong(fields[5]) || file.lastModified() != Long.parseLong(fields[6])) {
+                return null;
+            }
+
+            artifact.setFile(file);
+        }
+
+        return artifact;
+    }
+
+    private static String[] split(final String line) {
+        String[] fields = new String[FIELDS];
+        int start = 0;
+
+        for (int i = 0; i < FIELDS - 1; i++) {
+            int end = line.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                return null;
+            }
+            fields[i] = line.substring(start, end);
+            start = end + 1;
+        }
+
+        // The path is last, so it may contain anything but a line break
+        fields[FIELDS - 1] = line.substring(start);
+
+        return fields;
+    }
 
-        log.debug("Classpath is not valid");
-        
-        return null;
+    private static String value(final String field) {
+        return NULL.equals(field) ? null : field;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.wisdom.application;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.application.ClassPath;
+import org.apache.geronimo.gshell.artifact.Artifact;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Unit tests for the {@link ClassPathCache} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ClassPathCacheTest
+    extends TestCase
+{
+    private File dir;
+
+    private ClassPathCache cache;
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("classpath", ".test");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+
+        cache = new ClassPathCache(new File(dir, "cache/classpath.cache"));
+    }
+
+    protected void tearDown() throws Exception {
+        delete(dir);
+        dir = null;
+        cache = null;
+    }
+
+    private static void delete(final File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private File createFile(final String name, final String content) throws IOException {
+        File file = new File(dir, name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static Artifact createArtifact(final String name, final File file) {
+        Artifact artifact = new Artifact();
+        artifact.setGroup("org.example");
+        artifact.setName(name);
+        artifact.setVersion("1.0");
+        artifact.setFile(file);
+        return artifact;
+    }
+
+    private static void assertArtifactEquals(final Artifact expected, final Artifact actual) {
+        assertEquals(expected.getGroup(), actual.getGroup());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getClassifier(), actual.getClassifier());
+        assertEquals(expected.getFile() == null ? null : expected.getFile().getAbsoluteFile(), actual.getFile());
+    }
+
+    private void assertRoundTrip(final List<Artifact> artifacts) throws Exception {
+        cache.set(new ClassPathImpl(artifacts));
+
+        ClassPath classPath = cache.get();
+        assertNotNull(classPath);
+        assertEquals(artifacts.size(), classPath.getArtifacts().size());
+
+        // Order is significant for a classpath
+        Iterator<Artifact> iter = classPath.getArtifacts().iterator();
+        for (Artifact expected : artifacts) {
+            assertArtifactEquals(expected, iter.next());
+        }
+    }
+
+    public void testMissing() throws Exception {
+        assertFalse(cache.getFile().exists());
+        assertNull(cache.get());
+    }
+
+    public void testRoundTrip() throws Exception {
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        artifacts.add(createArtifact("b", createFile("b.jar", "bbbb")));
+        artifacts.add(createArtifact("a", createFile("a.jar", "a")));
+
+        Artifact full = createArtifact("c", createFile("c.zip", "cc"));
+        full.setType("zip");
+        full.setClassifier("tests");
+        artifacts.add(full);
+
+        assertRoundTrip(artifacts);
+    }
+
+    public void testRoundTripWithoutFile() throws Exception {
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        artifacts.add(createArtifact("nofile", null));
+
+        assertRoundTrip(artifacts);
+    }
+
+    public void testRoundTripEmpty() throws Exception {
+        assertRoundTrip(new ArrayList<Artifact>());
+    }
+
+    public void testPathWithSpacesAndTabs() throws Exception {
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        artifacts.add(createArtifact("spaces", createFile("with spaces.jar", "x")));
+        artifacts.add(createArtifact("tabs", createFile("with\ttabs.jar", "y")));
+        artifacts.add(createArtifact("unicode", createFile("\u00e9t\u00e9.jar", "z")));
+
+        assertRoundTrip(artifacts);
+    }
+
+    public void testStaleSize() throws Exception {
+        File file = createFile("a.jar", "a");
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        artifacts.add(createArtifact("a", file));
+        cache.set(new ClassPathImpl(artifacts));
+
+        long modified = file.lastModified();
+        createFile("a.jar", "changed");
+        assertTrue(file.setLastModified(modified));
+
+        assertNull(cache.get());
+    }
+
+    public void testStaleModified() throws Exception {
+        File file = createFile("a.jar", "a");
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        artifacts.add(createArtifact("a", file));
+        cache.set(new ClassPathImpl(artifacts));
+
+        assertTrue(file.setLastModified(file.lastModified() - 60000));
+
+        assertNull(cache.get());
+    }
+
+    public void testStaleRemoved() throws Exception {
+        File file = createFile("a.jar", "a");
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        artifacts.add(createArtifact("a", file));
+        cache.set(new ClassPathImpl(artifacts));
+
+        assertTrue(file.delete());
+
+        assertNull(cache.get());
+    }
+
+    public void testOldFormat() throws Exception {
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        artifacts.add(createArtifact("a", createFile("a.jar", "a")));
+
+        // Caches used to be serialized class paths
+        cache.getFile().getParentFile().mkdirs();
+        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(cache.getFile()));
+        try {
+            out.writeObject(new ClassPathImpl(artifacts));
+        }
+        finally {
+            out.close();
+        }
+
+        assertNull(cache.get());
+
+        // And are replaced by the current format
+        assertRoundTrip(artifacts);
+    }
+
+    public void testCorrupt() throws Exception {
+        cache.getFile().getParentFile().mkdirs();
+
+        createCacheFile("");
+        assertNull(cache.get());
+
+        createCacheFile("garbage\n");
+        assertNull(cache.get());
+
+        // Truncated line
+        createCacheFile("#gshell-classpath:2\norg.example\ta\t1.0\n");
+        assertNull(cache.get());
+
+        // Unparsable size
+        createCacheFile("#gshell-classpath:2\norg.example\ta\t1.0\tjar\t-\tbig\t0\t/a.jar\n");
+        assertNull(cache.get());
+    }
+
+    private void createCacheFile(final String content) throws IOException {
+        OutputStream out = new FileOutputStream(cache.getFile());
+        try {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    public void testReplace() throws Exception {
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        artifacts.add(createArtifact("a", createFile("a.jar", "a")));
+        cache.set(new ClassPathImpl(artifacts));
+
+        artifacts.add(createArtifact("b", createFile("b.jar", "b")));
+        assertRoundTrip(artifacts);
+
+        // No temporary file is left behind
+        String[] names = cache.getFile().getParentFile().list();
+        assertEquals(1, names.length);
+        assertEquals("classpath.cache", names[0]);
+    }
+
+    public void testForArtifact() throws Exception {
+        String prev = System.getProperty("gshell.home");
+        System.setProperty("gshell.home", dir.getPath());
+
+        try {
+            Artifact artifact = createArtifact("app", null);
+            ClassPathCache cache = ClassPathCache.forArtifact(artifact);
+
+            assertEquals(new File(dir, "var/org.example/app/classpath.cache"), cache.getFile());
+        }
+        finally {
+            if (prev != null) {
+                System.setProperty("gshell.home", prev);
+            }
+            else {
+                System.clearProperty("gshell.home");
+            }
+        }
+    }
+}
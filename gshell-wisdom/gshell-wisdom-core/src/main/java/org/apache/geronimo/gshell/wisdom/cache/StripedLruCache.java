@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.wisdom.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache which evicts the least recently used entries, safe for use by concurrent sessions.
+ *
+ * Entries are spread over a number of independently locked stripes, each an access-ordered map holding its share
+ * of the entries, so lookups from different threads rarely contend.  Eviction is least recently used per stripe.
+ * Small caches use a single stripe, and so evict in exact least recently used order.
+ *
+ * @version $Rev$ $Date$
+ */
+public class StripedLruCache<K,V>
+{
+    private static final int MAX_STRIPES = 16;
+
+    private static final int MIN_STRIPE_SIZE = 16;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private volatile int maxSize;
+
+    private volatile Stripe<K,V>[] stripes;
+
+    public StripedLruCache(final int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Set the maximum number of entries to retain; zero disables caching.  Entries are kept where they fit.
+     */
+    public synchronized void setMaxSize(final int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative: " + maxSize);
+        }
+
+        Stripe<K,V>[] previous = stripes;
+
+        int count = 1;
+        while (count < MAX_STRIPES && count * 2 * MIN_STRIPE_SIZE <= maxSize) {
+            count *= 2;
+        }
+
+        int capacity = (maxSize + count - 1) / count;
+
+        // noinspection unchecked
+        Stripe<K,V>[] created = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            created[i] = new Stripe<K,V>(capacity, evictions);
+        }
+
+        // Move existing entries over, eldest first, so the most recently used are retained
+        if (previous != null) {
+            for (Stripe<K,V> stripe : previous) {
+                List<Map.Entry<K,V>> entries;
+                synchronized (stripe) {
+                    entries = new ArrayList<Map.Entry<K,V>>(stripe.entrySet());
+                    stripe.clear();
+                }
+
+                for (Map.Entry<K,V> entry : entries) {
+                    if (maxSize > 0) {
+                        created[indexFor(entry.getKey(), count)].put(entry.getKey(), entry.getValue());
+                    }
+                    else {
+                        evictions.incrementAndGet();
+                    }
+                }
+            }
+        }
+
+        this.maxSize = maxSize;
+        this.stripes = created;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private static int indexFor(final Object key, final int count) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return h & (count - 1);
+    }
+
+    private Stripe<K,V> stripeFor(final Object key) {
+        Stripe<K,V>[] current = stripes;
+        return current[indexFor(key, current.length)];
+    }
+
+    public V get(final K key) {
+        assert key != null;
+
+        V value = null;
+
+        if (maxSize > 0) {
+            Stripe<K,V> stripe = stripeFor(key);
+            synchronized (stripe) {
+                value = stripe.get(key);
+            }
+        }
+
+        if (value != null) {
+            hits.incrementAndGet();
+        }
+        else {
+            misses.incrementAndGet();
+        }
+
+        return value;
+    }
+
+    public void put(final K key, final V value) {
+        assert key != null;
+        assert value != null;
+
+        if (maxSize > 0) {
+            Stripe<K,V> stripe = stripeFor(key);
+            synchronized (stripe) {
+                stripe.put(key, value);
+            }
+        }
+    }
+
+    public void remove(final K key) {
+        assert key != null;
+
+        Stripe<K,V> stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Stripe<K,V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+
+        for (Stripe<K,V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Access-ordered map, which evicts its least recently used entry when full.
+     */
+    private static class Stripe<K,V>
+        extends LinkedHashMap<K,V>
+    {
+        private static final long serialVersionUID = 1;
+
+        private final int capacity;
+
+        private final AtomicLong evictions;
+
+        public Stripe(final int capacity, final AtomicLong evictions) {
+            super(16, 0.75f, true);
+
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K,V> eldest) {
+            if (size() > capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
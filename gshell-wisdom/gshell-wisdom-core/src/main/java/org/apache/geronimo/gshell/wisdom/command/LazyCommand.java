@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.wisdom.command;
+
+import org.apache.geronimo.gshell.chronos.StopWatch;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.command.CommandAction;
+import org.apache.geronimo.gshell.command.CommandCompleter;
+import org.apache.geronimo.gshell.command.CommandDocumenter;
+import org.apache.geronimo.gshell.command.CommandResult;
+import org.apache.geronimo.gshell.i18n.MessageSource;
+import org.apache.geronimo.gshell.shell.ShellContext;
+
+import java.io.PrintWriter;
+
+/**
+ * Lazy {@link Command} component.
+ *
+ * Registered in place of the real command, carrying only its location (and optional description).  The real
+ * command bean, along with its documenter, completer and message source, is only created from the bean container
+ * the first time something other than the location is asked for.  When the plugin was loaded from its descriptor,
+ * the container itself is only created then too.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LazyCommand
+    extends CommandSupport
+{
+    private final String commandId;
+
+    private String description;
+
+    private volatile Command command;
+
+    public LazyCommand(final String commandId) {
+        assert commandId != null;
+
+        this.commandId = commandId;
+    }
+
+    public String getCommandId() {
+        return commandId;
+    }
+
+    /**
+     * Returns the id of the bean holding a command of a plugin's bundle.
+     */
+    public static String getCommandId(final String pluginName, final String bundleName, final String commandName) {
+        assert pluginName != null;
+        assert bundleName != null;
+        assert commandName != null;
+
+        return "command:" + pluginName + ":" + bundleName + "/" + commandName;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(final String description) {
+        this.description = description;
+    }
+
+    /**
+     * Check if the real command has been created yet.
+     */
+    public boolean isResolved() {
+        return command != null;
+    }
+
+    private Command getCommand() {
+        Command result = command;
+
+        if (result == null) {
+            synchronized (this) {
+                result = command;
+
+                if (result == null) {
+                    log.debug("Resolving command: {}", commandId);
+
+                    StopWatch watch = new StopWatch(true);
+                    result = getContainer().getBean(commandId, Command.class);
+                    command = result;
+                    
+                    log.debug("Command resolved in {}", watch);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public CommandResult execute(final ShellContext context, final Object[] args) {
+        return getCommand().execute(context, args);
+    }
+
+    @Override
+    public CommandAction getAction() {
+        return getCommand().getAction();
+    }
+
+    @Override
+    public CommandDocumenter getDocumenter() {
+        // Defer resolving the command until something other than a known description is needed
+        return new CommandDocumenter() {
+            public String getDescription() {
+                if (description != null) {
+                    return description;
+                }
+                return getCommand().getDocumenter().getDescription();
+            }
+
+            public void renderUsage(final PrintWriter out) {
+                getCommand().getDocumenter().renderUsage(out);
+            }
+
+            public void renderManual(final PrintWriter out) {
+                getCommand().getDocumenter().renderManual(out);
+            }
+        };
+    }
+
+    @Override
+    public CommandCompleter getCompleter() {
+        return getCommand().getCompleter();
+    }
+
+    @Override
+    public MessageSource getMessages() {
+        return getCommand().getMessages();
+    }
+}
@@ -72,7 +72,7 @@ public class AliasNameCompleter
                     delegate.getStrings().remove(targetEvent.getName());
                 }
             }
-        });
+        }, AliasRegisteredEvent.class, AliasRemovedEvent.class);
     }
 
     public int complete(final String buffer, final int cursor, final List candidates) {
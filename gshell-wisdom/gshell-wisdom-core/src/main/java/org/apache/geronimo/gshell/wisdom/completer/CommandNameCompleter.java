@@ -72,7 +72,7 @@ public class CommandNameCompleter
                     delegate.getStrings().remove(targetEvent.getName());
                 }
             }
-        });
+        }, CommandRegisteredEvent.class, CommandRemovedEvent.class);
     }
 
     public int complete(final String buffer, final int cursor, final List candidates) {
@@ -112,7 +112,7 @@ public class CommandsCompleter
                 }
                 */
             }
-        });
+        }, CommandRegisteredEvent.class, CommandRemovedEvent.class);
     }
 
     private void addCompleter(final String name, final Command command) {
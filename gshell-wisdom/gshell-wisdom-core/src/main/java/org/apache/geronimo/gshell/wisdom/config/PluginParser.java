@@ -22,6 +22,7 @@ package org.apache.geronimo.gshell.wisdom.config;
 import org.apache.geronimo.gshell.wisdom.command.ConfigurableCommandCompleter;
 import org.apache.geronimo.gshell.wisdom.command.LinkCommand;
 import org.apache.geronimo.gshell.wisdom.command.AliasImpl;
+import org.apache.geronimo.gshell.wisdom.command.LazyCommand;
 import org.apache.geronimo.gshell.wisdom.command.LinkImpl;
 import org.apache.geronimo.gshell.wisdom.plugin.bundle.CommandBundle;
 import org.apache.geronimo.gshell.wisdom.registry.CommandLocationImpl;
@@ -419,16 +420,45 @@ public class PluginParser
 
             List<BeanDefinition> commands = new ArrayList<BeanDefinition>();
 
+            String pluginName = ((Element)element.getParentNode()).getAttribute(NAME);
+            String bundleName = element.getAttribute(NAME);
             List<Element> children = getChildElements(element, COMMAND);
 
             for (Element child : children) {
                 BeanDefinitionBuilder command = parseCommand(child);
-                commands.add(command.getBeanDefinition());
+                String id = LazyCommand.getCommandId(pluginName, bundleName, child.getAttribute(NAME));
+                commands.add(parseLazyCommand(child, command, id));
             }
 
             return commands;
         }
 
+        /**
+         * Registers the command as a lazy bean with the given id, returning a light-weight {@link LazyCommand}
+         * definition which only creates the real command when it is first used.
+         */
+        private BeanDefinition parseLazyCommand(final Element element, final BeanDefinitionBuilder command, final String id) {
+            assert element != null;
+            assert command != null;
+            assert id != null;
+
+            // The id is known without parsing, so commands of plugins loaded from their descriptor can find their bean
+            BeanDefinition def = command.getBeanDefinition();
+            def.setLazyInit(true);
+            register(def, id);
+
+            BeanDefinitionBuilder lazy = BeanDefinitionBuilder.rootBeanDefinition(LazyCommand.class);
+            lazy.addConstructorArgValue(id);
+            lazy.addPropertyValue(LOCATION, def.getPropertyValues().getPropertyValue(LOCATION).getValue());
+
+            String description = def.getDescription();
+            if (description != null) {
+                lazy.addPropertyValue(DESCRIPTION, description.trim());
+            }
+
+            return lazy.getBeanDefinition();
+        }
+
         private CommandType parseCommandType(final Element element) {
             assert element != null;
 
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.wisdom.plugin;
+
+import org.apache.geronimo.gshell.chronos.StopWatch;
+import org.apache.geronimo.gshell.spring.BeanContainer;
+import org.apache.geronimo.gshell.spring.BeanContainerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@link BeanContainer} which only creates the child container it stands for, and loads its beans, when first used.
+ *
+ * @version $Rev$ $Date$
+ */
+class LazyBeanContainer
+    implements BeanContainer
+{
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final BeanContainer parent;
+
+    private final Collection<URL> classPath;
+
+    private final String[] locations;
+
+    private volatile BeanContainer container;
+
+    public LazyBeanContainer(final BeanContainer parent, final Collection<URL> classPath, final String[] locations) {
+        assert parent != null;
+        assert classPath != null;
+        assert locations != null;
+
+        this.parent = parent;
+        this.classPath = classPath;
+        this.locations = locations;
+    }
+
+    /**
+     * Check if the container has been created yet.
+     */
+    public boolean isLoaded() {
+        return container != null;
+    }
+
+    private BeanContainer getContainer() {
+        BeanContainer result = container;
+
+        if (result == null) {
+            synchronized (this) {
+                result = container;
+
+                if (result == null) {
+                    log.debug("Loading container: {}", Arrays.asList(locations));
+
+                    StopWatch watch = new StopWatch(true);
+                    result = parent.createChild(classPath);
+
+                    try {
+                        result.loadBeans(locations);
+                    }
+                    catch (RuntimeException e) {
+                        throw e;
+                    }
+                    catch (Exception e) {
+                        throw new BeanContainerException("Failed to load beans from: " + Arrays.asList(locations), e);
+                    }
+
+                    container = result;
+
+                    log.debug("Container loaded in {}", watch);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public BeanContainer getParent() {
+        return parent;
+    }
+
+    public ClassLoader getClassLoader() {
+        return getContainer().getClassLoader();
+    }
+
+    public void loadBeans(final String[] locations) throws Exception {
+        getContainer().loadBeans(locations);
+    }
+
+    public <T> T getBean(final Class<T> type) {
+        return getContainer().getBean(type);
+    }
+
+    public <T> T getBean(final String name, final Class<T> requiredType) {
+        return getContainer().getBean(name, requiredType);
+    }
+
+    public <T> Map<String,T> getBeans(final Class<T> type) {
+        return getContainer().getBeans(type);
+    }
+
+    public String[] getBeanNames() {
+        return getContainer().getBeanNames();
+    }
+
+    public String[] getBeanNames(final Class type) {
+        return getContainer().getBeanNames(type);
+    }
+
+    public BeanContainer createChild(final Collection<URL> classPath) {
+        return getContainer().createChild(classPath);
+    }
+
+    public BeanContainer createChild() {
+        return getContainer().createChild();
+    }
+}
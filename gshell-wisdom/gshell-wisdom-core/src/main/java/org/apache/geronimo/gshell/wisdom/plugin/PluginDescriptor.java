@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.wisdom.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Describes the commands of a plugin, read straight from its components XML without creating a container.
+ *
+ * Only plugins made of command bundles can be described.  Any other top-level bean must be abstract, lazy or not a
+ * singleton, so that nothing is missed by creating the container only when one of the commands is first used.
+ *
+ * @version $Rev$ $Date$
+ */
+class PluginDescriptor
+{
+    private static final Logger log = LoggerFactory.getLogger(PluginDescriptor.class);
+
+    public static final String LOCATION = "META-INF/gshell/components.xml";
+
+    private static final String BEANS_NAMESPACE = "http://www.springframework.org/schema/beans";
+
+    private static final String GSHELL_NAMESPACE = "http://gshell.org/schema/wisdom-gshell";
+
+    private final String name;
+
+    private final Map<String,BundleDescriptor> bundles = new LinkedHashMap<String,BundleDescriptor>();
+
+    private PluginDescriptor(final String name) {
+        assert name != null;
+
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String,BundleDescriptor> getBundles() {
+        return Collections.unmodifiableMap(bundles);
+    }
+
+    /**
+     * Read the descriptor of the plugin with the given classpath.
+     *
+     * @return  The descriptor, or null if the plugin can not be described and needs its container created up front.
+     */
+    public static PluginDescriptor read(final Collection<URL> classPath) {
+        assert classPath != null;
+
+        Element root = null;
+
+        try {
+            for (URL url : classPath) {
+                Element element = parse(url);
+
+                if (element != null) {
+                    if (root != null) {
+                        log.debug("Not describing plugin with more than one {}", LOCATION);
+                        return null;
+                    }
+                    root = element;
+                }
+            }
+        }
+        catch (Exception e) {
+            log.debug("Unable to read plugin descriptor", e);
+            return null;
+        }
+
+        if (root == null) {
+            log.debug("Not describing plugin without a {}", LOCATION);
+            return null;
+        }
+
+        return describe(root);
+    }
+
+    private static Element parse(final URL url) throws Exception {
+        assert url != null;
+
+        if (!"file".equals(url.getProtocol())) {
+            throw new IllegalArgumentException("Unsupported classpath entry: " + url);
+        }
+
+        File file = new File(url.toURI());
+
+        if (file.isDirectory()) {
+            File xml = new File(file, LOCATION);
+            if (!xml.isFile()) {
+                return null;
+            }
+            return parse(xml.toURI().toURL().openStream());
+        }
+
+        ZipFile zip = new ZipFile(file);
+        try {
+            ZipEntry entry = zip.getEntry(LOCATION);
+            if (entry == null) {
+                return null;
+            }
+            return parse(zip.getInputStream(entry));
+        }
+        finally {
+            zip.close();
+        }
+    }
+
+    private static Element parse(final InputStream input) throws Exception {
+        assert input != null;
+
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            Document document = builder.parse(input);
+
+            return document.getDocumentElement();
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private static PluginDescriptor describe(final Element root) {
+        assert root != null;
+
+        PluginDescriptor plugin = null;
+        boolean lazy = "true".equals(root.getAttribute("default-lazy-init"));
+
+        for (Element element : getChildElements(root)) {
+            if (isElement(element, GSHELL_NAMESPACE, "plugin") && plugin == null) {
+                plugin = describePlugin(element);
+
+                if (plugin == null) {
+                    return null;
+                }
+            }
+            else if (!isElement(element, BEANS_NAMESPACE, "description") && !isDeferrable(element, lazy)) {
+                log.debug("Not describing plugin with eager element: {}", element.getLocalName());
+                return null;
+            }
+        }
+
+        return plugin;
+    }
+
+    /**
+     * Check if creating the bean of the given element can be left until the container is first used.
+     */
+    private static boolean isDeferrable(final Element element, final boolean lazy) {
+        assert element != null;
+
+        if (!isElement(element, BEANS_NAMESPACE, "bean")) {
+            return false;
+        }
+
+        if ("true".equals(element.getAttribute("abstract"))) {
+            return true;
+        }
+
+        String scope = element.getAttribute("scope");
+        if (scope.length() != 0 && !"singleton".equals(scope)) {
+            return true;
+        }
+
+        String lazyInit = element.getAttribute("lazy-init");
+        if (lazyInit.length() == 0 || "default".equals(lazyInit)) {
+            return lazy;
+        }
+        return "true".equals(lazyInit);
+    }
+
+    private static PluginDescriptor describePlugin(final Element element) {
+        assert element != null;
+
+        PluginDescriptor plugin = new PluginDescriptor(element.getAttribute("name"));
+
+        for (Element child : getChildElements(element)) {
+            if (isElement(child, GSHELL_NAMESPACE, "command-bundle")) {
+                BundleDescriptor bundle = describeBundle(child);
+                plugin.bundles.put(bundle.getName(), bundle);
+            }
+            else if (!isElement(child, BEANS_NAMESPACE, "description")) {
+                log.debug("Not describing plugin with element: {}", child.getLocalName());
+                return null;
+            }
+        }
+
+        return plugin;
+    }
+
+    private static BundleDescriptor describeBundle(final Element element) {
+        assert element != null;
+
+        BundleDescriptor bundle = new BundleDescriptor(element.getAttribute("name"));
+
+        for (Element child : getChildElements(element)) {
+            if (isElement(child, GSHELL_NAMESPACE, "command")) {
+                bundle.commands.add(new CommandDescriptor(child.getAttribute("name"), getDescription(child)));
+            }
+            else if (isElement(child, GSHELL_NAMESPACE, "link")) {
+                bundle.links.put(child.getAttribute("name"), child.getAttribute("target"));
+            }
+            else if (isElement(child, GSHELL_NAMESPACE, "alias")) {
+                bundle.aliases.put(child.getAttribute("name"), child.getAttribute("alias"));
+            }
+        }
+
+        return bundle;
+    }
+
+    private static String getDescription(final Element element) {
+        assert element != null;
+
+        for (Element child : getChildElements(element)) {
+            if (isElement(child, BEANS_NAMESPACE, "description")) {
+                return child.getTextContent().trim();
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isElement(final Element element, final String namespace, final String name) {
+        return namespace.equals(element.getNamespaceURI()) && name.equals(element.getLocalName());
+    }
+
+    private static List<Element> getChildElements(final Element element) {
+        assert element != null;
+
+        List<Element> children = new ArrayList<Element>();
+
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element) {
+                children.add((Element)node);
+            }
+        }
+
+        return children;
+    }
+
+    /**
+     * Describes a command bundle.
+     */
+    public static class BundleDescriptor
+    {
+        private final String name;
+
+        private final List<CommandDescriptor> commands = new ArrayList<CommandDescriptor>();
+
+        private final Map<String,String> links = new LinkedHashMap<String,String>();
+
+        private final Map<String,String> aliases = new LinkedHashMap<String,String>();
+
+        private BundleDescriptor(final String name) {
+            assert name != null;
+
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<CommandDescriptor> getCommands() {
+            return Collections.unmodifiableList(commands);
+        }
+
+        /**
+         * Link targets, by link name.
+         */
+        public Map<String,String> getLinks() {
+            return Collections.unmodifiableMap(links);
+        }
+
+        /**
+         * Aliased command lines, by alias name.
+         */
+        public Map<String,String> getAliases() {
+            return Collections.unmodifiableMap(aliases);
+        }
+    }
+
+    /**
+     * Describes a command.
+     */
+    public static class CommandDescriptor
+    {
+        private final String name;
+
+        private final String description;
+
+        private CommandDescriptor(final String name, final String description) {
+            assert name != null;
+            // description may be null
+
+            this.name = name;
+            this.description = description;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+}
@@ -56,6 +56,8 @@ public class PluginImpl
 
     private Map<String,String> bundleIdMap;
 
+    private Map<String,Bundle> bundles;
+
     private List<ActivationRule> activationRules;
 
     private BeanContainer container;
@@ -105,7 +107,10 @@ public class PluginImpl
     public Collection<String> getBundleNames() {
         Collection<String> names;
 
-        if (bundleIdMap == null) {
+        if (bundles != null) {
+            names = bundles.keySet();
+        }
+        else if (bundleIdMap == null) {
             names = Collections.emptyList();
         }
         else {
@@ -120,8 +125,28 @@ public class PluginImpl
         this.bundleIdMap = bundleIdMap;
     }
 
+    /**
+     * Use the given bundles, rather than looking them up in the container.
+     */
+    void initBundles(final Map<String,Bundle> bundles) {
+        assert bundles != null;
+
+        this.bundles = bundles;
+    }
+
     public Bundle getBundle(final String name) throws NoSuchBundleException {
         assert name != null;
+
+        if (bundles != null) {
+            Bundle bundle = bundles.get(name);
+
+            if (bundle == null) {
+                throw new NoSuchBundleException(name);
+            }
+
+            return bundle;
+        }
+
         assert bundleIdMap != null;
         String id = bundleIdMap.get(name);
 
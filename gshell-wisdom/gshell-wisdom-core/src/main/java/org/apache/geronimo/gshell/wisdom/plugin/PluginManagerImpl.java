@@ -24,27 +24,47 @@ import org.apache.geronimo.gshell.application.ApplicationManager;
 import org.apache.geronimo.gshell.application.ClassPath;
 import org.apache.geronimo.gshell.application.plugin.Plugin;
 import org.apache.geronimo.gshell.application.plugin.PluginManager;
+import org.apache.geronimo.gshell.application.plugin.activation.ActivationRule;
+import org.apache.geronimo.gshell.application.plugin.bundle.Bundle;
 import org.apache.geronimo.gshell.artifact.Artifact;
 import org.apache.geronimo.gshell.artifact.ArtifactResolver;
 import org.apache.geronimo.gshell.chronos.StopWatch;
+import org.apache.geronimo.gshell.command.Alias;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.command.Link;
 import org.apache.geronimo.gshell.event.Event;
 import org.apache.geronimo.gshell.event.EventListener;
 import org.apache.geronimo.gshell.event.EventManager;
+import org.apache.geronimo.gshell.registry.AliasRegistry;
+import org.apache.geronimo.gshell.registry.CommandRegistry;
 import org.apache.geronimo.gshell.spring.BeanContainer;
 import org.apache.geronimo.gshell.spring.BeanContainerAware;
 import org.apache.geronimo.gshell.wisdom.application.ApplicationConfiguredEvent;
 import org.apache.geronimo.gshell.wisdom.application.ClassPathCache;
 import org.apache.geronimo.gshell.wisdom.application.ClassPathImpl;
+import org.apache.geronimo.gshell.wisdom.command.AliasImpl;
+import org.apache.geronimo.gshell.wisdom.command.LazyCommand;
+import org.apache.geronimo.gshell.wisdom.command.LinkImpl;
+import org.apache.geronimo.gshell.wisdom.plugin.activation.DefaultBundleActivationRule;
+import org.apache.geronimo.gshell.wisdom.plugin.bundle.CommandBundle;
+import org.apache.geronimo.gshell.wisdom.registry.CommandLocationImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Default implementation of the {@link PluginManager} component.
@@ -54,6 +74,11 @@ import java.util.Set;
 public class PluginManagerImpl
     implements PluginManager, BeanContainerAware
 {
+    /**
+     * System property which configures the default number of plugins to load concurrently.
+     */
+    public static final String THREADS_PROPERTY = PluginManagerImpl.class.getName() + ".threads";
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final ApplicationManager applicationManager;
@@ -66,6 +91,8 @@ public class PluginManagerImpl
 
     private Set<Plugin> plugins = new LinkedHashSet<Plugin>();
 
+    private int threads = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+
     public PluginManagerImpl(final ApplicationManager applicationManager, final EventManager eventManager, final ArtifactResolver artifactResolver) {
         assert applicationManager != null;
         this.applicationManager = applicationManager;
@@ -96,13 +123,31 @@ public class PluginManagerImpl
                     loadPlugins(targetEvent.getApplication());
                 }
             }
-        });
+        }, ApplicationConfiguredEvent.class);
     }
 
     public Set<Plugin> getPlugins() {
         return plugins;
     }
 
+    /**
+     * Set the number of plugins to prepare concurrently; plugins are always activated one at a time, in order.
+     *
+     * Preparing a plugin creates its container and loads its beans, so plugin beans must leave registering
+     * with shared components to activation.  Classpaths which are not cached are still resolved one at a time.
+     */
+    public void setThreads(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
     private void loadPlugins(final Application application) {
         assert application != null;
 
@@ -110,56 +155,188 @@ public class PluginManagerImpl
 
         List<Artifact> artifacts = application.getModel().getPlugins();
 
-        for (Artifact artifact : artifacts) {
-            try {
-                loadPlugin(application, artifact);
+        if (threads == 1 || artifacts.size() < 2) {
+            for (Artifact artifact : artifacts) {
+                try {
+                    loadPlugin(application, artifact);
+                }
+                catch (Exception e) {
+                    log.error("Failed to load plugin: " + artifact, e);
+                }
             }
-            catch (Exception e) {
-                log.error("Failed to load plugin: " + artifact, e);
+            return;
+        }
+
+        StopWatch watch = new StopWatch(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, artifacts.size()));
+        try {
+            List<Future<LoadingPlugin>> futures = new ArrayList<Future<LoadingPlugin>>(artifacts.size());
+
+            for (final Artifact artifact : artifacts) {
+                futures.add(executor.submit(new Callable<LoadingPlugin>() {
+                    public LoadingPlugin call() throws Exception {
+                        return prepare(application, artifact);
+                    }
+                }));
             }
+
+            // Activate in the declared order, so registrations do not depend on which plugin was prepared first
+            for (int i = 0; i < futures.size(); i++) {
+                Artifact artifact = artifacts.get(i);
+
+                try {
+                    activate(futures.get(i).get());
+                }
+                catch (ExecutionException e) {
+                    log.error("Failed to load plugin: " + artifact, e.getCause());
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.error("Interrupted while loading plugins");
+                    return;
+                }
+                catch (Exception e) {
+                    log.error("Failed to load plugin: " + artifact, e);
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
         }
+
+        log.debug("Loaded {} plugins in: {}", artifacts.size(), watch);
     }
 
     private void loadPlugin(final Application application, final Artifact artifact) throws Exception {
         assert application != null;
         assert artifact != null;
 
-        StopWatch watch = new StopWatch(true);
+        activate(prepare(application, artifact));
+    }
+
+    /**
+     * Resolve the classpath of a plugin, create its container and load its beans, without touching any shared state.
+     */
+    private LoadingPlugin prepare(final Application application, final Artifact artifact) throws Exception {
+        assert application != null;
+        assert artifact != null;
 
         log.debug("Loading plugin: {}", artifact.getId());
 
+        LoadingPlugin loading = new LoadingPlugin(artifact);
+
+        StopWatch watch = new StopWatch(true);
         ClassPath classPath = loadClassPath(application, artifact);
-        
-        BeanContainer pluginContainer = container.createChild(classPath.getUrls());
-        log.debug("Created plugin container: {}", pluginContainer);
+        loading.classPathTime = watch.getTime();
+
+        watch = new StopWatch(true);
+        String[] locations = { "classpath*:" + PluginDescriptor.LOCATION };
+        PluginDescriptor descriptor = PluginDescriptor.read(classPath.getUrls());
+
+        if (descriptor != null) {
+            // Leave creating the container until one of the plugin's commands is first used
+            loading.plugin = createPlugin(descriptor, new LazyBeanContainer(container, classPath.getUrls(), locations));
+        }
+        else {
+            BeanContainer pluginContainer = container.createChild(classPath.getUrls());
+            pluginContainer.loadBeans(locations);
 
-        pluginContainer.loadBeans(new String[] {
-            "classpath*:META-INF/gshell/components.xml"
-        });
-    
-        PluginImpl plugin = pluginContainer.getBean(PluginImpl.class);
+            loading.plugin = pluginContainer.getBean(PluginImpl.class);
+        }
 
         // Initialize the plugins artifact configuration
-        plugin.initArtifact(artifact);
-        plugin.initClassPath(classPath);
+        loading.plugin.initArtifact(artifact);
+        loading.plugin.initClassPath(classPath);
+
+        loading.containerTime = watch.getTime();
+
+        return loading;
+    }
+
+    /**
+     * Create a plugin from its descriptor, with the same activation rules as the pluginTemplate bean.
+     */
+    private PluginImpl createPlugin(final PluginDescriptor descriptor, final BeanContainer pluginContainer) {
+        assert descriptor != null;
+        assert pluginContainer != null;
+
+        log.debug("Creating plugin from descriptor: {}", descriptor.getName());
+
+        CommandRegistry commandRegistry = container.getBean("commandRegistry", CommandRegistry.class);
+        AliasRegistry aliasRegistry = container.getBean("aliasRegistry", AliasRegistry.class);
+
+        Map<String,Bundle> bundles = new LinkedHashMap<String,Bundle>();
+
+        for (PluginDescriptor.BundleDescriptor source : descriptor.getBundles().values()) {
+            List<Command> commands = new ArrayList<Command>();
+
+            for (PluginDescriptor.CommandDescriptor command : source.getCommands()) {
+                LazyCommand lazy = new LazyCommand(LazyCommand.getCommandId(descriptor.getName(), source.getName(), command.getName()));
+                lazy.setBeanContainer(pluginContainer);
+                lazy.setLocation(new CommandLocationImpl(command.getName()));
+                lazy.setDescription(command.getDescription());
+                commands.add(lazy);
+            }
+
+            List<Link> links = new ArrayList<Link>();
+            for (Map.Entry<String,String> entry : source.getLinks().entrySet()) {
+                links.add(new LinkImpl(entry.getKey(), entry.getValue()));
+            }
+
+            List<Alias> aliases = new ArrayList<Alias>();
+            for (Map.Entry<String,String> entry : source.getAliases().entrySet()) {
+                aliases.add(new AliasImpl(entry.getKey(), entry.getValue()));
+            }
+
+            CommandBundle bundle = new CommandBundle(commandRegistry, aliasRegistry, source.getName());
+            bundle.setCommands(commands);
+            bundle.setLinks(links);
+            bundle.setAliases(aliases);
+            bundles.put(source.getName(), bundle);
+        }
+
+        PluginImpl plugin = new PluginImpl(descriptor.getName());
+        plugin.setBeanContainer(pluginContainer);
+        plugin.initBundles(bundles);
+
+        DefaultBundleActivationRule rule = new DefaultBundleActivationRule();
+        rule.setBundleName("default");
+
+        List<ActivationRule> rules = new ArrayList<ActivationRule>();
+        rules.add(rule);
+        plugin.setActivationRules(rules);
+
+        return plugin;
+    }
+
+    /**
+     * Activate a prepared plugin; only ever called for one plugin at a time.
+     */
+    private void activate(final LoadingPlugin loading) {
+        assert loading != null;
+
+        PluginImpl plugin = loading.plugin;
 
         plugins.add(plugin);
 
         log.debug("Activating plugin: {}", plugin.getName());
 
+        StopWatch watch = new StopWatch(true);
         plugin.activate();
+        loading.activationTime = watch.getTime();
 
-        log.debug("Loaded plugin in: {}", watch);
+        log.debug("Loaded plugin {} (classpath: {} ms, container: {} ms, activation: {} ms)",
+            new Object[] { plugin.getName(), loading.classPathTime, loading.containerTime, loading.activationTime });
         
-        eventManager.getPublisher().publish(new PluginLoadedEvent(plugin, artifact));
+        eventManager.getPublisher().publish(new PluginLoadedEvent(plugin, loading.artifact));
     }
 
     private ClassPath loadClassPath(final Application application, final Artifact artifact) throws Exception {
         assert application != null;
         assert artifact != null;
 
-        // FIXME: Get basedir from application
-        ClassPathCache cache = new ClassPathCache(new File(new File(System.getProperty("gshell.home")), "var/" + artifact.getGroup() + "/" + artifact.getName() + "/classpath.ser"));
+        ClassPathCache cache = ClassPathCache.forArtifact(artifact);
         ClassPath classPath = cache.get();
 
         if (classPath == null) {
@@ -196,8 +373,34 @@ public class PluginManagerImpl
         request.artifact = application.getArtifact();
         request.artifacts = Collections.singletonList(artifact);
 
-        ArtifactResolver.Result result = artifactResolver.resolve(request);
+        // Resolvers are not known to be safe to run concurrently, this only matters when the classpath is not cached
+        ArtifactResolver.Result result;
+        synchronized (artifactResolver) {
+            result = artifactResolver.resolve(request);
+        }
 
         return result.artifacts;
     }
+
+    /**
+     * A plugin on its way from being prepared to being activated, with the time each step took.
+     */
+    private static class LoadingPlugin
+    {
+        private final Artifact artifact;
+
+        private PluginImpl plugin;
+
+        private long classPathTime;
+
+        private long containerTime;
+
+        private long activationTime;
+
+        public LoadingPlugin(final Artifact artifact) {
+            assert artifact != null;
+
+            this.artifact = artifact;
+        }
+    }
 }
\ No newline at end of file
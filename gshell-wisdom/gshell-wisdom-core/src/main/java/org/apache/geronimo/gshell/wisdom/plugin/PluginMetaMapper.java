@@ -56,7 +56,7 @@ public class PluginMetaMapper
     public synchronized void init() {
         // TODO: add any existing plugins which may have been configured before we loaded
         
-        eventManager.addListener(this);
+        eventManager.addListener(this, PluginLoadedEvent.class);
     }
 
     public synchronized void onEvent(final Event event) throws Exception {
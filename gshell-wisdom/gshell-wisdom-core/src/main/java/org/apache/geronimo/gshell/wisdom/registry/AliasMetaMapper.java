@@ -65,7 +65,7 @@ public class AliasMetaMapper
             add(name, aliasRegistry.getAlias(name));
         }
 
-        eventManager.addListener(this);
+        eventManager.addListener(this, AliasRegisteredEvent.class, AliasRemovedEvent.class);
     }
 
     public synchronized void onEvent(final Event event) throws Exception {
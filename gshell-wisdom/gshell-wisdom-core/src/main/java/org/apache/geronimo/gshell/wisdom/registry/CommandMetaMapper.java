@@ -66,7 +66,7 @@ public class CommandMetaMapper
             add(name, commandRegistry.getCommand(name));
         }
 
-        eventManager.addListener(this);
+        eventManager.addListener(this, CommandRegisteredEvent.class, CommandRemovedEvent.class);
     }
 
     public synchronized void onEvent(final Event event) throws Exception {
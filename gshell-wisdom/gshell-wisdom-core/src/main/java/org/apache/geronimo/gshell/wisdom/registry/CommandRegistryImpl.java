@@ -27,10 +27,13 @@ import org.apache.geronimo.gshell.registry.NoSuchCommandException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * {@link CommandRegistry} component.
@@ -44,7 +47,15 @@ public class CommandRegistryImpl
 
     private final EventPublisher eventPublisher;
 
-    private final Map<String,Command> commands = new LinkedHashMap<String,Command>();
+    /**
+     * Registered commands, looked up by concurrent sessions without locking.
+     */
+    private final Map<String,Command> commands = new ConcurrentHashMap<String,Command>();
+
+    /**
+     * Names of the registered commands, in registration order; guarded by this registry.
+     */
+    private final Set<String> names = new LinkedHashSet<String>();
 
     public CommandRegistryImpl(final EventPublisher eventPublisher) {
         assert eventPublisher != null;
@@ -58,12 +69,16 @@ public class CommandRegistryImpl
 
         log.debug("Registering command: {} -> {}", name, command);
 
-        if (containsCommand(name)) {
-            throw new DuplicateCommandException(name);
-        }
+        synchronized (this) {
+            if (containsCommand(name)) {
+                throw new DuplicateCommandException(name);
+            }
 
-        commands.put(name, command);
+            commands.put(name, command);
+            names.add(name);
+        }
 
+        // Listeners may well call back into the registry, so never hold the lock while publishing
         eventPublisher.publish(new CommandRegisteredEvent(name, command));
     }
 
@@ -74,11 +89,14 @@ public class CommandRegistryImpl
 
         log.debug("Removing command: {}", name);
 
-        if (!containsCommand(name)) {
-            throw new NoSuchCommandException(name);
-        }
+        synchronized (this) {
+            if (!containsCommand(name)) {
+                throw new NoSuchCommandException(name);
+            }
 
-        commands.remove(name);
+            commands.remove(name);
+            names.remove(name);
+        }
 
         eventPublisher.publish(new CommandRemovedEvent(name));
     }
@@ -86,11 +104,13 @@ public class CommandRegistryImpl
     public Command getCommand(final String name) throws NoSuchCommandException {
         assert name != null;
 
-        if (!containsCommand(name)) {
+        Command command = commands.get(name);
+
+        if (command == null) {
             throw new NoSuchCommandException(name);
         }
 
-        return commands.get(name);
+        return command;
     }
 
     public boolean containsCommand(final String name) {
@@ -99,7 +119,7 @@ public class CommandRegistryImpl
         return commands.containsKey(name);
     }
 
-    public Collection<String> getCommandNames() {
-        return Collections.unmodifiableSet(commands.keySet());
+    public synchronized Collection<String> getCommandNames() {
+        return Collections.unmodifiableList(new ArrayList<String>(names));
     }
-}
\ No newline at end of file
+}
@@ -25,11 +25,15 @@ import org.apache.commons.vfs.FileSystemException;
 import org.apache.geronimo.gshell.command.Command;
 import org.apache.geronimo.gshell.command.CommandException;
 import org.apache.geronimo.gshell.command.Variables;
+import org.apache.geronimo.gshell.event.Event;
+import org.apache.geronimo.gshell.event.EventListener;
+import org.apache.geronimo.gshell.event.EventManager;
 import org.apache.geronimo.gshell.registry.CommandResolver;
 import org.apache.geronimo.gshell.registry.NoSuchCommandException;
 import org.apache.geronimo.gshell.spring.BeanContainer;
 import org.apache.geronimo.gshell.spring.BeanContainerAware;
 import org.apache.geronimo.gshell.vfs.FileSystemAccess;
+import org.apache.geronimo.gshell.wisdom.cache.StripedLruCache;
 import org.apache.geronimo.gshell.wisdom.command.AliasCommand;
 import org.apache.geronimo.gshell.wisdom.command.GroupCommand;
 import org.slf4j.Logger;
@@ -39,6 +43,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * {@link CommandResolver} component.
@@ -46,26 +51,74 @@ import java.util.List;
  * @version $Rev$ $Date$
  */
 public class CommandResolverImpl
-    implements CommandResolver, BeanContainerAware
+    implements CommandResolver, BeanContainerAware, EventListener
 {
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final FileSystemAccess fileSystemAccess;
 
     private final GroupDirectoryResolver groupDirResolver;
 
+    private final EventManager eventManager;
+
+    private final StripedLruCache<CacheKey,Resolution> cache = new StripedLruCache<CacheKey,Resolution>(DEFAULT_CACHE_SIZE);
+
+    private final AtomicLong cacheGeneration = new AtomicLong();
+
     private FileObject commandsRoot;
 
     private FileObject aliasesRoot;
 
     private BeanContainer container;
 
-    public CommandResolverImpl(final FileSystemAccess fileSystemAccess, final GroupDirectoryResolver groupDirResolver) {
+    public CommandResolverImpl(final FileSystemAccess fileSystemAccess, final GroupDirectoryResolver groupDirResolver, final EventManager eventManager) {
         assert fileSystemAccess != null;
         this.fileSystemAccess = fileSystemAccess;
 
         assert groupDirResolver != null;
         this.groupDirResolver = groupDirResolver;
+
+        assert eventManager != null;
+        this.eventManager = eventManager;
+    }
+
+    // @PostConstruct
+    public void init() {
+        eventManager.addListener(this, CommandRegisteredEvent.class, CommandRemovedEvent.class,
+            AliasRegisteredEvent.class, AliasRemovedEvent.class);
+    }
+
+    public void onEvent(final Event event) throws Exception {
+        assert event != null;
+
+        // Any change to the registered commands or aliases may change what a name resolves to
+        if (event instanceof CommandRegisteredEvent || event instanceof CommandRemovedEvent ||
+            event instanceof AliasRegisteredEvent || event instanceof AliasRemovedEvent)
+        {
+            invalidateCache();
+        }
+    }
+
+    /**
+     * Set the maximum number of resolutions to retain; zero disables caching.
+     */
+    public void setCacheSize(final int size) {
+        cache.setMaxSize(size);
+        invalidateCache();
+    }
+
+    public int getCacheSize() {
+        return cache.getMaxSize();
+    }
+
+    public void invalidateCache() {
+        log.trace("Invalidating resolution cache");
+
+        // Bump the generation first, so resolutions already in flight are not cached after the clear
+        cacheGeneration.incrementAndGet();
+        cache.clear();
     }
 
     public void setBeanContainer(final BeanContainer container) {
@@ -87,20 +140,35 @@ public class CommandResolverImpl
 
         log.debug("Resolving command name: {}", name);
 
-        // Always try to resolve aliases before we resolve commands
-        Command command = resolveAliasCommand(name, variables);
+        CacheKey key = new CacheKey(name, variables.get(PATH), variables.get(GROUP));
+        long generation = cacheGeneration.get();
+        Resolution resolution = cache.get(key);
 
-        if (command == null) {
-            try {
-                FileObject file = resolveCommandFile(name, variables);
+        if (resolution == null) {
+            resolution = resolve(name, variables);
+
+            // Only remember the resolution if nothing was (un)registered while resolving
+            if (generation == cacheGeneration.get()) {
+                cache.put(key, resolution);
 
-                if (file != null) {
-                    command = createCommand(file);
+                // Drop it again if an invalidation raced with the put
+                if (generation != cacheGeneration.get()) {
+                    cache.remove(key);
                 }
             }
-            catch (FileSystemException e) {
-                log.warn("Unable to resolve command for name: " + name, e);
-            }
+        }
+        else {
+            log.trace("Using cached resolution: {}", resolution);
+        }
+
+        Command command;
+
+        if (resolution.alias != null) {
+            // Alias commands are prototypes, so each resolve gets its own instance
+            command = createAliasCommand(name, resolution.alias);
+        }
+        else {
+            command = resolution.command;
         }
 
         if (command == null) {
@@ -112,7 +180,34 @@ public class CommandResolverImpl
         return command;
     }
 
-    private FileObject getAliasesRoot() throws FileSystemException {
+    private Resolution resolve(final String name, final Variables variables) throws CommandException {
+        assert name != null;
+        assert variables != null;
+
+        // Always try to resolve aliases before we resolve commands
+        String alias = resolveAlias(name);
+
+        if (alias != null) {
+            return new Resolution(alias, null);
+        }
+
+        Command command = null;
+
+        try {
+            FileObject file = resolveCommandFile(name, variables);
+
+            if (file != null) {
+                command = createCommand(file);
+            }
+        }
+        catch (FileSystemException e) {
+            log.warn("Unable to resolve command for name: " + name, e);
+        }
+
+        return new Resolution(null, command);
+    }
+
+    private synchronized FileObject getAliasesRoot() throws FileSystemException {
         if (aliasesRoot == null) {
             aliasesRoot = fileSystemAccess.createVirtualFileSystem(ALIASES_ROOT);
         }
@@ -120,13 +215,12 @@ public class CommandResolverImpl
         return aliasesRoot;
     }
 
-    private AliasCommand resolveAliasCommand(final String name, final Variables variables) {
+    private String resolveAlias(final String name) {
         assert name != null;
-        assert variables != null;
 
         log.trace("Resolving alias for name: {}", name);
         
-        AliasCommand command = null;
+        String alias = null;
 
         try {
             FileObject root = getAliasesRoot();
@@ -134,18 +228,21 @@ public class CommandResolverImpl
 
             if (file != null && file.exists()) {
                 log.trace("Resolved file: {}", file);
-                
-                command = createAliasCommand(file);
+
+                alias = (String) file.getContent().getAttribute("ALIAS");
+                if (alias == null) {
+                    throw new IllegalStateException("Alias meta-file does not contain 'ALIAS' attribute: " + file);
+                }
             }
         }
         catch (FileSystemException e) {
             log.debug("Failed to resolve alias command for name: " + name, e);
         }
 
-        return command;
+        return alias;
     }
 
-    private FileObject getCommandsRoot() throws FileSystemException {
+    private synchronized FileObject getCommandsRoot() throws FileSystemException {
         if (commandsRoot == null) {
             commandsRoot = fileSystemAccess.createVirtualFileSystem(COMMANDS_ROOT);
         }
@@ -304,20 +401,17 @@ public class CommandResolverImpl
         return command;
     }
 
-    private AliasCommand createAliasCommand(final FileObject file) throws FileSystemException {
-        assert file != null;
+    private AliasCommand createAliasCommand(final String path, final String alias) {
+        assert path != null;
+        assert alias != null;
 
-        String name = file.getName().getBaseName();
+        // Use the base-name, as the alias may have been resolved from a nested path
+        String name = path.substring(path.lastIndexOf('/') + 1);
 
         log.trace("Creating command for alias: {}", name);
 
         AliasCommand command = container.getBean(AliasCommand.class);
 
-        String alias = (String) file.getContent().getAttribute("ALIAS");
-        if (alias == null) {
-            throw new IllegalStateException("Alias meta-file does not contain 'ALIAS' attribute: " + file);
-        }
-
         command.setName(name);
         command.setAlias(alias);
 
@@ -330,7 +424,7 @@ public class CommandResolverImpl
         log.trace("Creating command for group: {}", file);
 
         GroupCommand command = container.getBean(GroupCommand.class);
-        String path = fileSystemAccess.dereference(commandsRoot).getName().getRelativeName(file.getName());
+        String path = fileSystemAccess.dereference(getCommandsRoot()).getName().getRelativeName(file.getName());
         if (".".equals(path)) {
             path = "/";
         }
@@ -338,4 +432,71 @@ public class CommandResolverImpl
         
         return command;
     }
+
+    /**
+     * Key for cached resolutions; the name plus the variables which influence where it is resolved.
+     */
+    private static final class CacheKey
+    {
+        private final String name;
+
+        private final Object path;
+
+        private final Object group;
+
+        private final int hash;
+
+        public CacheKey(final String name, final Object path, final Object group) {
+            assert name != null;
+
+            this.name = name;
+            this.path = path;
+            this.group = group;
+
+            int h = name.hashCode();
+            h = 31 * h + (path != null ? path.hashCode() : 0);
+            h = 31 * h + (group != null ? group.hashCode() : 0);
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+
+            CacheKey key = (CacheKey)obj;
+            return name.equals(key.name) &&
+                (path != null ? path.equals(key.path) : key.path == null) &&
+                (group != null ? group.equals(key.group) : key.group == null);
+        }
+    }
+
+    /**
+     * The result of resolving a name; either alias text, a command or neither.
+     */
+    private static final class Resolution
+    {
+        public final String alias;
+
+        public final Command command;
+
+        public Resolution(final String alias, final Command command) {
+            this.alias = alias;
+            this.command = command;
+        }
+
+        @Override
+        public String toString() {
+            return alias != null ? "alias: " + alias : String.valueOf(command);
+        }
+    }
 }
@@ -23,6 +23,7 @@ import org.apache.geronimo.gshell.commandline.CommandLine;
 import org.apache.geronimo.gshell.commandline.CommandLineBuilder;
 import org.apache.geronimo.gshell.commandline.CommandLineExecutor;
 import org.apache.geronimo.gshell.io.Closer;
+import org.apache.geronimo.gshell.io.Pipe;
 import org.apache.geronimo.gshell.notification.ErrorNotification;
 import org.apache.geronimo.gshell.parser.ASTCommandLine;
 import org.apache.geronimo.gshell.parser.CommandLineParser;
@@ -30,11 +31,13 @@ import org.apache.geronimo.gshell.parser.ParseException;
 import org.apache.geronimo.gshell.parser.visitor.ExecutingVisitor;
 import org.apache.geronimo.gshell.parser.visitor.LoggingVisitor;
 import org.apache.geronimo.gshell.shell.ShellContext;
+import org.apache.geronimo.gshell.wisdom.cache.StripedLruCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.concurrent.Executor;
 
 /**
  * Builds {@link CommandLine} instances ready for executing.
@@ -46,20 +49,90 @@ public class CommandLineBuilderImpl
 {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
     private final CommandLineParser parser;
 
+    private final StripedLruCache<String,ASTCommandLine> cache = new StripedLruCache<String,ASTCommandLine>(DEFAULT_CACHE_SIZE);
+
+    private Executor stageExecutor;
+
+    private int pipeBufferSize = Pipe.DEFAULT_BUFFER_SIZE;
+
     public CommandLineBuilderImpl(final CommandLineParser parser) {
         assert parser != null;
         this.parser = parser;
     }
 
+    /**
+     * Set the executor for pipeline stages; when unset the visitor's shared pool is used.
+     */
+    public void setStageExecutor(final Executor stageExecutor) {
+        this.stageExecutor = stageExecutor;
+    }
+
+    public void setPipeBufferSize(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pipe buffer size must be positive: " + size);
+        }
+
+        this.pipeBufferSize = size;
+    }
+
+    /**
+     * Set the maximum number of parsed command-lines to retain; zero disables caching.
+     */
+    public void setCacheSize(final int size) {
+        cache.setMaxSize(size);
+    }
+
+    public int getCacheSize() {
+        return cache.getMaxSize();
+    }
+
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    public long getCacheEvictions() {
+        return cache.getEvictions();
+    }
+
+    public void clearCache() {
+        cache.clear();
+    }
+
     private ASTCommandLine parse(final String input) throws ParseException {
         assert input != null;
 
+        //
+        // NOTE: The parse tree is only ever read by the visitors, so a tree parsed once can be shared for every execution of the same line
+        //
+
+        ASTCommandLine cl = cache.get(input);
+
+        if (cl == null) {
+            cl = doParse(input);
+            cache.put(input, cl);
+        }
+
+        return cl;
+    }
+
+    private ASTCommandLine doParse(final String input) throws ParseException {
+        assert input != null;
+
         Reader reader = new StringReader(input);
         ASTCommandLine cl;
         try {
-            cl = parser.parse(reader);
+            // The generated parser is stateful, only allow one parse at a time
+            synchronized (parser) {
+                cl = parser.parse(reader);
+            }
         }
         finally {
             Closer.close(reader);
@@ -92,6 +165,10 @@ public class CommandLineBuilderImpl
                     assert executor != null;
 
                     ExecutingVisitor visitor = new ExecutingVisitor(context, executor);
+                    visitor.setPipeBufferSize(pipeBufferSize);
+                    if (stageExecutor != null) {
+                        visitor.setStageExecutor(stageExecutor);
+                    }
 
                     return root.jjtAccept(visitor, null);
                 }
@@ -101,4 +178,4 @@ public class CommandLineBuilderImpl
             throw new ErrorNotification(e);
         }
     }
-}
\ No newline at end of file
+}
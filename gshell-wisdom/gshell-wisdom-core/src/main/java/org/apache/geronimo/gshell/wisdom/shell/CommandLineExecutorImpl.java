@@ -28,14 +28,21 @@ import org.apache.geronimo.gshell.command.Variables;
 import org.apache.geronimo.gshell.commandline.CommandLine;
 import org.apache.geronimo.gshell.commandline.CommandLineBuilder;
 import org.apache.geronimo.gshell.commandline.CommandLineExecutor;
+import org.apache.geronimo.gshell.io.FlushingOutputStream;
 import org.apache.geronimo.gshell.io.IO;
 import org.apache.geronimo.gshell.io.SystemOutputHijacker;
 import org.apache.geronimo.gshell.notification.ErrorNotification;
 import org.apache.geronimo.gshell.registry.CommandResolver;
+import org.apache.geronimo.gshell.shell.Shell;
 import org.apache.geronimo.gshell.shell.ShellContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
 /**
  * The default {@link CommandLineExecutor} component.
  *
@@ -50,6 +57,12 @@ public class CommandLineExecutorImpl
 
     private final CommandLineBuilder commandLineBuilder;
 
+    private int bufferSize = FlushingOutputStream.DEFAULT_BUFFER_SIZE;
+
+    private long lineFlushInterval = 20;
+
+    private long bufferFlushInterval = 1000;
+
     public CommandLineExecutorImpl(final CommandResolver commandResolver, final CommandLineBuilder commandLineBuilder) {
         assert commandResolver != null;
         this.commandResolver = commandResolver;
@@ -57,6 +70,43 @@ public class CommandLineExecutorImpl
         this.commandLineBuilder = commandLineBuilder;
     }
 
+    /**
+     * Set the size of the buffer command output is collected in; zero to write output straight through.
+     */
+    public void setBufferSize(final int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Buffer size must not be negative: " + size);
+        }
+
+        this.bufferSize = size;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Set the milliseconds output to a terminal may wait for more lines before it is flushed.
+     */
+    public void setLineFlushInterval(final long interval) {
+        this.lineFlushInterval = interval;
+    }
+
+    public long getLineFlushInterval() {
+        return lineFlushInterval;
+    }
+
+    /**
+     * Set the milliseconds output to a pipe or capture may be held back before it is flushed.
+     */
+    public void setBufferFlushInterval(final long interval) {
+        this.bufferFlushInterval = interval;
+    }
+
+    public long getBufferFlushInterval() {
+        return bufferFlushInterval;
+    }
+
     public Object execute(final ShellContext context, final String line) throws Exception {
         assert context != null;
         assert line != null;
@@ -115,8 +165,17 @@ public class CommandLineExecutorImpl
         Variables vars = context.getVariables();
         Command command = commandResolver.resolveCommand(path, vars);
         
+        // Collect the command's output in a buffer, if it does not already write through one
+        ShellContext commandContext = context;
+        BufferedIO buffered = null;
+
+        if (bufferSize > 0 && !(context.getIo() instanceof BufferedIO)) {
+            buffered = createBufferedIO(context.getIo());
+            commandContext = new BufferedShellContext(context, buffered);
+        }
+
         // Hijack the system streams in the current thread's context
-        IO io = context.getIo();
+        IO io = commandContext.getIo();
         SystemOutputHijacker.register(io.outputStream, io.errorStream);
 
         // Setup command timings
@@ -124,7 +183,7 @@ public class CommandLineExecutorImpl
         
         CommandResult result;
         try {
-            result = command.execute(context, args);
+            result = command.execute(commandContext, args);
 
             log.debug("Command completed with result: {}, after: {}", result, watch);
         }
@@ -135,6 +194,10 @@ public class CommandLineExecutorImpl
             // Make sure that the commands output has been flushed
             try {
                 io.flush();
+
+                if (buffered != null) {
+                    buffered.buffer.sync();
+                }
             }
             catch (Exception ignore) {}
         }
@@ -151,4 +214,112 @@ public class CommandLineExecutorImpl
             return result.getValue();
         }
     }
+
+    private BufferedIO createBufferedIO(final IO io) {
+        assert io != null;
+
+        FlushingOutputStream buffer;
+
+        // Output feeding another stage, rather than the terminal, only needs flushing for long-running commands
+        if (io.getObjectOutput() != null) {
+            buffer = new FlushingOutputStream(io.outputStream, FlushingOutputStream.Policy.BUFFER, bufferSize, bufferFlushInterval);
+        }
+        else {
+            buffer = new FlushingOutputStream(io.outputStream, FlushingOutputStream.Policy.LINE, bufferSize, lineFlushInterval);
+        }
+
+        log.trace("Buffering command output; policy: {}", buffer.getPolicy());
+
+        return new BufferedIO(io, buffer);
+    }
+
+    /**
+     * An {@link IO} whose output is collected in a {@link FlushingOutputStream}.
+     */
+    private static class BufferedIO
+        extends IO
+    {
+        public final FlushingOutputStream buffer;
+
+        public BufferedIO(final IO io, final FlushingOutputStream buffer) {
+            this(io, buffer, new PrintStream(buffer, true));
+        }
+
+        private BufferedIO(final IO io, final FlushingOutputStream buffer, final PrintStream out) {
+            // Keep sharing the stream with error output, else flush output ahead of errors, so the two stay in order
+            super(io, out, io.isSharedOutputStreams() ? out : new PrintStream(new SyncingOutputStream(io.errorStream, buffer), true));
+
+            this.buffer = buffer;
+        }
+
+        @Override
+        protected void flushText() throws IOException {
+            super.flushText();
+
+            // Text held back in the buffer must also be handed on ahead of the object
+            if (buffer.isBuffering()) {
+                buffer.sync();
+            }
+        }
+    }
+
+    /**
+     * Flushes buffered output through before anything is written to the wrapped stream.
+     */
+    private static class SyncingOutputStream
+        extends FilterOutputStream
+    {
+        private final FlushingOutputStream buffer;
+
+        public SyncingOutputStream(final OutputStream out, final FlushingOutputStream buffer) {
+            super(out);
+
+            assert buffer != null;
+
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            buffer.sync();
+            out.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            buffer.sync();
+            out.write(b, off, len);
+        }
+    }
+
+    /**
+     * Runs a command with buffered output, otherwise in the context it was given.
+     */
+    private static class BufferedShellContext
+        implements ShellContext
+    {
+        private final ShellContext context;
+
+        private final IO io;
+
+        public BufferedShellContext(final ShellContext context, final IO io) {
+            assert context != null;
+            assert io != null;
+
+            this.context = context;
+            this.io = io;
+        }
+
+        public Shell getShell() {
+            return context.getShell();
+        }
+
+        public IO getIo() {
+            return io;
+        }
+
+        public Variables getVariables() {
+            return context.getVariables();
+        }
+    }
 }
\ No newline at end of file
@@ -31,6 +31,7 @@ import org.apache.geronimo.gshell.console.JLineConsole;
 import org.apache.geronimo.gshell.console.completer.AggregateCompleter;
 import org.apache.geronimo.gshell.io.Closer;
 import org.apache.geronimo.gshell.io.IO;
+import org.apache.geronimo.gshell.io.IOAware;
 import org.apache.geronimo.gshell.notification.ExitNotification;
 import org.apache.geronimo.gshell.registry.CommandResolver;
 import org.apache.geronimo.gshell.shell.Shell;
@@ -50,7 +51,7 @@ import java.util.concurrent.atomic.AtomicReference;
  * @version $Rev$ $Date$
  */
 public class ShellImpl
-    implements Shell
+    implements Shell, IOAware
 {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -68,6 +69,8 @@ public class ShellImpl
 
     private ErrorHandler errorHandler;
 
+    private IO io;
+
     private boolean opened;
 
     public ShellImpl(final Application application, final CommandLineExecutor executor) {
@@ -107,7 +110,10 @@ public class ShellImpl
             }
 
             public IO getIo() {
-                // Shells inherit the application's IO
+                // Shells inherit the application's IO, unless given their own
+                if (io != null) {
+                    return io;
+                }
                 return application.getIo();
             }
 
@@ -161,6 +167,12 @@ public class ShellImpl
         this.history = history;
     }
 
+    public void setIo(final IO io) {
+        assert io != null;
+
+        this.io = io;
+    }
+
     public boolean isInteractive() {
         return true;
     }
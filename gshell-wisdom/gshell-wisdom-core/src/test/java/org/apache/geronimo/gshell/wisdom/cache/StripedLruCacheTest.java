@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.wisdom.cache;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link StripedLruCache} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class StripedLruCacheTest
+    extends TestCase
+{
+    public void testGetAndPut() throws Exception {
+        StripedLruCache<String,String> cache = new StripedLruCache<String,String>(256);
+
+        assertNull(cache.get("a"));
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.size());
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        StripedLruCache<String,String> cache = new StripedLruCache<String,String>(2);
+
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+    }
+
+    public void testBounded() throws Exception {
+        StripedLruCache<Integer,Integer> cache = new StripedLruCache<Integer,Integer>(256);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+
+        assertTrue(cache.size() <= 256);
+        assertEquals(1000 - cache.size(), cache.getEvictions());
+    }
+
+    public void testResize() throws Exception {
+        StripedLruCache<String,String> cache = new StripedLruCache<String,String>(4);
+
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+
+        cache.setMaxSize(2);
+        assertEquals(2, cache.getMaxSize());
+        assertEquals(1, cache.getEvictions());
+
+        // The most recently used entries survive the resize
+        assertNull(cache.get("a"));
+        assertEquals("3", cache.get("c"));
+    }
+
+    public void testDisabled() throws Exception {
+        StripedLruCache<String,String> cache = new StripedLruCache<String,String>(0);
+
+        cache.put("a", "1");
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testNegativeSize() throws Exception {
+        try {
+            new StripedLruCache<String,String>(-1);
+            fail();
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        final StripedLruCache<Integer,Integer> cache = new StripedLruCache<Integer,Integer>(64);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final int offset = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        Integer key = (j + offset) % 128;
+                        if (cache.get(key) == null) {
+                            cache.put(key, key);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8 * 10000, cache.getHits() + cache.getMisses());
+        assertTrue(cache.size() <= 64);
+    }
+}
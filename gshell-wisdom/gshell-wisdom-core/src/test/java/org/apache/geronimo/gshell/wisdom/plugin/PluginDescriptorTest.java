@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.wisdom.plugin;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Unit tests for the {@link PluginDescriptor} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PluginDescriptorTest
+    extends TestCase
+{
+    private File baseDir;
+
+    private int entries;
+
+    protected void setUp() throws Exception {
+        baseDir = File.createTempFile("descriptor", ".test");
+        assertTrue(baseDir.delete());
+        assertTrue(baseDir.mkdirs());
+    }
+
+    protected void tearDown() throws Exception {
+        delete(baseDir);
+    }
+
+    private static void delete(final File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Creates a components XML document holding the given lines.
+     */
+    static String createComponents(final String... lines) {
+        StringBuilder buff = new StringBuilder();
+
+        buff.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+        buff.append("<beans xmlns='http://www.springframework.org/schema/beans'\n");
+        buff.append("       xmlns:gshell='http://gshell.org/schema/wisdom-gshell'>\n");
+        for (String line : lines) {
+            buff.append("    ").append(line).append("\n");
+        }
+        buff.append("</beans>\n");
+
+        return buff.toString();
+    }
+
+    private URL createDirectory(final String... lines) throws Exception {
+        File dir = new File(baseDir, "dir" + entries++);
+        File file = new File(dir, PluginDescriptor.LOCATION);
+        assertTrue(file.getParentFile().mkdirs());
+
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(createComponents(lines).getBytes("UTF-8"));
+        }
+        finally {
+            output.close();
+        }
+
+        return dir.toURI().toURL();
+    }
+
+    private URL createJar(final String... lines) throws Exception {
+        File file = new File(baseDir, "jar" + entries++ + ".jar");
+
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            output.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            output.write("Manifest-Version: 1.0\n".getBytes("UTF-8"));
+
+            if (lines.length != 0) {
+                output.putNextEntry(new ZipEntry(PluginDescriptor.LOCATION));
+                output.write(createComponents(lines).getBytes("UTF-8"));
+            }
+        }
+        finally {
+            output.close();
+        }
+
+        return file.toURI().toURL();
+    }
+
+    private static PluginDescriptor read(final URL... urls) {
+        Collection<URL> classPath = new ArrayList<URL>();
+        for (URL url : urls) {
+            classPath.add(url);
+        }
+
+        return PluginDescriptor.read(classPath);
+    }
+
+    private static final String[] PLUGIN = {
+        "<gshell:plugin name='test'>",
+        "  <description>A test plugin</description>",
+        "  <gshell:command-bundle name='default'>",
+        "    <gshell:command name='a'>",
+        "      <description>",
+        "        Command A",
+        "      </description>",
+        "      <gshell:action class='A'/>",
+        "    </gshell:command>",
+        "    <gshell:command name='b' type='stateless'>",
+        "      <gshell:action class='B'/>",
+        "    </gshell:command>",
+        "    <gshell:link name='c' target='a'/>",
+        "    <gshell:alias name='d' alias='b -x'/>",
+        "  </gshell:command-bundle>",
+        "  <gshell:command-bundle name='other'>",
+        "    <gshell:command name='a'>",
+        "      <gshell:action class='A2'/>",
+        "    </gshell:command>",
+        "  </gshell:command-bundle>",
+        "</gshell:plugin>"
+    };
+
+    private static String[] withPlugin(final String... lines) {
+        String[] result = new String[PLUGIN.length + lines.length];
+        System.arraycopy(lines, 0, result, 0, lines.length);
+        System.arraycopy(PLUGIN, 0, result, lines.length, PLUGIN.length);
+        return result;
+    }
+
+    private static void assertPlugin(final PluginDescriptor plugin) {
+        assertNotNull(plugin);
+        assertEquals("test", plugin.getName());
+        assertEquals(2, plugin.getBundles().size());
+
+        PluginDescriptor.BundleDescriptor bundle = plugin.getBundles().get("default");
+        assertEquals("default", bundle.getName());
+
+        List<PluginDescriptor.CommandDescriptor> commands = bundle.getCommands();
+        assertEquals(2, commands.size());
+        assertEquals("a", commands.get(0).getName());
+        assertEquals("Command A", commands.get(0).getDescription());
+        assertEquals("b", commands.get(1).getName());
+        assertNull(commands.get(1).getDescription());
+
+        assertEquals(1, bundle.getLinks().size());
+        assertEquals("a", bundle.getLinks().get("c"));
+        assertEquals(1, bundle.getAliases().size());
+        assertEquals("b -x", bundle.getAliases().get("d"));
+
+        bundle = plugin.getBundles().get("other");
+        assertEquals(1, bundle.getCommands().size());
+        assertEquals("a", bundle.getCommands().get(0).getName());
+    }
+
+    public void testReadDirectory() throws Exception {
+        assertPlugin(read(createDirectory(PLUGIN)));
+    }
+
+    public void testReadJar() throws Exception {
+        assertPlugin(read(createJar(), createJar(PLUGIN)));
+    }
+
+    public void testDeferrableBeans() throws Exception {
+        URL url = createDirectory(withPlugin(
+            "<bean id='template' abstract='true'/>",
+            "<bean id='prototype' class='Foo' scope='prototype'/>",
+            "<bean id='lazy' class='Foo' lazy-init='true'/>"));
+
+        assertPlugin(read(url));
+    }
+
+    public void testDefaultLazyInit() throws Exception {
+        File dir = new File(baseDir, "lazy");
+        File file = new File(dir, PluginDescriptor.LOCATION);
+        assertTrue(file.getParentFile().mkdirs());
+
+        String xml = createComponents(withPlugin("<bean id='singleton' class='Foo'/>"));
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(xml.replace("<beans ", "<beans default-lazy-init='true' ").getBytes("UTF-8"));
+        }
+        finally {
+            output.close();
+        }
+
+        assertPlugin(read(dir.toURI().toURL()));
+    }
+
+    public void testSingletonNotDescribed() throws Exception {
+        assertNull(read(createDirectory(withPlugin("<bean id='singleton' class='Foo'/>"))));
+        assertNull(read(createDirectory(withPlugin("<bean id='eager' class='Foo' lazy-init='false'/>"))));
+    }
+
+    public void testImportNotDescribed() throws Exception {
+        assertNull(read(createDirectory(withPlugin("<import resource='other.xml'/>"))));
+    }
+
+    public void testCustomBundleNotDescribed() throws Exception {
+        assertNull(read(createDirectory(
+            "<gshell:plugin name='test'>",
+            "  <gshell:bundle name='custom' class='Custom'/>",
+            "</gshell:plugin>")));
+    }
+
+    public void testMissingNotDescribed() throws Exception {
+        assertNull(read(createJar()));
+        assertNull(read(createDirectory("<bean id='template' abstract='true'/>")));
+    }
+
+    public void testMoreThanOneNotDescribed() throws Exception {
+        assertNull(read(createJar(PLUGIN), createDirectory("<bean id='template' abstract='true'/>")));
+    }
+
+    public void testUnreadableNotDescribed() throws Exception {
+        File file = new File(baseDir, "broken.jar");
+        assertTrue(file.createNewFile());
+
+        assertNull(read(file.toURI().toURL()));
+        assertNull(read(new URL("http://localhost/plugin.jar")));
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.wisdom.plugin;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.application.Application;
+import org.apache.geronimo.gshell.application.ApplicationManager;
+import org.apache.geronimo.gshell.application.model.ApplicationModel;
+import org.apache.geronimo.gshell.application.plugin.Plugin;
+import org.apache.geronimo.gshell.artifact.Artifact;
+import org.apache.geronimo.gshell.artifact.ArtifactResolver;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.event.Event;
+import org.apache.geronimo.gshell.event.EventListener;
+import org.apache.geronimo.gshell.event.EventManager;
+import org.apache.geronimo.gshell.event.EventPublisher;
+import org.apache.geronimo.gshell.registry.AliasRegistry;
+import org.apache.geronimo.gshell.registry.CommandRegistry;
+import org.apache.geronimo.gshell.spring.BeanContainer;
+import org.apache.geronimo.gshell.wisdom.application.ApplicationConfiguredEvent;
+import org.apache.geronimo.gshell.wisdom.application.ClassPathImpl;
+import org.apache.geronimo.gshell.wisdom.command.LazyCommand;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for the {@link PluginManagerImpl} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PluginManagerImplTest
+    extends TestCase
+{
+    private static final int PLUGINS = 8;
+
+    private File homeDir;
+
+    private String prevHome;
+
+    private ApplicationModel model;
+
+    private Application application;
+
+    private EventListener listener;
+
+    private final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+
+    private final List<Thread> activatingThreads = Collections.synchronizedList(new ArrayList<Thread>());
+
+    private final AtomicInteger loading = new AtomicInteger();
+
+    private final AtomicInteger maxLoading = new AtomicInteger();
+
+    /**
+     * How long loading the beans of each plugin takes.
+     */
+    private long loadTime = 0;
+
+    private final AtomicInteger children = new AtomicInteger();
+
+    private final List<String> commandIds = Collections.synchronizedList(new ArrayList<String>());
+
+    private final List<Command> commands = Collections.synchronizedList(new ArrayList<Command>());
+
+    private final Map<String,String> aliases = Collections.synchronizedMap(new LinkedHashMap<String,String>());
+
+    private CommandRegistry commandRegistry;
+
+    private AliasRegistry aliasRegistry;
+
+    private PluginManagerImpl manager;
+
+    protected void setUp() throws Exception {
+        homeDir = File.createTempFile("plugins", ".test");
+        assertTrue(homeDir.delete());
+        assertTrue(homeDir.mkdirs());
+
+        // Classpath caches are kept under the home directory
+        prevHome = System.getProperty("gshell.home");
+        System.setProperty("gshell.home", homeDir.getPath());
+
+        model = new ApplicationModel();
+        for (int i = 0; i < PLUGINS; i++) {
+            Artifact artifact = new Artifact();
+            artifact.setGroup("test");
+            artifact.setName("plugin" + i);
+            artifact.setVersion("1.0");
+            model.addPlugin(artifact);
+        }
+
+        application = proxy(Application.class, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getName().equals("getModel")) {
+                    return model;
+                }
+                if (method.getName().equals("getClassPath")) {
+                    return new ClassPathImpl(new ArrayList<Artifact>());
+                }
+                if (method.getName().equals("getId")) {
+                    return "test";
+                }
+                return null;
+            }
+        });
+
+        EventManager eventManager = proxy(EventManager.class, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getName().equals("addListener")) {
+                    listener = (EventListener)args[0];
+                    return null;
+                }
+                if (method.getName().equals("getPublisher")) {
+                    return new EventPublisher() {
+                        public void publish(final Event event) {
+                            events.add(event);
+                        }
+                    };
+                }
+                return null;
+            }
+        });
+
+        ArtifactResolver resolver = proxy(ArtifactResolver.class, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getName().equals("resolve")) {
+                    ArtifactResolver.Request request = (ArtifactResolver.Request)args[0];
+                    Artifact artifact = request.artifacts.iterator().next();
+
+                    // Name the jar after the plugin, so its container knows which plugin it holds
+                    File file = new File(homeDir, artifact.getName());
+                    if (!file.isDirectory()) {
+                        file = new File(homeDir, artifact.getName() + ".jar");
+                        file.createNewFile();
+                    }
+                    artifact.setFile(file);
+
+                    ArtifactResolver.Result result = new ArtifactResolver.Result();
+                    result.artifacts = Collections.singletonList(artifact);
+                    return result;
+                }
+                return null;
+            }
+        });
+
+        commandRegistry = proxy(CommandRegistry.class, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getName().equals("registerCommand")) {
+                    commands.add((Command)args[0]);
+                }
+                return null;
+            }
+        });
+
+        aliasRegistry = proxy(AliasRegistry.class, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getName().equals("registerAlias")) {
+                    aliases.put((String)args[0], (String)args[1]);
+                }
+                return null;
+            }
+        });
+
+        manager = new PluginManagerImpl(proxy(ApplicationManager.class, null), eventManager, resolver);
+        manager.setBeanContainer(createContainer(null));
+        manager.init();
+
+        assertNotNull(listener);
+    }
+
+    protected void tearDown() throws Exception {
+        if (prevHome != null) {
+            System.setProperty("gshell.home", prevHome);
+        }
+        else {
+            System.clearProperty("gshell.home");
+        }
+
+        delete(homeDir);
+
+        manager = null;
+        listener = null;
+        application = null;
+        model = null;
+    }
+
+    private static void delete(final File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return (T)Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, handler != null ? handler : new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Creates a container whose children each hold the plugin named by the jar on their classpath.
+     */
+    private BeanContainer createContainer(final String pluginName) {
+        return proxy(BeanContainer.class, new InvocationHandler() {
+            private PluginImpl plugin;
+
+            @SuppressWarnings({"unchecked"})
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                String name = method.getName();
+
+                if (name.equals("createChild")) {
+                    children.incrementAndGet();
+
+                    URL url = ((Collection<URL>)args[0]).iterator().next();
+                    String file = new File(url.getPath()).getName();
+                    if (file.endsWith(".jar")) {
+                        file = file.substring(0, file.length() - ".jar".length());
+                    }
+                    return createContainer(file);
+                }
+                if (name.equals("loadBeans")) {
+                    int count = loading.incrementAndGet();
+                    synchronized (maxLoading) {
+                        maxLoading.set(Math.max(maxLoading.get(), count));
+                    }
+
+                    try {
+                        Thread.sleep(loadTime);
+                    }
+                    finally {
+                        loading.decrementAndGet();
+                    }
+
+                    plugin = new PluginImpl(pluginName) {
+                        public void activate() {
+                            activatingThreads.add(Thread.currentThread());
+                        }
+                    };
+                    return null;
+                }
+                if (name.equals("getBean") && args.length == 2) {
+                    if (args[0].equals("commandRegistry")) {
+                        return commandRegistry;
+                    }
+                    if (args[0].equals("aliasRegistry")) {
+                        return aliasRegistry;
+                    }
+
+                    commandIds.add((String)args[0]);
+                    return proxy(Command.class, null);
+                }
+                if (name.equals("getBean")) {
+                    return plugin;
+                }
+                return null;
+            }
+        });
+    }
+
+    private void loadPlugins() throws Exception {
+        listener.onEvent(new ApplicationConfiguredEvent(application));
+    }
+
+    private long timeLoadPlugins(final int threads) throws Exception {
+        manager.setThreads(threads);
+
+        long start = System.currentTimeMillis();
+        listener.onEvent(new ApplicationConfiguredEvent(application));
+        return System.currentTimeMillis() - start;
+    }
+
+    private void assertActivatedInOrder() {
+        assertEquals(PLUGINS, manager.getPlugins().size());
+        assertEquals(PLUGINS, events.size());
+
+        // Plugins are only ever activated on the thread loading the plugins
+        assertEquals(PLUGINS, activatingThreads.size());
+        for (Thread thread : activatingThreads) {
+            assertSame(Thread.currentThread(), thread);
+        }
+
+        int i = 0;
+        for (Plugin plugin : manager.getPlugins()) {
+            assertEquals("plugin" + i, plugin.getName());
+            assertEquals("plugin" + i, plugin.getArtifact().getName());
+            assertEquals("plugin" + i, ((PluginLoadedEvent)events.get(i)).getPlugin().getName());
+            i++;
+        }
+    }
+
+    public void testLoadSerial() throws Exception {
+        timeLoadPlugins(1);
+
+        assertActivatedInOrder();
+        assertEquals(1, maxLoading.get());
+    }
+
+    public void testLoadConcurrent() throws Exception {
+        loadTime = 50;
+        timeLoadPlugins(4);
+
+        assertActivatedInOrder();
+        assertTrue(maxLoading.get() > 1);
+        assertTrue(maxLoading.get() <= 4);
+    }
+
+    public void testConcurrentLoadIsFaster() throws Exception {
+        loadTime = 50;
+
+        long serial = timeLoadPlugins(1);
+
+        manager.getPlugins().clear();
+        events.clear();
+        activatingThreads.clear();
+
+        long concurrent = timeLoadPlugins(4);
+
+        assertActivatedInOrder();
+
+        // Loading beans takes at least 8 * 50 ms one at a time, and around 2 * 50 ms with 4 threads
+        assertTrue("serial: " + serial + " ms, concurrent: " + concurrent + " ms", concurrent * 2 < serial);
+    }
+
+    private void addLazyPlugin() throws Exception {
+        File file = new File(homeDir, "lazy/" + PluginDescriptor.LOCATION);
+        assertTrue(file.getParentFile().mkdirs());
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(PluginDescriptorTest.createComponents(
+                "<bean id='template' abstract='true'/>",
+                "<gshell:plugin name='lazy'>",
+                "  <gshell:command-bundle name='default'>",
+                "    <gshell:command name='foo'>",
+                "      <description>Does foo</description>",
+                "      <gshell:action class='Foo'/>",
+                "    </gshell:command>",
+                "    <gshell:command name='bar'>",
+                "      <gshell:action class='Bar'/>",
+                "    </gshell:command>",
+                "    <gshell:link name='baz' target='bar'/>",
+                "    <gshell:alias name='qux' alias='foo -v'/>",
+                "  </gshell:command-bundle>",
+                "</gshell:plugin>"));
+        }
+        finally {
+            writer.close();
+        }
+
+        Artifact artifact = new Artifact();
+        artifact.setGroup("test");
+        artifact.setName("lazy");
+        artifact.setVersion("1.0");
+        model.addPlugin(artifact);
+    }
+
+    public void testLoadLazily() throws Exception {
+        addLazyPlugin();
+        timeLoadPlugins(1);
+
+        assertEquals(PLUGINS + 1, manager.getPlugins().size());
+        assertEquals(PLUGINS + 1, events.size());
+
+        // Only the plugins which could not be described have containers
+        assertEquals(PLUGINS, children.get());
+
+        assertEquals(3, commands.size());
+        assertEquals("foo", commands.get(0).getLocation().getName());
+        assertEquals("bar", commands.get(1).getLocation().getName());
+        assertEquals("baz", commands.get(2).getLocation().getName());
+        assertEquals("foo -v", aliases.get("qux"));
+
+        LazyCommand foo = (LazyCommand)commands.get(0);
+        assertEquals("Does foo", foo.getDocumenter().getDescription());
+        assertEquals(PLUGINS, children.get());
+        assertFalse(foo.isResolved());
+
+        // The container is created the first time a command is resolved, and only once
+        foo.getAction();
+        assertTrue(foo.isResolved());
+        assertEquals(PLUGINS + 1, children.get());
+        assertEquals(LazyCommand.getCommandId("lazy", "default", "foo"), commandIds.get(0));
+
+        commands.get(1).getAction();
+        assertEquals(PLUGINS + 1, children.get());
+        assertEquals(LazyCommand.getCommandId("lazy", "default", "bar"), commandIds.get(1));
+    }
+
+    public void testInvalidThreads() throws Exception {
+        try {
+            manager.setThreads(0);
+            fail();
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.wisdom.registry;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.event.Event;
+import org.apache.geronimo.gshell.event.EventPublisher;
+import org.apache.geronimo.gshell.registry.DuplicateCommandException;
+import org.apache.geronimo.gshell.registry.NoSuchCommandException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for the {@link CommandRegistryImpl} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CommandRegistryImplTest
+    extends TestCase
+{
+    private RecordingPublisher publisher;
+
+    private CommandRegistryImpl registry;
+
+    protected void setUp() throws Exception {
+        publisher = new RecordingPublisher();
+        registry = new CommandRegistryImpl(publisher);
+    }
+
+    protected void tearDown() throws Exception {
+        registry = null;
+        publisher = null;
+    }
+
+    private static Command createCommand(final String name) {
+        final CommandLocationImpl location = new CommandLocationImpl(name);
+
+        return (Command)Proxy.newProxyInstance(Command.class.getClassLoader(), new Class[] { Command.class }, new InvocationHandler() {
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getName().equals("getLocation")) {
+                    return location;
+                }
+                if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                if (method.getName().equals("toString")) {
+                    return location.toString();
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    public void testRegister() throws Exception {
+        Command command = createCommand("a/b");
+        registry.registerCommand(command);
+
+        assertTrue(registry.containsCommand("a/b"));
+        assertSame(command, registry.getCommand("a/b"));
+
+        assertEquals(1, publisher.events.size());
+        assertTrue(publisher.events.get(0) instanceof CommandRegisteredEvent);
+    }
+
+    public void testRegisterDuplicate() throws Exception {
+        registry.registerCommand(createCommand("a"));
+
+        try {
+            registry.registerCommand(createCommand("a"));
+            fail();
+        }
+        catch (DuplicateCommandException expected) {
+            // ignore
+        }
+
+        assertEquals(1, publisher.events.size());
+    }
+
+    public void testRemove() throws Exception {
+        Command command = createCommand("a");
+        registry.registerCommand(command);
+        registry.removeCommand(command);
+
+        assertFalse(registry.containsCommand("a"));
+        assertTrue(registry.getCommandNames().isEmpty());
+
+        try {
+            registry.getCommand("a");
+            fail();
+        }
+        catch (NoSuchCommandException expected) {
+            // ignore
+        }
+
+        try {
+            registry.removeCommand(command);
+            fail();
+        }
+        catch (NoSuchCommandException expected) {
+            // ignore
+        }
+
+        assertEquals(2, publisher.events.size());
+        assertTrue(publisher.events.get(1) instanceof CommandRemovedEvent);
+    }
+
+    public void testNamesInRegistrationOrder() throws Exception {
+        registry.registerCommand(createCommand("c"));
+        registry.registerCommand(createCommand("a"));
+        Command b = createCommand("b");
+        registry.registerCommand(b);
+        registry.registerCommand(createCommand("d"));
+        registry.removeCommand(b);
+
+        assertEquals(Arrays.asList("c", "a", "d"), new ArrayList<String>(registry.getCommandNames()));
+    }
+
+    public void testNamesAreSnapshot() throws Exception {
+        registry.registerCommand(createCommand("a"));
+        List<String> names = new ArrayList<String>(registry.getCommandNames());
+
+        registry.registerCommand(createCommand("b"));
+
+        assertEquals(Arrays.asList("a"), names);
+    }
+
+    public void testPublishOutsideLock() throws Exception {
+        // Listener calling back into the registry from another thread, which would deadlock if the lock were held
+        registry = new CommandRegistryImpl(new EventPublisher() {
+            public void publish(final Event event) {
+                Thread t = new Thread() {
+                    public void run() {
+                        registry.getCommandNames();
+                    }
+                };
+                t.start();
+
+                try {
+                    t.join(5000);
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+
+                assertFalse(t.isAlive());
+            }
+        });
+
+        registry.registerCommand(createCommand("a"));
+    }
+
+    public void testConcurrentRegistration() throws Exception {
+        final int threads = 4;
+        final int count = 500;
+        final List<Throwable> errors = new ArrayList<Throwable>();
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < count; j++) {
+                            registry.registerCommand(createCommand("t" + id + "/c" + j));
+                        }
+                    }
+                    catch (Throwable t) {
+                        synchronized (errors) {
+                            errors.add(t);
+                        }
+                    }
+                }
+            };
+            workers[i].start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(threads * count, registry.getCommandNames().size());
+        assertEquals(threads * count, publisher.events.size());
+    }
+
+    private static class RecordingPublisher
+        implements EventPublisher
+    {
+        public final List<Event> events = new ArrayList<Event>();
+
+        public synchronized void publish(final Event event) {
+            events.add(event);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.apache.geronimo.gshell.registry.CommandResolver;
 import org.apache.geronimo.gshell.registry.NoSuchCommandException;
 import org.apache.geronimo.gshell.spring.SpringTestSupport;
 import org.apache.geronimo.gshell.wisdom.command.AliasCommand;
+import org.apache.geronimo.gshell.wisdom.command.LazyCommand;
 
 import java.util.Collection;
 
@@ -192,6 +193,20 @@ public class CommandResolverImplTest
         assertNotNull(command);
     }
 
+    public void testResolveLazily() throws Exception {
+        Command command = resolver.resolveCommand("test3", vars);
+        assertNotNull(command);
+        assertTrue(command instanceof LazyCommand);
+
+        LazyCommand lazy = (LazyCommand)command;
+        assertFalse(lazy.isResolved());
+        assertEquals("test3", lazy.getLocation().getName());
+        assertFalse(lazy.isResolved());
+
+        assertNotNull(lazy.getAction());
+        assertTrue(lazy.isResolved());
+    }
+
     public void testResolveCommands() throws Exception {
         Collection<Command> commands = resolver.resolveCommands(null, vars);
         assertNotNull(commands);
@@ -208,4 +223,28 @@ public class CommandResolverImplTest
         assertNotNull(command);
         assertTrue(command instanceof AliasCommand);
     }
-}
\ No newline at end of file
+
+    public void testResolveCached() throws Exception {
+        Command command1 = resolver.resolveCommand("test1", vars);
+        Command command2 = resolver.resolveCommand("test1", vars);
+        assertSame(command1, command2);
+    }
+
+    public void testResolveAliasRegisteredAfterMiss() throws Exception {
+        try {
+            resolver.resolveCommand("late", vars);
+            fail();
+        }
+        catch (NoSuchCommandException ignore) {
+            // expected
+        }
+
+        // Registering the alias must invalidate the cached miss
+        AliasRegistry aliasRegistry = getBean(AliasRegistry.class);
+        aliasRegistry.registerAlias("late", "test1");
+
+        Command command = resolver.resolveCommand("late", vars);
+        assertNotNull(command);
+        assertTrue(command instanceof AliasCommand);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.wisdom.shell;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.parser.CommandLineParser;
+
+/**
+ * Unit tests for the {@link CommandLineBuilderImpl} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CommandLineBuilderImplTest
+    extends TestCase
+{
+    private CommandLineBuilderImpl builder;
+
+    protected void setUp() throws Exception {
+        builder = new CommandLineBuilderImpl(new CommandLineParser());
+    }
+
+    protected void tearDown() throws Exception {
+        builder = null;
+    }
+
+    public void testCacheHit() throws Exception {
+        assertNotNull(builder.create("echo hi"));
+        assertEquals(0, builder.getCacheHits());
+        assertEquals(1, builder.getCacheMisses());
+
+        assertNotNull(builder.create("echo hi"));
+        assertEquals(1, builder.getCacheHits());
+        assertEquals(1, builder.getCacheMisses());
+    }
+
+    public void testCacheEviction() throws Exception {
+        builder.setCacheSize(2);
+
+        builder.create("echo a");
+        builder.create("echo b");
+        builder.create("echo a");
+        builder.create("echo c");
+        assertEquals(1, builder.getCacheEvictions());
+
+        // "b" was the least recently used, so it should have been evicted
+        builder.create("echo a");
+        builder.create("echo b");
+        assertEquals(2, builder.getCacheHits());
+        assertEquals(4, builder.getCacheMisses());
+    }
+
+    public void testCacheDisabled() throws Exception {
+        builder.setCacheSize(0);
+
+        builder.create("echo hi");
+        builder.create("echo hi");
+        assertEquals(0, builder.getCacheHits());
+        assertEquals(2, builder.getCacheMisses());
+    }
+}
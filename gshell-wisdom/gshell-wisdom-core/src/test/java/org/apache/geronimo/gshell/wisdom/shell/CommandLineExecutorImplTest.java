@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.wisdom.shell;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.command.CommandAction;
+import org.apache.geronimo.gshell.command.CommandCompleter;
+import org.apache.geronimo.gshell.command.CommandDocumenter;
+import org.apache.geronimo.gshell.command.CommandException;
+import org.apache.geronimo.gshell.command.CommandLocation;
+import org.apache.geronimo.gshell.command.CommandResult;
+import org.apache.geronimo.gshell.command.Variables;
+import org.apache.geronimo.gshell.commandline.CommandLine;
+import org.apache.geronimo.gshell.commandline.CommandLineBuilder;
+import org.apache.geronimo.gshell.i18n.MessageSource;
+import org.apache.geronimo.gshell.io.IO;
+import org.apache.geronimo.gshell.io.ObjectChannel;
+import org.apache.geronimo.gshell.io.Pipe;
+import org.apache.geronimo.gshell.io.SystemOutputHijacker;
+import org.apache.geronimo.gshell.registry.CommandResolver;
+import org.apache.geronimo.gshell.shell.Shell;
+import org.apache.geronimo.gshell.shell.ShellContext;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Unit tests for the {@link CommandLineExecutorImpl} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CommandLineExecutorImplTest
+    extends TestCase
+{
+    private static final int COUNT = 1000;
+
+    private ObjectChannel channel;
+
+    private CountingOutputStream out;
+
+    private IO io;
+
+    private CommandLineExecutorImpl executor;
+
+    protected void setUp() throws Exception {
+        SystemOutputHijacker.install();
+
+        channel = new ObjectChannel(new Pipe(64 * 1024), COUNT * 2);
+        out = new CountingOutputStream(channel.getOutputStream());
+
+        PrintStream stream = new PrintStream(out, true);
+        io = new IO(new ByteArrayInputStream(new byte[0]), stream, stream, true);
+        io.setObjectOutput(channel);
+
+        executor = new CommandLineExecutorImpl(new EmittingCommandResolver(), new CommandLineBuilder() {
+            public CommandLine create(final String input) throws Exception {
+                throw new UnsupportedOperationException();
+            }
+        });
+    }
+
+    protected void tearDown() throws Exception {
+        executor = null;
+        io = null;
+        out = null;
+        channel = null;
+
+        SystemOutputHijacker.uninstall();
+    }
+
+    private Thread execute() {
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    executor.execute(new TestShellContext(io), new Object[] { "emit" });
+                }
+                catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                finally {
+                    io.outputStream.close();
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    public void testTextOutputIsBatched() throws Exception {
+        // Text ahead of any object selects text mode, as for 'ls -r | cat'
+        io.out.println("start");
+        assertFalse(channel.acceptObjects());
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(channel.getInputStream()));
+        assertEquals("start", reader.readLine());
+
+        int flushes = out.flushes;
+        Thread thread = execute();
+
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(String.valueOf(i), reader.readLine());
+        }
+        assertNull(reader.readLine());
+        thread.join();
+
+        // Without batching every emitted object would be flushed through on its own
+        assertTrue("Flushed " + (out.flushes - flushes) + " times", out.flushes - flushes < COUNT / 10);
+    }
+
+    public void testObjectOutputIsNotSynced() throws Exception {
+        Thread thread = execute();
+
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(i, channel.take());
+        }
+        assertNull(channel.take());
+        thread.join();
+
+        assertTrue("Flushed " + out.flushes + " times", out.flushes < COUNT / 10);
+    }
+
+    private static class CountingOutputStream
+        extends FilterOutputStream
+    {
+        private volatile int flushes;
+
+        public CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushes++;
+            super.flush();
+        }
+    }
+
+    private static class EmittingCommandResolver
+        implements CommandResolver
+    {
+        private final Command command = new EmittingCommand();
+
+        public Command resolveCommand(final String name, final Variables variables) throws CommandException {
+            return command;
+        }
+
+        public Collection<Command> resolveCommands(final String name, final Variables variables) throws CommandException {
+            return Collections.singletonList(command);
+        }
+    }
+
+    private static class EmittingCommand
+        implements Command
+    {
+        public CommandResult execute(final ShellContext context, final Object[] args) {
+            try {
+                for (int i = 0; i < COUNT; i++) {
+                    context.getIo().emit(i);
+                }
+            }
+            catch (IOException e) {
+                return new CommandResult.FailureResult(e);
+            }
+
+            return new CommandResult.ValueResult(null);
+        }
+
+        public CommandLocation getLocation() {
+            return null;
+        }
+
+        public CommandAction getAction() {
+            return null;
+        }
+
+        public CommandDocumenter getDocumenter() {
+            return null;
+        }
+
+        public CommandCompleter getCompleter() {
+            return null;
+        }
+
+        public MessageSource getMessages() {
+            return null;
+        }
+    }
+
+    private static class TestShellContext
+        implements ShellContext
+    {
+        private final IO io;
+
+        private final Variables variables = new Variables();
+
+        public TestShellContext(final IO io) {
+            this.io = io;
+        }
+
+        public Shell getShell() {
+            return null;
+        }
+
+        public IO getIo() {
+            return io;
+        }
+
+        public Variables getVariables() {
+            return variables;
+        }
+    }
+}